@@ -76,6 +76,47 @@ sourceSets.main {
   java.srcDir(generatedSrcDir)
 }
 
+// Classes that replace classes of the main source set when running on Java 11 or later (multi-release jar).
+// They can only be compiled when the build runs on Java 11 or later, otherwise the jar only contains the Java 8 classes.
+val java11: SourceSet? = if (JavaVersion.current().isJava11Compatible) {
+  sourceSets.create("java11") {
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+  }
+} else {
+  logger.warn("The build does not run on Java 11 or later, so the Java 11 classes are not added to the plugin jar")
+  null
+}
+java11?.let { java11SourceSet ->
+  tasks.named<JavaCompile>(java11SourceSet.compileJavaTaskName) {
+    sourceCompatibility = JavaVersion.VERSION_11.toString()
+    targetCompatibility = JavaVersion.VERSION_11.toString()
+  }
+  tasks.jar {
+    into("META-INF/versions/11") {
+      from(java11SourceSet.output)
+    }
+    manifest.attributes("Multi-Release" to "true")
+  }
+  // the tests run with the classes directories (not the jar), so the Java 11 classes have to come first
+  sourceSets.test {
+    runtimeClasspath = java11SourceSet.output + runtimeClasspath
+  }
+}
+
+// JMH benchmarks, these are run with `./gradlew jmh` (they are not part of the normal build)
+val jmh by sourceSets.creating {
+  compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+  runtimeClasspath += output + compileClasspath + sourceSets.test.get().runtimeClasspath
+  java11?.let {
+    runtimeClasspath = it.output + runtimeClasspath
+  }
+}
+dependencies {
+  "jmhImplementation"("org.openjdk.jmh:jmh-core:${Version.JMH}")
+  "jmhImplementation"("com.github.tomakehurst:wiremock:${Version.WIREMOCK}")
+  "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:${Version.JMH}")
+}
+
 tasks {
   val generateBuildInfoClass by registering {
     val content: (Instant) -> String = {
@@ -116,6 +157,25 @@ public final class BuildInfo {
   withType(JavaCompile::class) {
     dependsOn(generateBuildInfoClass)
   }
+
+  /**
+   * Runs the benchmarks and writes the results as JSON to `build/reports/jmh/results.json`.
+   * Pass e.g. `-PjmhIncludes=TimeTrackingManager` to only run the benchmarks matching that regular expression.
+   */
+  register("jmh", JavaExec::class) {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks and writes the results as JSON"
+    val resultFile = buildDir.resolve("reports/jmh/results.json")
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args("-rf", "json", "-rff", resultFile.absolutePath)
+    project.findProperty("jmhIncludes")?.let { args(it.toString()) }
+    outputs.file(resultFile)
+    outputs.upToDateWhen { false }
+    doFirst {
+      resultFile.parentFile.mkdirs()
+    }
+  }
 }
 
 /**
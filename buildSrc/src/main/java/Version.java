@@ -1,6 +1,7 @@
 public final class Version {
   public static final String AWAITILITY = "4.1.0";
   public static final String GRADLE_JOSM_PLUGIN = "0.7.1";
+  public static final String JMH = "1.32";
   public static final String JUNIT = "5.7.2";
   public static final String JUNIT4 = "4.13.2";
   /**
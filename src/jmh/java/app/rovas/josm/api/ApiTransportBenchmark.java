@@ -0,0 +1,80 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+
+import java.util.concurrent.TimeUnit;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import app.rovas.josm.benchmark.BenchmarkEnvironment;
+import app.rovas.josm.model.ApiCredentials;
+import app.rovas.josm.util.UrlProvider;
+
+/**
+ * Compares the latency of a complete API query with each {@link ApiTransport}, against a local WireMock server
+ * that stands in for the Rovas API. The {@link ApiTransport#JAVA_HTTP_CLIENT} transport is only measured when
+ * running on Java 11 or later, otherwise the fallback transport is measured.
+ * Run with {@code -prof gc} to also see the allocations per query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ApiTransportBenchmark {
+  private static final ApiCredentials CREDENTIALS = new ApiCredentials("abc", "def", 1729);
+
+  @Param({ApiTransport.URL_CONNECTION, ApiTransport.JOSM_HTTP_CLIENT, ApiTransport.JAVA_HTTP_CLIENT})
+  String transportName;
+
+  private WireMockServer server;
+  private UrlProvider urlProvider;
+  private ApiTransport transport;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    BenchmarkEnvironment.initPreferences();
+    BenchmarkEnvironment.initHttpClient();
+    server = new WireMockServer(WireMockConfiguration.wireMockConfig().dynamicPort());
+    server.start();
+    server.stubFor(post("/rovas/rules/rules_proxy_check_or_add_shareholder").willReturn(okJson("{\"result\": 1234}")));
+    final int port = server.port();
+    urlProvider = new UrlProvider() {
+      @Override
+      protected String getBaseUrl() {
+        return "http://localhost:" + port;
+      }
+    };
+    transport = ApiTransport.forName(transportName);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    server.stop();
+  }
+
+  @Benchmark
+  public Integer query() throws ApiException {
+    final ApiCheckOrAddShareholder query = new ApiCheckOrAddShareholder(urlProvider);
+    query.setRetryPolicy(RetryPolicy.NO_RETRIES);
+    query.setTransport(transport);
+    return query.queryWithRetries(CREDENTIALS);
+  }
+}
@@ -0,0 +1,31 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.benchmark;
+
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.tools.Http1Client;
+import org.openstreetmap.josm.tools.HttpClient;
+
+/**
+ * Sets up the minimal parts of JOSM that the benchmarked code needs, so the benchmarks can run without a JOSM GUI.
+ */
+public final class BenchmarkEnvironment {
+  private BenchmarkEnvironment() {
+    // private constructor to prevent instantiation
+  }
+
+  /**
+   * Makes the in-memory JOSM preferences available to the plugin. Nothing is ever saved to disk.
+   */
+  public static void initPreferences() {
+    Preferences.main().enableSaveOnPut(false);
+    Config.setPreferencesInstance(Preferences.main());
+  }
+
+  /**
+   * Makes JOSM's {@link HttpClient} usable, which is otherwise done when JOSM starts.
+   */
+  public static void initHttpClient() {
+    HttpClient.setFactory(Http1Client::new);
+  }
+}
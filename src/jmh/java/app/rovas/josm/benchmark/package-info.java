@@ -0,0 +1,5 @@
+// License: GPL. For details, see LICENSE file.
+/**
+ * Shared setup code for the JMH benchmarks, the benchmarks themselves are in the packages of the code they measure.
+ */
+package app.rovas.josm.benchmark;
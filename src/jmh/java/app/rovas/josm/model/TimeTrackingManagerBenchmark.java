@@ -0,0 +1,146 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.model;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import app.rovas.josm.benchmark.BenchmarkEnvironment;
+import app.rovas.josm.gui.TimeTrackingUpdateListener;
+
+/**
+ * Benchmarks for the hot paths of the {@link TimeTrackingManager}: ingesting change events, committing
+ * and notifying the {@link TimeTrackingUpdateListener}s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimeTrackingManagerBenchmark {
+
+  /**
+   * A manager without any listeners.
+   */
+  @State(Scope.Benchmark)
+  public static class ManagerState {
+    TimeTrackingManager timeTrackingManager;
+    long epochSecond;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+      BenchmarkEnvironment.initPreferences();
+      timeTrackingManager = new TimeTrackingManager();
+      epochSecond = System.currentTimeMillis() / 1000;
+    }
+  }
+
+  /**
+   * A manager with a configurable number of listeners registered.
+   */
+  @State(Scope.Benchmark)
+  public static class ListenerState {
+    @Param({"1", "10", "100"})
+    int numListeners;
+    @Param({"SECONDS", "MINUTES"})
+    TimeTrackingManager.NotificationResolution resolution;
+
+    TimeTrackingManager timeTrackingManager;
+    long epochSecond;
+
+    @Setup(Level.Iteration)
+    public void setup(final Blackhole blackhole) {
+      BenchmarkEnvironment.initPreferences();
+      timeTrackingManager = new TimeTrackingManager();
+      epochSecond = System.currentTimeMillis() / 1000;
+      for (int i = 0; i < numListeners; i++) {
+        timeTrackingManager.addAndFireTimeTrackingUpdateListener(blackhole::consume, resolution);
+      }
+    }
+  }
+
+  /**
+   * A manager that is shared by several ingesting threads and a reader thread, which mimics the EDT
+   * by only looking at the most recently published total.
+   */
+  @State(Scope.Group)
+  public static class SharedState {
+    TimeTrackingManager timeTrackingManager;
+    volatile long lastPublishedTotal;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+      BenchmarkEnvironment.initPreferences();
+      timeTrackingManager = new TimeTrackingManager();
+      timeTrackingManager.addAndFireTimeTrackingUpdateListener(n -> lastPublishedTotal = n, TimeTrackingManager.NotificationResolution.SECONDS);
+    }
+  }
+
+  /**
+   * Single-thread ingestion of changes that all fall into the same second (e.g. one large command).
+   */
+  @Benchmark
+  public void ingestSameSecond(final ManagerState state) {
+    state.timeTrackingManager.trackChangeAt(state.epochSecond);
+  }
+
+  /**
+   * Single-thread ingestion where every change extends the uncommitted timespan by one second.
+   */
+  @Benchmark
+  public void ingestAdvancingSeconds(final ManagerState state) {
+    state.timeTrackingManager.trackChangeAt(++state.epochSecond);
+  }
+
+  /**
+   * Tracks a change and immediately commits it.
+   */
+  @Benchmark
+  public long ingestAndCommit(final ManagerState state) {
+    state.timeTrackingManager.trackChangeAt(++state.epochSecond);
+    return state.timeTrackingManager.commit(Instant.ofEpochSecond(state.epochSecond));
+  }
+
+  /**
+   * Ingestion with 1, 10 or 100 listeners, which are notified about every change or only when the minutes change.
+   */
+  @Benchmark
+  public void listenerFanOut(final ListenerState state) {
+    state.timeTrackingManager.trackChangeAt(state.epochSecond);
+  }
+
+  /**
+   * Three threads ingest changes at the current time, while …
+   */
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(3)
+  public void contendedIngest(final SharedState state) {
+    state.timeTrackingManager.trackChangeNow();
+  }
+
+  /**
+   * … one EDT-like thread reads the most recently published total.
+   */
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(1)
+  public long contendedRead(final SharedState state) {
+    return state.lastPublishedTotal;
+  }
+}
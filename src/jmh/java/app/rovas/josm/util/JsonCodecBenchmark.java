@@ -0,0 +1,82 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the static methods of {@link Json} (which look up the JSON provider on every call) with the cached
+ * factories of {@link JsonCodec}, for the work that is done for every API request:
+ * building the request body and reading the response.
+ * Run with {@code -prof gc} to also see the difference in allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonCodecBenchmark {
+  private static final byte[] RESPONSE = "{\"result\": \"1234\"}".getBytes(StandardCharsets.UTF_8);
+
+  @Benchmark
+  public String buildRequestWithJson() {
+    return buildRequest(Json.createObjectBuilder());
+  }
+
+  @Benchmark
+  public String buildRequestWithCodec() {
+    return buildRequest(JsonCodec.createObjectBuilder());
+  }
+
+  @Benchmark
+  public JsonObject readResponseWithJson() {
+    try (JsonReader reader = Json.createReader(new ByteArrayInputStream(RESPONSE))) {
+      return reader.readObject();
+    }
+  }
+
+  @Benchmark
+  public JsonObject readResponseWithCodec() {
+    try (JsonReader reader = JsonCodec.createReader(new ByteArrayInputStream(RESPONSE))) {
+      return reader.readObject();
+    }
+  }
+
+  @Benchmark
+  public byte[] writeRequestWithJson() {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Json.createGenerator(out).writeStartObject().write("project_id", 1729).writeEnd().close();
+    return out.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] writeRequestWithCodec() {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JsonCodec.createGenerator(out).writeStartObject().write("project_id", 1729).writeEnd().close();
+    return out.toByteArray();
+  }
+
+  private static String buildRequest(final JsonObjectBuilder builder) {
+    return builder
+      .add("project_id", 35_259)
+      .add("wr_id", 5678)
+      .add("usage_fee", 0.06)
+      .add("note", "3.00% fee levied by the 'JOSM Rovas connector' project for using the plugin")
+      .build()
+      .toString();
+  }
+}
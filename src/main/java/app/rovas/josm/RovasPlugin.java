@@ -2,13 +2,20 @@
 package app.rovas.josm;
 
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.swing.JOptionPane;
 
+import com.drew.lang.annotations.NotNull;
+
+import org.openstreetmap.josm.actions.UploadAction;
+import org.openstreetmap.josm.actions.upload.UploadHook;
+import org.openstreetmap.josm.data.APIDataSet;
 import org.openstreetmap.josm.data.osm.Changeset;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.MapFrame;
 import org.openstreetmap.josm.gui.Notification;
 import org.openstreetmap.josm.gui.preferences.PreferenceSetting;
+import org.openstreetmap.josm.gui.util.GuiHelper;
 import org.openstreetmap.josm.io.OsmApi;
 import org.openstreetmap.josm.io.OsmServerWriter;
 import org.openstreetmap.josm.plugins.Plugin;
@@ -16,12 +23,19 @@ import org.openstreetmap.josm.plugins.PluginInformation;
 import org.openstreetmap.josm.tools.I18n;
 import org.openstreetmap.josm.tools.ImageProvider;
 
+import app.rovas.josm.api.ApiQuery;
+import app.rovas.josm.api.ConnectionPrewarmer;
+import app.rovas.josm.api.Outbox;
+import app.rovas.josm.api.Submission;
+import app.rovas.josm.api.UserDataCache;
 import app.rovas.josm.gui.CreateRovasReportDialog;
 import app.rovas.josm.gui.RovasConnectorDialog;
 import app.rovas.josm.model.AnyOsmDataChangeTracker;
 import app.rovas.josm.model.RovasPreference;
 import app.rovas.josm.model.RovasProperties;
+import app.rovas.josm.model.TimeJournal;
 import app.rovas.josm.model.TimeTrackingManager;
+import app.rovas.josm.util.UrlProvider;
 
 /**
  * <p>JOSM plugin that allows time tracking with https://rovas.app
@@ -47,8 +61,16 @@ import app.rovas.josm.model.TimeTrackingManager;
 public final class RovasPlugin extends Plugin {
   public static final ImageProvider LOGO = new ImageProvider("rovas_logo");
 
+  /**
+   * The plugin instance that is {@link #shutdown() shut down} when the JVM terminates, see {@link #registerShutdownHook(RovasPlugin)}
+   */
+  private static final AtomicReference<RovasPlugin> SHUTDOWN_INSTANCE = new AtomicReference<>();
+
   private final PreferenceSetting preference = new RovasPreference();
-  private final TimeTrackingManager timeTrackingManager = new TimeTrackingManager();
+  private final TimeTrackingManager timeTrackingManager = new TimeTrackingManager(
+    TimeJournal.openDefault(),
+    TimeTrackingManager.ListenerDispatch.ASYNCHRONOUS
+  );
 
   /**
    * Creates the plugin
@@ -59,11 +81,74 @@ public final class RovasPlugin extends Plugin {
     super(info);
     MainApplication.getLayerManager().addAndFireLayerChangeListener(new AnyOsmDataChangeTracker(timeTrackingManager));
     timeTrackingManager.trackChangeNow();
+    registerShutdownHook(this);
+    // Opening the outbox also retries the submissions that are still queued from the last session
+    Outbox.getInstance().addListener(new Outbox.Listener() {
+      @Override
+      public void submissionCompleted(@NotNull final Submission submission) {
+        GuiHelper.runInEDT(() ->
+          new Notification(I18n.tr("A work report that was queued while the Rovas server could not be reached, was submitted successfully."))
+            .setIcon(JOptionPane.INFORMATION_MESSAGE)
+            .setDuration(Notification.TIME_LONG)
+            .show()
+        );
+      }
+
+      @Override
+      public void submissionFailed(@NotNull final Submission submission, @NotNull final ApiQuery.ErrorCode errorCode) {
+        final String message;
+        if (submission.getStage() == Submission.Stage.CREATE_AUR) {
+          message = I18n.tr("A work report that was queued while the Rovas server could not be reached, could not be submitted: {0}", I18n.tr(errorCode.getTranslatableMessage()));
+        } else {
+          // the work report was not created, the time was reset when it was queued, so it's given back for the next report
+          timeTrackingManager.addCommittedSeconds(submission.getMinutes() * 60L);
+          message = I18n.tr(
+            "A work report that was queued while the Rovas server could not be reached, could not be submitted: {0} The time of the work report was added back to your tracked time.",
+            I18n.tr(errorCode.getTranslatableMessage())
+          );
+        }
+        GuiHelper.runInEDT(() ->
+          new Notification(message)
+            .setIcon(JOptionPane.ERROR_MESSAGE)
+            .setDuration(Notification.TIME_LONG)
+            .show()
+        );
+      }
+
+      @Override
+      public void submissionPossiblyCreated(@NotNull final Submission submission) {
+        // the time is not added back, otherwise it would be reported a second time, if the work report was created
+        GuiHelper.runInEDT(() ->
+          new Notification(I18n.tr(
+            "The connection to the Rovas server broke down after a queued work report about {0} minutes was sent, so it is unknown whether it was created. Please check your work reports in Rovas. The time was not added back to your tracked time.",
+            submission.getMinutes()
+          ))
+            .setIcon(JOptionPane.WARNING_MESSAGE)
+            .setDuration(Notification.TIME_LONG)
+            .show()
+        );
+      }
+    });
+
+    // Loads the cached user profiles in the background, so they can be shown without delay
+    UserDataCache.getInstance();
+
+    // A late upload hook runs when the upload was confirmed and is about to start. The connection to Rovas is
+    // established during the upload, so it's ready when the work report is created afterwards.
+    UploadAction.registerUploadHook(new UploadHook() {
+      @Override
+      public boolean checkUpload(final APIDataSet apiDataSet) {
+        if (RovasProperties.WRITER.get(RovasProperties.UNPAID_EDITOR)) {
+          ConnectionPrewarmer.getInstance().prewarm(UrlProvider.getInstance());
+        }
+        return true;
+      }
+    }, true);
 
     OsmServerWriter.registerPostprocessor((__, ___) -> {
       final Optional<Changeset> changeset = Optional.ofNullable(OsmApi.getOsmApi()).map(OsmApi::getChangeset);
       new Thread(() -> {
-        if (RovasProperties.UNPAID_EDITOR.get()) {
+        if (RovasProperties.WRITER.get(RovasProperties.UNPAID_EDITOR)) {
           new CreateRovasReportDialog(
             timeTrackingManager,
             changeset,
@@ -80,6 +165,32 @@ public final class RovasPlugin extends Plugin {
     });
   }
 
+  /**
+   * <p>Makes sure that {@link #shutdown()} is called for the given plugin instance when the JVM terminates.</p>
+   *
+   * <p>JOSM does not notify plugins when it exits, so a JVM shutdown hook is used. JOSM calls {@link System#exit(int)}
+   * only after its own shutdown sequence is done, so the hook runs after that. Only one hook is registered per JVM,
+   * it shuts down the plugin instance that was registered last.</p>
+   * @param plugin the plugin instance
+   */
+  private static void registerShutdownHook(@NotNull final RovasPlugin plugin) {
+    if (SHUTDOWN_INSTANCE.getAndSet(plugin) == null) {
+      Runtime.getRuntime().addShutdownHook(new Thread(
+        () -> Optional.ofNullable(SHUTDOWN_INSTANCE.get()).ifPresent(RovasPlugin::shutdown),
+        "rovas-shutdown"
+      ));
+    }
+  }
+
+  /**
+   * Persists the preferences that are still buffered in {@link RovasProperties#WRITER}. Then the last state
+   * of the time journal is forced to the storage device, even if JOSM is shut down between the batched writes.
+   */
+  private void shutdown() {
+    RovasProperties.WRITER.flush();
+    timeTrackingManager.closeJournal();
+  }
+
   @Override
   public void mapFrameInitialized(final MapFrame oldFrame, final MapFrame newFrame) {
     super.mapFrameInitialized(oldFrame, newFrame);
@@ -1,17 +1,14 @@
 // License: GPL. For details, see LICENSE file.
 package app.rovas.josm.api;
 
-import java.net.URLConnection;
 import java.util.Optional;
 import java.util.stream.Stream;
-import javax.json.Json;
 
 import com.drew.lang.annotations.NotNull;
 
 import org.openstreetmap.josm.tools.I18n;
 
 import app.rovas.josm.model.ApiCredentials;
-import app.rovas.josm.util.JsonUtil;
 import app.rovas.josm.util.UrlProvider;
 
 /**
@@ -56,7 +53,16 @@ public final class ApiCheckOrAddShareholder extends ApiQuery<Integer, ApiQuery.E
   @NotNull
   @Override
   protected ErrorCode getErrorCodeForException(@NotNull ApiException exception) {
-    return new ErrorCode(Optional.empty(), exception.getLocalizedMessage());
+    return new ErrorCode(exception);
+  }
+
+  /**
+   * {@inheritDoc}
+   * Checking again, or adding the user as shareholder again, has no further effect, so this query can always be retried.
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
   }
 
   @Override
@@ -67,6 +73,7 @@ public final class ApiCheckOrAddShareholder extends ApiQuery<Integer, ApiQuery.E
   /**
    *
    * @param credentials the credentials
+   * @param timeoutMillis the connect and read timeout of the request in milliseconds
    * @return a positive integer means success, it is the worker merit allocation ID.
    *   If it is not a positive integer, then:<ul>
    *     <li>0: the project is private, you can't become a shareholder</li>
@@ -79,11 +86,12 @@ public final class ApiCheckOrAddShareholder extends ApiQuery<Integer, ApiQuery.E
    */
   @NotNull
   @Override
-  public Integer query(final ApiCredentials credentials) throws ApiException {
-    final URLConnection connection = sendPostRequest(
+  public Integer query(final ApiCredentials credentials, final int timeoutMillis) throws ApiException {
+    final ApiTransport.Response response = sendPostRequest(
       credentials,
-      Json.createObjectBuilder().add("project_id", credentials.getProjectId())
+      timeoutMillis,
+      generator -> generator.write("project_id", credentials.getProjectId())
     );
-    return decodeJsonResult(connection, it -> JsonUtil.extractResponseCode(it, "result"));
+    return decodeJsonResult(response, ResponseDecoder.responseCode("result"));
   }
 }
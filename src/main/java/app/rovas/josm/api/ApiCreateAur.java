@@ -1,10 +1,8 @@
 // License: GPL. For details, see LICENSE file.
 package app.rovas.josm.api;
 
-import java.net.URLConnection;
 import java.util.Locale;
 import java.util.Optional;
-import javax.json.Json;
 
 import com.drew.lang.annotations.NotNull;
 
@@ -13,7 +11,6 @@ import org.openstreetmap.josm.tools.I18n;
 import app.rovas.josm.model.ApiCredentials;
 import app.rovas.josm.model.RovasProperties;
 import app.rovas.josm.model.StaticConfig;
-import app.rovas.josm.util.JsonUtil;
 import app.rovas.josm.util.TimeConverterUtil;
 import app.rovas.josm.util.UrlProvider;
 
@@ -48,7 +45,7 @@ public final class ApiCreateAur extends ApiQuery<Integer, ApiQuery.ErrorCode> {
   @NotNull
   @Override
   protected ErrorCode getErrorCodeForException(@NotNull ApiException exception) {
-    return new ErrorCode(Optional.empty(), exception.getLocalizedMessage());
+    return new ErrorCode(exception);
   }
 
   @Override
@@ -57,20 +54,21 @@ public final class ApiCreateAur extends ApiQuery<Integer, ApiQuery.ErrorCode> {
   }
 
   @Override
-  protected Integer query(final ApiCredentials credentials) throws ApiException {
-    final URLConnection connection = sendPostRequest(
+  protected Integer query(final ApiCredentials credentials, final int timeoutMillis) throws ApiException {
+    final ApiTransport.Response response = sendPostRequest(
       credentials,
-      Json.createObjectBuilder()
-        .add(
+      timeoutMillis,
+      generator -> generator
+        .write(
           "project_id",
           RovasProperties.DEVELOPER.get()
             ? StaticConfig.ROVAS_CONNECTOR_PROJECT_ID_DEV
             : StaticConfig.ROVAS_CONNECTOR_PROJECT_ID
         )
-        .add("wr_id", workReportId)
-        .add("usage_fee", TimeConverterUtil.minutesToChrons(reportedMinutes) * StaticConfig.ASSET_USAGE_FEE)
-        .add("note", I18n.tr("{0}% fee levied by the ''JOSM Rovas connector'' project for using the plugin", String.format(Locale.ROOT, "%.2f", StaticConfig.ASSET_USAGE_FEE * 100)))
+        .write("wr_id", workReportId)
+        .write("usage_fee", TimeConverterUtil.minutesToChrons(reportedMinutes) * StaticConfig.ASSET_USAGE_FEE)
+        .write("note", I18n.tr("{0}% fee levied by the ''JOSM Rovas connector'' project for using the plugin", String.format(Locale.ROOT, "%.2f", StaticConfig.ASSET_USAGE_FEE * 100)))
     );
-    return decodeJsonResult(connection, it -> JsonUtil.extractResponseCode(it, "result"));
+    return decodeJsonResult(response, ResponseDecoder.responseCode("result"));
   }
 }
@@ -1,16 +1,13 @@
 // License: GPL. For details, see LICENSE file.
 package app.rovas.josm.api;
 
-import java.net.URLConnection;
-import java.security.SecureRandom;
 import java.time.Instant;
-import java.util.Base64;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Stream;
-import javax.json.Json;
 
 import com.drew.lang.annotations.NotNull;
+import com.drew.lang.annotations.Nullable;
 
 import org.openstreetmap.josm.data.osm.Changeset;
 import org.openstreetmap.josm.tools.I18n;
@@ -18,17 +15,18 @@ import org.openstreetmap.josm.tools.I18n;
 import app.rovas.josm.gen.BuildInfo;
 import app.rovas.josm.model.ApiCredentials;
 import app.rovas.josm.model.StaticConfig;
-import app.rovas.josm.util.JsonUtil;
 import app.rovas.josm.util.UrlProvider;
 
 /**
  * API query for creating a work report
  */
 public final class ApiCreateWorkReport extends ApiQuery<Integer, ApiCreateWorkReport.ErrorCode> {
-  private static final SecureRandom RANDOM = new SecureRandom();
-
   private final double minutes;
-  private final Optional<Changeset> changeset;
+  @Nullable
+  private final Integer changesetId;
+  private final long dateStarted;
+  @NotNull
+  private final String idempotencyKey;
 
   /**
    * Creates a new query to the API endpoint for creating work reports
@@ -37,11 +35,48 @@ public final class ApiCreateWorkReport extends ApiQuery<Integer, ApiCreateWorkRe
    * @param changeset the changeset for which this work report is created, can be empty if there is no changeset
    */
   public ApiCreateWorkReport(final UrlProvider urlProvider, final int minutes, @NotNull final Optional<Changeset> changeset) {
+    this(
+      urlProvider,
+      minutes,
+      changeset.map(Changeset::getId).orElse(null),
+      changeset.map(Changeset::getCreatedAt).orElse(Instant.now()).getEpochSecond()
+    );
+  }
+
+  /**
+   * Creates a new query to the API endpoint for creating the work report of a {@link Submission}.
+   * All queries for the same submission send the same {@link Submission#getIdempotencyKey() idempotency key}
+   * as access token. This is only a stable token, it is not known whether the server deduplicates work reports by it.
+   * @param urlProvider the URL provider from which we get the URL
+   * @param submission the submission for which the work report is created
+   */
+  public ApiCreateWorkReport(final UrlProvider urlProvider, @NotNull final Submission submission) {
+    this(urlProvider, submission.getMinutes(), submission.getChangesetId(), submission.getDateStarted(), submission.getIdempotencyKey());
+  }
+
+  private ApiCreateWorkReport(final UrlProvider urlProvider, final int minutes, @Nullable final Integer changesetId, final long dateStarted) {
+    this(urlProvider, minutes, changesetId, dateStarted, Submission.createIdempotencyKey(changesetId, minutes, dateStarted));
+  }
+
+  private ApiCreateWorkReport(
+    final UrlProvider urlProvider,
+    final int minutes,
+    @Nullable final Integer changesetId,
+    final long dateStarted,
+    @NotNull final String idempotencyKey
+  ) {
     super(urlProvider, urlProvider.rulesCreateWorkReport());
     this.minutes = minutes;
-    this.changeset = changeset;
+    this.changesetId = changesetId;
+    this.dateStarted = dateStarted;
+    this.idempotencyKey = Objects.requireNonNull(idempotencyKey);
   }
 
+  /**
+   * The result code with which the server reports, that the user is not a shareholder of the project
+   */
+  private static final int RESULT_NOT_A_SHAREHOLDER = -1;
+
   private static final ErrorCode[] KNOWN_CODES = new ErrorCode[]{
     new ErrorCode(
       Optional.of(0),
@@ -50,7 +85,7 @@ public final class ApiCreateWorkReport extends ApiQuery<Integer, ApiCreateWorkRe
       ErrorCode.ContinueOption.CONTINUE_TO_AUR_QUERY
     ),
     new ErrorCode(
-      Optional.of(-1),
+      Optional.of(RESULT_NOT_A_SHAREHOLDER),
       I18n.marktr("You are not a shareholder in the project with ID set in the preferences!"),
       ErrorCode.ContinueOption.SHOW_WORK_REPORT_DIALOG_AGAIN
     ),
@@ -85,8 +120,7 @@ public final class ApiCreateWorkReport extends ApiQuery<Integer, ApiCreateWorkRe
   @Override
   protected ErrorCode getErrorCodeForException(@NotNull ApiException exception) {
     return new ErrorCode(
-      Optional.empty(),
-      exception.getMessage(),
+      exception,
       exception instanceof ApiException.DecodeResponse || exception instanceof ApiException.ConnectionFailure
         ? ErrorCode.ContinueOption.CONTINUE_TO_AUR_QUERY
         : ErrorCode.ContinueOption.SHOW_WORK_REPORT_DIALOG_AGAIN
@@ -99,15 +133,13 @@ public final class ApiCreateWorkReport extends ApiQuery<Integer, ApiCreateWorkRe
   }
 
   @Override
-  protected Integer query(final ApiCredentials credentials) throws ApiException {
-    final byte[] accessToken = new byte[12]; // 12 bytes → 16 Base64 characters
-    RANDOM.nextBytes(accessToken);
-
-    final URLConnection connection = sendPostRequest(
+  protected Integer query(final ApiCredentials credentials, final int timeoutMillis) throws ApiException {
+    final ApiTransport.Response response = sendPostRequest(
       credentials,
-      Json.createObjectBuilder()
-        .add("wr_classification", StaticConfig.NACE_CLASSIFICATION)
-        .add("wr_description", I18n.tr(
+      timeoutMillis,
+      generator -> generator
+        .write("wr_classification", StaticConfig.NACE_CLASSIFICATION)
+        .write("wr_description", I18n.tr(
           // i18n: {0} will be replaced by a link labeled: "Rovas connector plugin for JOSM"
           "Made edits to the OpenStreetMap project. This report was created automatically by the {0}",
           UrlProvider.toHtmlHyperlink(
@@ -116,27 +148,18 @@ public final class ApiCreateWorkReport extends ApiQuery<Integer, ApiCreateWorkRe
             I18n.tr("Rovas connector plugin for JOSM")
           )
         ))
-        .add("wr_activity_name", I18n.tr("Creating map data with JOSM"))
-        .add("wr_hours", minutes / 60.0)
-        .add(
+        .write("wr_activity_name", I18n.tr("Creating map data with JOSM"))
+        .write("wr_hours", minutes / 60.0)
+        .write(
           "wr_web_address",
-          changeset
-            .map(Changeset::getId)
-            .map(it -> String.format(StaticConfig.ROVAS_PROOF_URL, it))
-            .orElse("")
+          changesetId == null ? "" : String.format(StaticConfig.ROVAS_PROOF_URL, changesetId)
         )
-        .add("parent_project_nid", credentials.getProjectId())
-        .add(
-          "date_started",
-          changeset
-            .map(Changeset::getCreatedAt)
-            .map(Instant::getEpochSecond)
-            .orElse(Instant.now().getEpochSecond())
-        )
-        .add("access_token", Base64.getEncoder().encodeToString(accessToken))
-        .add("publish_status", 1)
+        .write("parent_project_nid", credentials.getProjectId())
+        .write("date_started", dateStarted)
+        .write("access_token", idempotencyKey)
+        .write("publish_status", 1)
     );
-    return decodeJsonResult(connection, it -> JsonUtil.extractResponseCode(it, "created_wr_nid"));
+    return decodeJsonResult(response, ResponseDecoder.responseCode("created_wr_nid"));
   }
 
   /**
@@ -171,11 +194,29 @@ public final class ApiCreateWorkReport extends ApiQuery<Integer, ApiCreateWorkRe
       this.continueOption = Objects.requireNonNull(continueOption);
     }
 
+    /**
+     * Creates a new error code for an exception that occured while creating the work report
+     * @param exception the exception that occured
+     * @param continueOption one of {@link ContinueOption}, never null
+     */
+    public ErrorCode(@NotNull final ApiException exception, @NotNull final ContinueOption continueOption) {
+      super(exception);
+      this.continueOption = Objects.requireNonNull(continueOption);
+    }
+
     @NotNull
     public ContinueOption getContinueOption() {
       return continueOption;
     }
 
+    /**
+     * @return {@code true} if the server reported that the user is not a shareholder of the project,
+     *   in that case a {@link ShareholderCache cached} shareholder status is no longer valid
+     */
+    public boolean isNotAShareholder() {
+      return getCode().filter(it -> it == RESULT_NOT_A_SHAREHOLDER).isPresent();
+    }
+
     @Override
     public String toString() {
       return super.toString() + " (continue with " + continueOption.name() + ')';
@@ -60,13 +60,35 @@ public abstract class ApiException extends Exception {
    * This exception should be thrown when some kind of connection problem occured (unexpected status code, unexpected disconnect, …).
    */
   public static class ConnectionFailure extends ApiException {
+    private final boolean isRequestSent;
+
     /**
-     * Creates an exception for connection problems with the API
+     * Creates an exception for connection problems with the API, that occured after the request might have
+     * reached the server already.
      * @param url the URL of the endpoint that caused the exception
      * @param cause the exception that was the root cause
      */
     public ConnectionFailure(final URL url, final Throwable cause) {
+      this(url, cause, true);
+    }
+
+    /**
+     * Creates an exception for connection problems with the API
+     * @param url the URL of the endpoint that caused the exception
+     * @param cause the exception that was the root cause
+     * @param isRequestSent {@code false} if it's certain that the server did not receive the request
+     *   (e.g. the connection could not be established), otherwise {@code true}
+     */
+    public ConnectionFailure(final URL url, final Throwable cause, final boolean isRequestSent) {
       super(url, I18n.marktr("There was a connection issue!"), false, cause);
+      this.isRequestSent = isRequestSent;
+    }
+
+    /**
+     * @return {@code false} if it's certain that the server did not receive the request, {@code true} if it might have
+     */
+    public boolean isRequestSent() {
+      return isRequestSent;
     }
   }
 
@@ -84,6 +106,33 @@ public abstract class ApiException extends Exception {
     }
   }
 
+  /**
+   * This exception should be thrown if the server rejected the request with a {@code 4xx} HTTP status code
+   * (except {@code 401}, see {@link WrongPluginApiCredentials}, and {@code 408}, which is a timeout).
+   * Unlike a {@link ConnectionFailure}, the server could be reached, and sending the same request again would
+   * be rejected the same way. So it is neither retried, nor does it count as failure of the server.
+   */
+  public static class ClientError extends ApiException {
+    private final int statusCode;
+
+    /**
+     * Creates an exception for a request that was rejected by the server
+     * @param url the URL of the endpoint that rejected the request
+     * @param statusCode the HTTP status code of the response
+     */
+    public ClientError(final URL url, final int statusCode) {
+      super(url, I18n.marktr("The Rovas server rejected the request!"), true, null);
+      this.statusCode = statusCode;
+    }
+
+    /**
+     * @return the HTTP status code with which the server rejected the request
+     */
+    public int getStatusCode() {
+      return statusCode;
+    }
+  }
+
   /**
    * This exception should be thrown if we get a {@code 401} HTTP status code, meaning the API credentials of the user are invalid.
    */
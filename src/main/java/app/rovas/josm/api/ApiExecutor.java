@@ -0,0 +1,63 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Holds the executor on which the asynchronous API queries run (see {@link ApiQuery#queryAsync(app.rovas.josm.model.ApiCredentials)}).
+ */
+public final class ApiExecutor {
+  private static final int MAX_THREADS = 2;
+  private static final int MAX_QUEUED_QUERIES = 32;
+  private static final long THREAD_KEEP_ALIVE_SECONDS = 30;
+
+  private static final ThreadPoolExecutor EXECUTOR;
+  static {
+    EXECUTOR = new ThreadPoolExecutor(
+      MAX_THREADS, MAX_THREADS, THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+      new ArrayBlockingQueue<>(MAX_QUEUED_QUERIES),
+      Utils.newThreadFactory("rovas-api-%d", Thread.NORM_PRIORITY)
+    );
+    EXECUTOR.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Only waits for the delays of {@link #schedule(Runnable, long)}, the tasks are then run on the {@link #EXECUTOR}
+   */
+  private static final ScheduledThreadPoolExecutor SCHEDULER;
+  static {
+    SCHEDULER = new ScheduledThreadPoolExecutor(1, Utils.newThreadFactory("rovas-api-scheduler-%d", Thread.NORM_PRIORITY));
+    SCHEDULER.setKeepAliveTime(THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+    SCHEDULER.allowCoreThreadTimeOut(true);
+  }
+
+  private ApiExecutor() {
+    // private constructor to avoid instantiation
+  }
+
+  /**
+   * @return the executor for API queries. It is bounded: it uses at most {@value #MAX_THREADS} threads
+   *   (which terminate when idle) and queues at most {@value #MAX_QUEUED_QUERIES} queries,
+   *   more queries are rejected with a {@link java.util.concurrent.RejectedExecutionException}.
+   */
+  public static Executor getInstance() {
+    return EXECUTOR;
+  }
+
+  /**
+   * Runs the task after the given delay, without blocking a thread of the executor while waiting.
+   * The task runs on the thread that waited for the delay, so it should only hand over to the executor
+   * (see {@link #getInstance()}).
+   * @param task the task to run
+   * @param delayMillis the delay in milliseconds
+   */
+  static void schedule(final Runnable task, final long delayMillis) {
+    SCHEDULER.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+  }
+}
@@ -1,9 +1,7 @@
 // License: GPL. For details, see LICENSE file.
 package app.rovas.josm.api;
 
-import java.net.URLConnection;
 import java.util.Optional;
-import javax.json.Json;
 
 import com.drew.lang.annotations.NotNull;
 
@@ -34,17 +32,29 @@ public class ApiFetchUserData extends ApiQuery<UserData, ApiQuery.ErrorCode> {
     return new ErrorCode(Optional.empty(), I18n.marktr("Error decoding user data!"));
   }
 
+  /**
+   * {@inheritDoc}
+   * Only reads data, so this query can always be retried.
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
   @Override
   protected String getQueryLabel() {
     return "fetch user data";
   }
 
   @Override
-  protected UserData query(ApiCredentials credentials) throws ApiException {
-    final URLConnection connection = sendPostRequest(
+  protected UserData query(final ApiCredentials credentials, final int timeoutMillis) throws ApiException {
+    final ApiTransport.Response response = sendPostRequest(
       credentials,
-      Json.createObjectBuilder()
+      timeoutMillis,
+      generator -> {
+        // the request is an empty JSON object
+      }
     );
-    return decodeJsonResult(connection, UserData::createFromJson);
+    return decodeJsonResult(response, UserData.decoder());
   }
 }
@@ -3,33 +3,40 @@ package app.rovas.josm.api;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
-import java.text.MessageFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import javax.json.Json;
 import javax.json.JsonException;
-import javax.json.JsonObject;
-import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParsingException;
 
 import com.drew.lang.annotations.NotNull;
 import com.drew.lang.annotations.Nullable;
 
 import org.openstreetmap.josm.tools.I18n;
 import org.openstreetmap.josm.tools.Logging;
-import org.openstreetmap.josm.tools.Utils;
 import org.openstreetmap.josm.tools.bugreport.BugReportQueue;
 import org.openstreetmap.josm.tools.bugreport.ReportedException;
 
 import app.rovas.josm.gen.BuildInfo;
 import app.rovas.josm.model.ApiCredentials;
+import app.rovas.josm.model.RovasProperties;
+import app.rovas.josm.util.JsonCodec;
+import app.rovas.josm.util.ResponseCapture;
 import app.rovas.josm.util.TeeInputStream;
 import app.rovas.josm.util.UrlProvider;
 
@@ -38,12 +45,31 @@ import app.rovas.josm.util.UrlProvider;
  * The preferred way to query is {@link #query(ApiCredentials, Consumer, Consumer)} with callbacks.
  * But there's also {@link #query(ApiCredentials)} that will return for success and throw an
  * {@link ApiException} in case of an error.
+ * Both are also available asynchronously, see {@link #queryAsync(ApiCredentials)} and
+ * {@link #queryAsync(ApiCredentials, Executor, Function, Function)}, those run on the {@link ApiExecutor}.
  * @param <EC> the type of error code that will be returned in case of an error
  */
 public abstract class ApiQuery<R, EC extends ApiQuery.ErrorCode> {
+  /**
+   * Request bodies up to this size are kept in the {@link #REQUEST_BUFFER} for reuse, larger buffers are discarded
+   */
+  private static final int MAX_RETAINED_REQUEST_BUFFER_SIZE = 64 * 1024;
+  /**
+   * The buffer into which the request bodies are serialized, one per thread so it can be reused for every request
+   */
+  private static final ThreadLocal<ByteArrayOutputStream> REQUEST_BUFFER = ThreadLocal.withInitial(() -> new ByteArrayOutputStream(1024));
+
   protected final UrlProvider urlProvider;
   protected final URL queryUrl;
 
+  @NotNull
+  private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+  /**
+   * The transport with which the requests are sent, {@code null} for {@link ApiTransport#getDefault()}
+   */
+  @Nullable
+  private ApiTransport transport;
+
   /**
    * Creates a new API query
    * @param urlProvider the URL provider from which we can obtain URLs
@@ -63,14 +89,93 @@ public abstract class ApiQuery<R, EC extends ApiQuery.ErrorCode> {
   protected abstract String getQueryLabel();
 
   /**
+   * @return {@code true} if the query can be repeated without side effects, even if the server already received and
+   *   processed it. Queries that are not idempotent are only retried, if the request certainly didn't reach the server.
+   */
+  protected boolean isIdempotent() {
+    return false;
+  }
+
+  /**
+   * @param retryPolicy the policy that determines if and how often the query is retried after a connection failure,
+   *   by default this is {@link RetryPolicy#DEFAULT}
+   */
+  public void setRetryPolicy(@NotNull final RetryPolicy retryPolicy) {
+    this.retryPolicy = Objects.requireNonNull(retryPolicy);
+  }
+
+  @NotNull
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  /**
+   * @param transport the transport with which the requests are sent, or {@code null} to use the transport
+   *   that is configured in the preferences (see {@link ApiTransport#getDefault()}), which is the default
+   */
+  public void setTransport(@Nullable final ApiTransport transport) {
+    this.transport = transport;
+  }
+
+  /**
+   * @return the transport with which the requests are sent
+   */
+  @NotNull
+  public ApiTransport getTransport() {
+    return transport == null ? ApiTransport.getDefault() : transport;
+  }
+
+  /**
+   * Sends the query once, without retries, with the attempt timeout of the {@link #getRetryPolicy() retry policy}
    * @param credentials the user's API credentials
+   * @return the response returned by the server
+   * @throws ApiException like {@link #query(ApiCredentials, int)}
+   */
+  protected R query(final ApiCredentials credentials) throws ApiException {
+    return query(credentials, (int) Math.min(retryPolicy.getAttemptTimeoutMillis(), Integer.MAX_VALUE));
+  }
+
+  /**
+   * Sends the query once, without retries
+   * @param credentials the user's API credentials
+   * @param timeoutMillis the connect and read timeout of the request in milliseconds
    * @return the response returned by the server, usually responses {@code > 0} are successes, others are errors, but depends on the specific query
    * @throws ApiException.ConnectionFailure if the response can't even be read
    * @throws ApiException.DecodeResponse if the response can be read but not decoded as JSON
    * @throws ApiException.WrongPluginApiCredentials if the API credentials are invalid
    * @throws ApiException see the more specific descriptions of the subclasses
    */
-  protected abstract R query(final ApiCredentials credentials) throws ApiException;
+  protected abstract R query(final ApiCredentials credentials, final int timeoutMillis) throws ApiException;
+
+  /**
+   * <p>Runs {@link #query(ApiCredentials)} and retries it according to the {@link RetryPolicy}, if it fails with
+   * an exception that is {@link RetryPolicy#isRetryable(ApiException, boolean) retryable}.
+   * The timeouts of each attempt are limited, so the whole query ends roughly within the overall timeout of the policy.
+   * The calling thread sleeps during the backoff between two attempts.</p>
+   *
+   * <p>Every attempt is recorded in the {@link CircuitBreaker} of the server. While the circuit is open,
+   * no request is sent and the query fails immediately with an {@link ApiException.ConnectionFailure}.</p>
+   * @param credentials the user's API credentials
+   * @return the response returned by the server
+   * @throws ApiException the exception of the last attempt, if no attempt was successful
+   */
+  protected final R queryWithRetries(final ApiCredentials credentials) throws ApiException {
+    final Attempts attempts = new Attempts();
+    while (true) {
+      attempts.ensureRequestAllowed();
+      try {
+        return attempts.next(credentials);
+      } catch (final ApiException e) {
+        final long backoffMillis = attempts.getBackoffMillis(e);
+        try {
+          Thread.sleep(backoffMillis);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+      }
+    }
+  }
 
   /**
    * A wrapper for {@link #query(ApiCredentials)} that uses callbacks instead of throwing exceptions
@@ -85,7 +190,7 @@ public abstract class ApiQuery<R, EC extends ApiQuery.ErrorCode> {
     final Consumer<EC> errorCallback
   ) {
     try {
-      final R result = query(credentials);
+      final R result = queryWithRetries(credentials);
       final Optional<EC> errorCode = getErrorCodeForResult(result);
       if (errorCode.isPresent()) {
         errorCallback.accept(errorCode.get());
@@ -95,86 +200,389 @@ public abstract class ApiQuery<R, EC extends ApiQuery.ErrorCode> {
       }
     } catch (final ApiException e) {
       errorCallback.accept(getErrorCodeForException(e));
-      if (e.isShouldBeReportedAsBug()) {
-        BugReportQueue.getInstance().submit(new ReportedException(e));
+      reportAsBugIfNecessary(e);
+    }
+  }
+
+  /**
+   * Runs {@link #queryWithRetries(ApiCredentials)} on the {@link ApiExecutor}, the calling thread is not blocked.
+   * No thread is blocked during the backoff between two attempts either, the next attempt is
+   * {@link ApiExecutor#schedule(Runnable, long) scheduled} instead.
+   * @param credentials the user's credentials that are used for this request
+   * @return a future that completes with the response returned by the server, or completes exceptionally
+   *   with an {@link ApiException} (wrapped in a {@link CompletionException}) in the cases where
+   *   {@link #queryWithRetries(ApiCredentials)} would throw it
+   */
+  public CompletableFuture<R> queryAsync(@NotNull final ApiCredentials credentials) {
+    final CompletableFuture<R> result = new CompletableFuture<>();
+    executeAttemptAsync(credentials, new Attempts(), result);
+    return result;
+  }
+
+  /**
+   * Makes the next attempt of {@link #queryAsync(ApiCredentials)} on the {@link ApiExecutor}. If it fails and
+   * can be retried, this is called again after the backoff, otherwise the result is completed.
+   * @param credentials the user's credentials that are used for this request
+   * @param attempts the attempts that were already made for the query
+   * @param result the future that is completed with the result of the query
+   */
+  private void executeAttemptAsync(
+    @NotNull final ApiCredentials credentials,
+    @NotNull final Attempts attempts,
+    @NotNull final CompletableFuture<R> result
+  ) {
+    try {
+      ApiExecutor.getInstance().execute(() -> {
+        try {
+          attempts.ensureRequestAllowed();
+          final R response;
+          try {
+            response = attempts.next(credentials);
+          } catch (final ApiException e) {
+            final long backoffMillis = attempts.getBackoffMillis(e);
+            ApiExecutor.schedule(() -> executeAttemptAsync(credentials, attempts, result), backoffMillis);
+            return;
+          }
+          result.complete(response);
+        } catch (final ApiException e) {
+          result.completeExceptionally(new CompletionException(e));
+        } catch (final RuntimeException e) {
+          result.completeExceptionally(e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      result.completeExceptionally(new ApiException.ConnectionFailure(queryUrl, e));
+    }
+  }
+
+  /**
+   * The asynchronous counterpart to {@link #query(ApiCredentials, Consumer, Consumer)}. Instead of consumers, this
+   * takes functions that return the next {@link CompletionStage}, so further queries can be chained without
+   * blocking a thread while waiting for the responses.
+   * @param credentials the user's credentials that are used for this request
+   * @param callbackExecutor the executor on which the callbacks run (e.g. {@code GuiHelper::runInEDT}
+   *   for callbacks that interact with the GUI)
+   * @param successCallback in case a successful result was retrieved, the result will be passed to this function
+   * @param errorCallback in case an error occurs, the error code will be passed to this function
+   * @param <T> the type of the result of the returned future
+   * @return a future that completes when the stage returned by one of the callbacks completes
+   */
+  public <T> CompletableFuture<T> queryAsync(
+    @NotNull final ApiCredentials credentials,
+    @NotNull final Executor callbackExecutor,
+    @NotNull final Function<R, ? extends CompletionStage<T>> successCallback,
+    @NotNull final Function<EC, ? extends CompletionStage<T>> errorCallback
+  ) {
+    return handleResultAsync(queryAsync(credentials), callbackExecutor, successCallback, errorCallback);
+  }
+
+  /**
+   * Like {@link #queryAsync(ApiCredentials, Executor, Function, Function)}, but for a response that was already
+   * requested before (e.g. speculatively, before it was clear that the response is needed).
+   * @param response a future as returned by {@link #queryAsync(ApiCredentials)}
+   * @param callbackExecutor the executor on which the callbacks run
+   * @param successCallback in case a successful result was retrieved, the result will be passed to this function
+   * @param errorCallback in case an error occurs, the error code will be passed to this function
+   * @param <T> the type of the result of the returned future
+   * @return a future that completes when the stage returned by one of the callbacks completes
+   */
+  public <T> CompletableFuture<T> handleResultAsync(
+    @NotNull final CompletionStage<R> response,
+    @NotNull final Executor callbackExecutor,
+    @NotNull final Function<R, ? extends CompletionStage<T>> successCallback,
+    @NotNull final Function<EC, ? extends CompletionStage<T>> errorCallback
+  ) {
+    return response.toCompletableFuture().handleAsync((result, throwable) -> {
+      if (throwable != null) {
+        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        if (cause instanceof ApiException) {
+          final CompletionStage<T> nextStage = errorCallback.apply(getErrorCodeForException((ApiException) cause));
+          reportAsBugIfNecessary((ApiException) cause);
+          return nextStage;
+        }
+        throw throwable instanceof CompletionException ? (CompletionException) throwable : new CompletionException(throwable);
+      }
+      final Optional<EC> errorCode = getErrorCodeForResult(result);
+      if (errorCode.isPresent()) {
+        return errorCallback.apply(errorCode.get());
       }
+      Logging.debug("[rovas] API query successful ({0})", result);
+      return successCallback.apply(result);
+    }, callbackExecutor).thenCompose(Function.identity());
+  }
+
+  /**
+   * Submits a bug report, if the exception should be reported as bug.
+   * @param exception the exception that occured during the query
+   */
+  private static void reportAsBugIfNecessary(final ApiException exception) {
+    if (exception.isShouldBeReportedAsBug()) {
+      BugReportQueue.getInstance().submit(new ReportedException(exception));
     }
   }
 
   /**
-   * Sends a POST request to {@link #queryUrl}, authorizing with the given credentials and sending the given JSON request
+   * <p>Sends a POST request to {@link #queryUrl}, authorizing with the given credentials and sending a JSON object
+   * as request body.</p>
+   *
+   * <p>The request body is streamed with a {@link JsonGenerator} into a buffer that is reused for every request
+   * on the same thread. Then it is sent with a fixed length (with a {@code Content-Length} header)
+   * by the {@link #getTransport() transport}.</p>
+   *
    * @param credentials the credentials that should be presented to the API server in order to authorize the request
-   * @param requestContent the JSON request that should be sent
-   * @return the opened {@link URLConnection} after the request has been sent already
+   * @param timeoutMillis the connect and read timeout in milliseconds
+   * @param requestFields writes the fields of the JSON object that is sent as request body
+   *   (the start and end of the object are written automatically). If this is {@code null}, the request body is empty.
+   * @return the response to the request, which has been sent already
    * @throws ApiException.ConnectionFailure if in the process a connection error occured
    */
-  protected URLConnection sendPostRequest(@NotNull final ApiCredentials credentials, @Nullable final JsonObjectBuilder requestContent) throws ApiException.ConnectionFailure {
+  protected ApiTransport.Response sendPostRequest(
+    @NotNull final ApiCredentials credentials,
+    final int timeoutMillis,
+    @Nullable final Consumer<JsonGenerator> requestFields
+  ) throws ApiException.ConnectionFailure {
     Logging.debug("Sending POST request to " + queryUrl);
-    final URLConnection connection;
-    try {
-      connection = queryUrl.openConnection();
-    } catch (final IOException e) {
-      throw new ApiException.ConnectionFailure(queryUrl, e);
+    final ByteArrayOutputStream requestBody = REQUEST_BUFFER.get();
+    requestBody.reset();
+    if (requestFields != null) {
+      try (JsonGenerator generator = JsonCodec.createGenerator(requestBody)) {
+        generator.writeStartObject();
+        requestFields.accept(generator);
+        generator.writeEnd();
+      }
+    }
+    if (Logging.isDebugEnabled()) {
+      Logging.debug("[rovas] API request:\n{0}", new String(requestBody.toByteArray(), StandardCharsets.UTF_8));
     }
+    final Map<String, String> headers = new LinkedHashMap<>();
+    headers.put("API-KEY", credentials.getApiKey());
+    headers.put("TOKEN", credentials.getApiToken());
+    headers.put("Content-Type", "application/json;charset=" + StandardCharsets.UTF_8.name());
+    headers.put("User-Agent", "JOSM-rovas/" + BuildInfo.VERSION_NAME);
+    headers.put("Accept", "application/json");
+    headers.put("Accept-Charset", StandardCharsets.UTF_8.name());
+    // The responses are only a few bytes long, compressing them would not help. And a decompressing stream stops
+    // reading at the end of the compressed data, so the connection could not be reused.
+    headers.put("Accept-Encoding", "identity");
     try {
-      connection.setRequestProperty("API-KEY", credentials.getApiKey());
-      connection.setRequestProperty("TOKEN", credentials.getApiToken());
-      connection.setRequestProperty("Content-Type", "application/json;charset=" + StandardCharsets.UTF_8.name());
-      connection.setRequestProperty("User-Agent", "JOSM-rovas/" + BuildInfo.VERSION_NAME);
-      connection.setRequestProperty("Accept", "application/json");
-      connection.setRequestProperty("Accept-Charset", StandardCharsets.UTF_8.name());
-      connection.setDoOutput(true);
-      connection.setDoInput(true);
-      connection.setConnectTimeout(10_000);
-      connection.setReadTimeout(10_000);
-      if (connection instanceof HttpURLConnection) {
-        ((HttpURLConnection) connection).setChunkedStreamingMode(0);
-        ((HttpURLConnection) connection).setRequestMethod("POST");
-      }
-      try (Writer writer = new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8)) {
-        final String request = Optional.ofNullable(requestContent).map(it -> it.build().toString()).orElse("");
-        Logging.debug("[rovas] API request:\n{0}", request);
-        writer.write(request);
+      return getTransport().post(queryUrl, headers, requestBody, timeoutMillis);
+    } finally {
+      if (requestBody.size() > MAX_RETAINED_REQUEST_BUFFER_SIZE) {
+        REQUEST_BUFFER.remove();
       }
-    } catch (IOException e) {
-      disconnect(connection);
-      throw new ApiException.ConnectionFailure(queryUrl, e);
     }
-    return connection;
   }
 
   /**
-   * Decodes JSON in the form {@code {"result": "42"}} from the given input stream.
-   * @param connection the connection from which the response is read
+   * <p>Decodes JSON in the form {@code {"result": "42"}} from the given input stream.</p>
+   *
+   * <p>The response is not read into a tree of {@link javax.json.JsonValue}s, instead the fields of the top-level
+   * object are streamed to the given decoder, which only keeps the values it needs. As soon as the decoder has
+   * everything it needs, the response is not parsed any further. Nested objects and arrays are skipped
+   * without being kept in memory, so the memory needed doesn't depend on the size of the response.</p>
+   *
+   * <p>When the response could be read completely, the response stream is drained and closed, but the connection is
+   * not disconnected. That way the underlying (keep-alive) connection can be reused for the next query to the same
+   * server, which saves the TCP and TLS handshakes. Only if reading the response failed, the connection is
+   * disconnected, because it's then unclear in which state it is.</p>
+   *
+   * <p>Responses with an HTTP status code {@code >= 500}, {@code 408 Request Timeout} (or an invalid status code)
+   * are treated as {@link ApiException.ConnectionFailure}, so they can be retried. A {@code 401 Unauthorized} is
+   * a {@link ApiException.WrongPluginApiCredentials}, any other {@code 4xx} status code is
+   * an {@link ApiException.ClientError}, which is not retried.</p>
+   *
+   * @param response the response that is read
+   * @param decoder the decoder to which the fields of the top-level JSON object are passed
    * @return the result, that was encoded in the result. Either an error code, or an ID.
    * @throws ApiException if an unexpected error occured, like decoding failed or connection was aborted
    */
-  protected R decodeJsonResult(final URLConnection connection, final Function<JsonObject, Optional<R>> decoder) throws ApiException {
-    final ByteArrayOutputStream capture = new ByteArrayOutputStream();
-    try (ByteArrayOutputStream capture2 = capture) {
-      if (connection instanceof HttpURLConnection && HttpURLConnection.HTTP_UNAUTHORIZED == ((HttpURLConnection) connection).getResponseCode()) {
-        throw new ApiException.WrongPluginApiCredentials(connection.getURL());
+  protected R decodeJsonResult(final ApiTransport.Response response, final ResponseDecoder<R> decoder) throws ApiException {
+    final ResponseCapture capture = isResponseCaptureEnabled() ? ResponseCapture.acquire() : null;
+    boolean isConnectionReusable = false;
+    try {
+      final int statusCode = response.getStatusCode();
+      if (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+        drainAndClose(response.getBody());
+        isConnectionReusable = true;
+        if (statusCode == HttpURLConnection.HTTP_UNAUTHORIZED) {
+          throw new ApiException.WrongPluginApiCredentials(response.getUrl());
+        }
+        if (statusCode < HttpURLConnection.HTTP_INTERNAL_ERROR && statusCode != HttpURLConnection.HTTP_CLIENT_TIMEOUT) {
+          throw new ApiException.ClientError(response.getUrl(), statusCode);
+        }
+      }
+      // also status codes < 200, e.g. -1 if the response is not valid HTTP
+      if (statusCode < HttpURLConnection.HTTP_OK || statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+        throw new ApiException.ConnectionFailure(
+          response.getUrl(),
+          new IOException("Server returned HTTP response code: " + statusCode + " for URL: " + response.getUrl())
+        );
       }
-      try (TeeInputStream stream = new TeeInputStream(connection.getInputStream(), capture2)) {
-        return Optional.ofNullable(Json.createReader(stream).readObject())
-          .flatMap(decoder)
+      final InputStream responseStream;
+      try {
+        responseStream = response.getBody();
+      } catch (IOException e) {
+        // Some transports already read from the body here (e.g. to decompress it). Errors while reading the body
+        // are treated the same way as when they occur later while parsing (the parser wraps them in a JsonException).
+        throw new JsonException("The response body can't be read!", e);
+      }
+      try (InputStream stream = capture == null ? responseStream : new TeeInputStream(responseStream, capture)) {
+        final JsonParser parser = JsonCodec.createParser(stream);
+        streamTopLevelFields(parser, decoder);
+        // The parser is not closed before draining, closing it would also close the response stream
+        drainAndClose(stream);
+        parser.close();
+        isConnectionReusable = true;
+        return decoder.getResult()
           .orElseThrow(() -> {
-            Logging.warn(MessageFormat.format("Can''t decode this ({0} bytes):\n{1}", capture.toByteArray().length, new String(capture.toByteArray(), StandardCharsets.UTF_8)));
-            return new ApiException.DecodeResponse(connection.getURL(), null);
+            logUndecodableResponse(capture);
+            return new ApiException.DecodeResponse(response.getUrl(), null);
           });
       }
-    } catch (JsonException je) { // can be thrown by readObject()
-      Logging.warn("Can''t decode this ({0} bytes):\n{1}", capture.toByteArray().length, new String(capture.toByteArray(), StandardCharsets.UTF_8));
-      throw new ApiException.DecodeResponse(connection.getURL(), je);
+    } catch (JsonException je) { // can be thrown by the parser, e.g. JsonParsingException
+      logUndecodableResponse(capture);
+      throw new ApiException.DecodeResponse(response.getUrl(), je);
     } catch (IOException e) {
-      throw new ApiException.ConnectionFailure(connection.getURL(), e);
+      throw new ApiException.ConnectionFailure(response.getUrl(), e);
     } finally {
-      disconnect(connection);
+      if (capture != null) {
+        capture.close();
+      }
+      if (isConnectionReusable) {
+        response.release();
+      } else {
+        response.abort();
+      }
+    }
+  }
+
+  /**
+   * Capturing the response costs an extra copy of every byte that is read, so it's only done when the capture
+   * would actually be logged in case of an error: when debug logging or {@link RovasProperties#CAPTURE_RESPONSES} is enabled.
+   * @return {@code true} if the beginning of the response should be captured for diagnostics
+   */
+  private static boolean isResponseCaptureEnabled() {
+    return Logging.isDebugEnabled() || RovasProperties.CACHED_CAPTURE_RESPONSES.get();
+  }
+
+  private static void logUndecodableResponse(@Nullable final ResponseCapture capture) {
+    if (capture == null) {
+      Logging.warn("Can''t decode the response! Enable debug logging or the preference {0} to log the response.", RovasProperties.CAPTURE_RESPONSES.getKey());
+    } else {
+      Logging.warn("Can''t decode this ({0} bytes{1}):\n{2}", capture.getTotalSize(), capture.isTruncated() ? ", truncated" : "", capture.getContent());
+    }
+  }
+
+  /**
+   * Passes the fields of the top-level JSON object to the decoder, until either the decoder has everything it needs,
+   * or the end of the object is reached.
+   * @param parser the parser that is positioned before the start of the top-level object
+   * @param decoder the decoder that receives the fields
+   * @throws JsonParsingException if the response is not a JSON object
+   */
+  private static void streamTopLevelFields(final JsonParser parser, final ResponseDecoder<?> decoder) {
+    if (!parser.hasNext() || parser.next() != JsonParser.Event.START_OBJECT) {
+      throw new JsonParsingException("The response is not a JSON object!", parser.getLocation());
+    }
+    boolean isDone = false;
+    while (!isDone) {
+      final JsonParser.Event event = parser.next();
+      if (event == JsonParser.Event.END_OBJECT) {
+        break;
+      }
+      final String key = parser.getString();
+      isDone = decoder.decodeField(key, parser.next(), parser);
     }
   }
 
-  private static void disconnect(final URLConnection connection) {
-    Utils.instanceOfAndCast(connection, HttpURLConnection.class).ifPresent(HttpURLConnection::disconnect);
+  /**
+   * Reads the given stream until the end and closes it. Only a fully consumed response stream allows
+   * the transport to reuse the connection for the next request.
+   * @param stream the stream to drain
+   * @throws IOException if reading or closing the stream fails
+   */
+  private static void drainAndClose(@NotNull final InputStream stream) throws IOException {
+    try (InputStream s = stream) {
+      final byte[] buffer = new byte[1024];
+      //noinspection StatementWithEmptyBody
+      while (s.read(buffer) >= 0) {
+        // discard the remaining bytes
+      }
+    }
+  }
+
+  /**
+   * The attempts of one query, they are made one after the other, never concurrently. The retry policy
+   * and the deadline are determined when the query starts.
+   */
+  private final class Attempts {
+    private final RetryPolicy policy = retryPolicy;
+    private final CircuitBreaker circuitBreaker = CircuitBreaker.forBaseUrl(urlProvider.baseUrl());
+    private final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.getOverallTimeoutMillis());
+    /**
+     * The number of attempts that were made so far. The attempts are made one after the other
+     * (when made asynchronously, handing over to the next thread establishes a happens-before relation).
+     */
+    private int count; // = 0
+
+    /**
+     * @throws ApiException.ConnectionFailure if the circuit of the server is open, so no request is sent
+     */
+    void ensureRequestAllowed() throws ApiException.ConnectionFailure {
+      if (!circuitBreaker.isRequestAllowed()) {
+        throw new ApiException.ConnectionFailure(
+          queryUrl,
+          new IOException("The server " + circuitBreaker.getBaseUrl() + " could not be reached recently, the query is not sent."),
+          false
+        );
+      }
+    }
+
+    /**
+     * Makes the next attempt and records its outcome in the {@link CircuitBreaker}
+     * @param credentials the user's API credentials
+     * @return the response returned by the server
+     * @throws ApiException if the attempt failed
+     */
+    R next(final ApiCredentials credentials) throws ApiException {
+      count++;
+      final int attemptTimeoutMillis = (int) Math.max(1, Math.min(
+        Math.min(policy.getAttemptTimeoutMillis(), Integer.MAX_VALUE),
+        TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())
+      ));
+      try {
+        final R result = query(credentials, attemptTimeoutMillis);
+        circuitBreaker.onSuccess();
+        return result;
+      } catch (final ApiException e) {
+        if (e instanceof ApiException.ConnectionFailure) {
+          circuitBreaker.onConnectionFailure();
+        } else {
+          circuitBreaker.onSuccess();
+        }
+        throw e;
+      }
+    }
+
+    /**
+     * @param e the exception with which the last attempt failed
+     * @return the delay in milliseconds, after which the next attempt should be made
+     * @throws ApiException the given exception, if no further attempt should be made
+     */
+    long getBackoffMillis(final ApiException e) throws ApiException {
+      if (count >= policy.getMaxAttempts() || !policy.isRetryable(e, isIdempotent())) {
+        throw e;
+      }
+      final long backoffMillis = policy.getBackoffMillis(count);
+      if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis) >= deadline) {
+        throw e;
+      }
+      Logging.info(
+        "[rovas] API query ''{0}'' failed (attempt {1}/{2}), retrying in {3} ms: {4}",
+        getQueryLabel(), count, policy.getMaxAttempts(), backoffMillis, Optional.ofNullable(e.getCause()).orElse(e)
+      );
+      return backoffMillis;
+    }
   }
 
   /**
@@ -191,6 +599,15 @@ public abstract class ApiQuery<R, EC extends ApiQuery.ErrorCode> {
      */
     @NotNull
     private final String translatableMessage;
+    /**
+     * {@code true} if the error occured because the server could not be reached (see {@link ApiException.ConnectionFailure})
+     */
+    private final boolean isConnectionFailure;
+    /**
+     * {@code true} if the error is a connection failure, after which the request might have reached the server
+     * (see {@link ApiException.ConnectionFailure#isRequestSent()})
+     */
+    private final boolean isRequestPossiblySent;
 
     /**
      * Creates a new error code
@@ -198,8 +615,32 @@ public abstract class ApiQuery<R, EC extends ApiQuery.ErrorCode> {
      * @param translatableMessage an error message, should be a string that can be passed to {@link I18n#tr(String, Object...)}
      */
     public ErrorCode(@NotNull final Optional<Integer> code, @NotNull final String translatableMessage) {
+      this(code, translatableMessage, false, false);
+    }
+
+    /**
+     * Creates a new error code for an exception that occured during the query. The code is empty.
+     * @param exception the exception, its (untranslated) message is used as message of the error code
+     */
+    public ErrorCode(@NotNull final ApiException exception) {
+      this(
+        Optional.empty(),
+        exception.getMessage(),
+        exception instanceof ApiException.ConnectionFailure,
+        exception instanceof ApiException.ConnectionFailure && ((ApiException.ConnectionFailure) exception).isRequestSent()
+      );
+    }
+
+    private ErrorCode(
+      @NotNull final Optional<Integer> code,
+      @NotNull final String translatableMessage,
+      final boolean isConnectionFailure,
+      final boolean isRequestPossiblySent
+    ) {
       this.code = Objects.requireNonNull(code);
       this.translatableMessage = Objects.requireNonNull(translatableMessage);
+      this.isConnectionFailure = isConnectionFailure;
+      this.isRequestPossiblySent = isRequestPossiblySent;
     }
 
     /**
@@ -218,6 +659,23 @@ public abstract class ApiQuery<R, EC extends ApiQuery.ErrorCode> {
       return translatableMessage;
     }
 
+    /**
+     * @return {@code true} if the server could not be reached, or the connection broke down before the response
+     *   could be read. In that case the query can be repeated later.
+     */
+    public boolean isConnectionFailure() {
+      return isConnectionFailure;
+    }
+
+    /**
+     * @return {@code true} if the connection broke down after the request might have reached the server.
+     *   Then the server might have processed the request, even though no response was received.
+     *   Always {@code false} if this is no {@link #isConnectionFailure() connection failure}.
+     */
+    public boolean isRequestPossiblySent() {
+      return isRequestPossiblySent;
+    }
+
     @Override
     public String toString() {
       return "ErrorCode " +
@@ -0,0 +1,184 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.Optional;
+
+import com.drew.lang.annotations.NotNull;
+import com.drew.lang.annotations.Nullable;
+
+import org.openstreetmap.josm.tools.Logging;
+
+import app.rovas.josm.model.RovasProperties;
+
+/**
+ * <p>Sends the HTTP requests of the {@link ApiQuery}s. Which implementation is used, is determined by the preference
+ * {@link RovasProperties#API_TRANSPORT}, see {@link #forName(String)}:</p>
+ * <ul>
+ *   <li>{@value #JOSM_HTTP_CLIENT} (default): JOSM's {@link org.openstreetmap.josm.tools.HttpClient}, which respects
+ *     the proxy settings of JOSM and logs the requests like all other requests of JOSM</li>
+ *   <li>{@value #URL_CONNECTION}: a plain {@link java.net.HttpURLConnection}</li>
+ *   <li>{@value #JAVA_HTTP_CLIENT}: the {@code java.net.http.HttpClient}, only available when JOSM runs on Java 11
+ *     or later (the implementation is contained in the plugin jar as multi-release class)</li>
+ * </ul>
+ */
+public interface ApiTransport {
+  /**
+   * The name of the transport that uses JOSM's {@link org.openstreetmap.josm.tools.HttpClient}
+   */
+  String JOSM_HTTP_CLIENT = "josm-http-client";
+  /**
+   * The name of the transport that uses {@link java.net.HttpURLConnection}
+   */
+  String URL_CONNECTION = "url-connection";
+  /**
+   * The name of the transport that uses {@code java.net.http.HttpClient}
+   */
+  String JAVA_HTTP_CLIENT = "java-http-client";
+
+  /**
+   * @param name the name of a transport (one of {@link #JOSM_HTTP_CLIENT}, {@link #URL_CONNECTION}, {@link #JAVA_HTTP_CLIENT})
+   * @return the transport with the given name. For unknown names (or if the transport is not available on
+   *   the running Java version), the {@link #JOSM_HTTP_CLIENT} transport is returned.
+   */
+  @NotNull
+  static ApiTransport forName(@Nullable final String name) {
+    if (URL_CONNECTION.equals(name)) {
+      return HttpUrlConnectionTransport.INSTANCE;
+    } else if (JAVA_HTTP_CLIENT.equals(name)) {
+      final Optional<ApiTransport> transport = JavaHttpClientTransport.getInstance();
+      if (transport.isPresent()) {
+        return transport.get();
+      }
+      Logging.warn("[rovas] The API transport {0} needs Java 11 or later, using {1} instead", name, JOSM_HTTP_CLIENT);
+    } else if (name != null && !JOSM_HTTP_CLIENT.equals(name)) {
+      Logging.warn("[rovas] Unknown API transport {0}, using {1} instead", name, JOSM_HTTP_CLIENT);
+    }
+    return JosmHttpClientTransport.INSTANCE;
+  }
+
+  /**
+   * @return the transport that is configured in the preference {@link RovasProperties#API_TRANSPORT}
+   */
+  @NotNull
+  static ApiTransport getDefault() {
+    return forName(RovasProperties.CACHED_API_TRANSPORT.get());
+  }
+
+  /**
+   * @return the name under which this transport can be selected, see {@link #forName(String)}
+   */
+  @NotNull
+  String getName();
+
+  /**
+   * Sends a POST request. The method returns as soon as the request is sent, for some transports the response
+   * might not have been received yet.
+   * @param url the URL to which the request is sent
+   * @param headers the request headers
+   * @param body the request body, it is sent with a fixed length
+   * @param timeoutMillis the connect timeout and the read timeout in milliseconds
+   * @return the response, the caller must either {@link Response#release() release} or {@link Response#abort() abort} it
+   * @throws ApiException.ConnectionFailure if the request could not be sent
+   *   (or the response could not be received, for transports that wait for it)
+   */
+  @NotNull
+  Response post(
+    @NotNull URL url,
+    @NotNull Map<String, String> headers,
+    @NotNull ByteArrayOutputStream body,
+    int timeoutMillis
+  ) throws ApiException.ConnectionFailure;
+
+  /**
+   * Sends a HEAD request, which is cheap for the server. It is useful to check if the server can be reached, or to
+   * establish a connection (DNS lookup, TCP and TLS handshake) that can be reused by the following requests.
+   * @param url the URL to which the request is sent
+   * @param timeoutMillis the connect timeout and the read timeout in milliseconds
+   * @return the response, the caller must either {@link Response#release() release} or {@link Response#abort() abort} it
+   * @throws ApiException.ConnectionFailure if the request could not be sent
+   *   (or the response could not be received, for transports that wait for it)
+   */
+  @NotNull
+  Response head(@NotNull URL url, int timeoutMillis) throws ApiException.ConnectionFailure;
+
+  /**
+   * Sends a {@link #head(URL, int) HEAD request} and releases the connection again, so it can be reused.
+   * @param url the URL to which the request is sent
+   * @param timeoutMillis the connect timeout and the read timeout in milliseconds
+   * @return the HTTP status code with which the server answered
+   * @throws ApiException.ConnectionFailure if the server could not be reached
+   */
+  default int ping(@NotNull final URL url, final int timeoutMillis) throws ApiException.ConnectionFailure {
+    final Response response = head(url, timeoutMillis);
+    try {
+      final int statusCode = response.getStatusCode();
+      // the response to a HEAD request has no body, closing it returns the connection to the keep-alive cache
+      response.getBody().close();
+      response.release();
+      return statusCode;
+    } catch (IOException e) {
+      response.abort();
+      throw new ApiException.ConnectionFailure(url, e);
+    }
+  }
+
+  /**
+   * The response to a request that was sent by an {@link ApiTransport}
+   */
+  interface Response {
+    /**
+     * @return the URL to which the request was sent
+     */
+    @NotNull
+    URL getUrl();
+
+    /**
+     * @return the HTTP status code of the response, waits for the response if it was not yet received
+     * @throws IOException if the response could not be received
+     */
+    int getStatusCode() throws IOException;
+
+    /**
+     * @return the body of the response (also for error status codes), possibly empty but not {@code null}
+     * @throws IOException if the response body can't be read
+     */
+    @NotNull
+    InputStream getBody() throws IOException;
+
+    /**
+     * Must be called after the body was read completely and closed. The underlying connection can then be reused
+     * for the next request to the same server.
+     */
+    void release();
+
+    /**
+     * Must be called if the response is not read completely, e.g. because an error occured.
+     * The underlying connection is closed.
+     */
+    void abort();
+  }
+
+  /**
+   * Transports that send the request and receive the response in one operation can't tell exactly, if the request
+   * reached the server when that operation fails. Only for some failures it's certain that it did not.
+   * @param exception the exception with which sending the request failed
+   * @return {@code false} if the exception occured before the request could reach the server, otherwise {@code true}
+   */
+  static boolean isRequestPossiblySent(@NotNull final IOException exception) {
+    return !(
+      exception instanceof ConnectException ||
+      exception instanceof UnknownHostException ||
+      exception instanceof NoRouteToHostException ||
+      // java.net.http.HttpConnectTimeoutException, which does not exist in Java 8
+      "java.net.http.HttpConnectTimeoutException".equals(exception.getClass().getName())
+    );
+  }
+}
@@ -0,0 +1,225 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.drew.lang.annotations.NotNull;
+
+import org.openstreetmap.josm.tools.ListenerList;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+import app.rovas.josm.util.VisibleForTesting;
+
+/**
+ * <p>Stops sending API queries to a server that is not reachable, so the queries fail fast instead of each one
+ * waiting for its timeouts. There is one circuit breaker per base URL of the API (see {@link #forBaseUrl(URL)}),
+ * it is shared by all {@link ApiQuery}s to that server.</p>
+ *
+ * <p>The circuit is initially closed (queries are sent). After {@link #DEFAULT_FAILURE_THRESHOLD} consecutive
+ * connection failures it opens, then all queries fail immediately. While it is open, a background probe sends
+ * a cheap {@code HEAD} request to the base URL (first after {@link #DEFAULT_INITIAL_PROBE_DELAY_MILLIS}, then with
+ * exponentially growing delays). As soon as the server answers the probe (with any HTTP status), the circuit is
+ * closed again and the {@link Listener}s are notified.</p>
+ */
+public final class CircuitBreaker {
+  private static final int DEFAULT_FAILURE_THRESHOLD = 3;
+  private static final long DEFAULT_INITIAL_PROBE_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(10);
+  private static final long DEFAULT_MAX_PROBE_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  private static final int PROBE_TIMEOUT_MILLIS = 5_000;
+  private static final long THREAD_KEEP_ALIVE_SECONDS = 5;
+
+  private static final Map<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+  private static final ScheduledThreadPoolExecutor PROBE_EXECUTOR = new ScheduledThreadPoolExecutor(
+    1,
+    Utils.newThreadFactory("rovas-api-probe-%d", Thread.NORM_PRIORITY)
+  );
+
+  static {
+    PROBE_EXECUTOR.setKeepAliveTime(THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+    PROBE_EXECUTOR.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * The state of the circuit
+   */
+  public enum State {
+    /**
+     * Queries are sent normally
+     */
+    CLOSED,
+    /**
+     * Queries fail immediately, until a probe succeeds
+     */
+    OPEN,
+    /**
+     * A probe is currently in progress, queries still fail immediately
+     */
+    HALF_OPEN
+  }
+
+  /**
+   * Is notified when the server can be reached again
+   */
+  @FunctionalInterface
+  public interface Listener {
+    /**
+     * Called (on the background thread of the probe) when a probe succeeded and the circuit was closed again
+     * @param baseUrl the base URL of the server that can be reached again
+     */
+    void circuitClosed(@NotNull URL baseUrl);
+  }
+
+  private final URL baseUrl;
+  private final int failureThreshold;
+  private final long initialProbeDelayMillis;
+  private final long maxProbeDelayMillis;
+  private final ListenerList<Listener> listeners = ListenerList.create();
+
+  // guarded by `this`
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private int failedProbes;
+
+  /**
+   * @param baseUrl the base URL of the API server (e.g. {@code https://rovas.app})
+   * @return the circuit breaker that is shared by all queries to this server
+   */
+  @NotNull
+  public static CircuitBreaker forBaseUrl(@NotNull final URL baseUrl) {
+    return BREAKERS.computeIfAbsent(
+      baseUrl.toString(),
+      __ -> new CircuitBreaker(baseUrl, DEFAULT_FAILURE_THRESHOLD, DEFAULT_INITIAL_PROBE_DELAY_MILLIS, DEFAULT_MAX_PROBE_DELAY_MILLIS)
+    );
+  }
+
+  /**
+   * Replaces the circuit breaker for a base URL, e.g. with one that has shorter delays
+   * @param breaker the circuit breaker that should be used for its base URL from now on
+   */
+  @VisibleForTesting
+  public static void register(@NotNull final CircuitBreaker breaker) {
+    BREAKERS.put(breaker.baseUrl.toString(), breaker);
+  }
+
+  /**
+   * Forgets all circuit breakers, so all circuits are closed again
+   */
+  @VisibleForTesting
+  public static void resetAll() {
+    BREAKERS.clear();
+  }
+
+  /**
+   * Creates a new circuit breaker
+   * @param baseUrl the base URL of the server
+   * @param failureThreshold the number of consecutive connection failures after which the circuit opens
+   * @param initialProbeDelayMillis the delay between opening the circuit and the first probe
+   * @param maxProbeDelayMillis the maximum delay between two probes, the delay doubles after every failed probe
+   */
+  @VisibleForTesting
+  public CircuitBreaker(@NotNull final URL baseUrl, final int failureThreshold, final long initialProbeDelayMillis, final long maxProbeDelayMillis) {
+    this.baseUrl = Objects.requireNonNull(baseUrl);
+    this.failureThreshold = failureThreshold;
+    this.initialProbeDelayMillis = initialProbeDelayMillis;
+    this.maxProbeDelayMillis = maxProbeDelayMillis;
+  }
+
+  @NotNull
+  public URL getBaseUrl() {
+    return baseUrl;
+  }
+
+  @NotNull
+  public synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * @return {@code true} if a query should be sent, {@code false} if it should fail immediately
+   */
+  public synchronized boolean isRequestAllowed() {
+    return state == State.CLOSED;
+  }
+
+  /**
+   * Records that the server answered a query (even if the answer was an error code or could not be decoded)
+   */
+  public synchronized void onSuccess() {
+    consecutiveFailures = 0;
+  }
+
+  /**
+   * Records that a query failed, because the server could not be reached. This might open the circuit.
+   */
+  public synchronized void onConnectionFailure() {
+    consecutiveFailures++;
+    if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+      Logging.warn("[rovas] {0} failed {1} times in a row, further API queries fail immediately until it can be reached again", baseUrl, consecutiveFailures);
+      state = State.OPEN;
+      failedProbes = 0;
+      scheduleProbe();
+    }
+  }
+
+  /**
+   * @param listener the listener that is notified when the server can be reached again
+   */
+  public void addListener(@NotNull final Listener listener) {
+    listeners.addListener(listener);
+  }
+
+  /**
+   * @param listener the listener that should no longer be notified
+   */
+  public void removeListener(@NotNull final Listener listener) {
+    listeners.removeListener(listener);
+  }
+
+  private synchronized void scheduleProbe() {
+    final int doublings = Math.min(failedProbes, 62);
+    final long delay = initialProbeDelayMillis > maxProbeDelayMillis >> doublings ? maxProbeDelayMillis : initialProbeDelayMillis << doublings;
+    PROBE_EXECUTOR.schedule(this::probe, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private void probe() {
+    synchronized (this) {
+      if (state != State.OPEN) {
+        return;
+      }
+      state = State.HALF_OPEN;
+    }
+    final boolean isReachable = isServerAnswering();
+    synchronized (this) {
+      if (isReachable) {
+        Logging.info("[rovas] {0} can be reached again", baseUrl);
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+      } else {
+        state = State.OPEN;
+        failedProbes++;
+        scheduleProbe();
+        return;
+      }
+    }
+    listeners.fireEvent(it -> it.circuitClosed(baseUrl));
+  }
+
+  /**
+   * @return {@code true} if the server answers a {@code HEAD} request to the base URL with any HTTP status
+   */
+  private boolean isServerAnswering() {
+    try {
+      ApiTransport.getDefault().ping(baseUrl, PROBE_TIMEOUT_MILLIS);
+      return true;
+    } catch (ApiException.ConnectionFailure e) {
+      Logging.debug("[rovas] Probe of {0} failed: {1}", baseUrl, e.getCause() == null ? e.getMessage() : e.getCause().getMessage());
+      return false;
+    }
+  }
+}
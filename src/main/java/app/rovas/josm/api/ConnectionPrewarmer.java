@@ -0,0 +1,102 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.drew.lang.annotations.NotNull;
+
+import org.openstreetmap.josm.tools.Logging;
+
+import app.rovas.josm.util.UrlProvider;
+import app.rovas.josm.util.VisibleForTesting;
+
+/**
+ * <p>Opens a connection to the Rovas server in the background, before the first API query of an upload is needed
+ * (e.g. when the upload to OSM starts, or when the dialog for the work report opens).</p>
+ *
+ * <p>A cheap {@code HEAD} request is sent to the base URL with the configured {@link ApiTransport}. That way the
+ * DNS lookup and the TCP and TLS handshakes are already done when the user submits the work report, and the
+ * connection waits in the keep-alive cache of the transport. Even if the server closes the idle connection
+ * before it is used, the resolved address and the TLS session are cached, so the next connection is established faster.</p>
+ */
+public final class ConnectionPrewarmer {
+  private static final int TIMEOUT_MILLIS = 5_000;
+  /**
+   * Within this time after a pre-warm, the connection is usually still in the keep-alive cache
+   */
+  private static final long DEFAULT_MIN_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+  private static final ConnectionPrewarmer INSTANCE = new ConnectionPrewarmer(DEFAULT_MIN_INTERVAL_MILLIS);
+
+  private final long minIntervalNanos;
+  /**
+   * The time ({@link System#nanoTime()}) of the last pre-warm for each base URL, guarded by `this`
+   */
+  private final Map<String, Long> lastPrewarms = new HashMap<>();
+
+  /**
+   * @return the instance that is shared by the whole plugin
+   */
+  @NotNull
+  public static ConnectionPrewarmer getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @param minIntervalMillis the minimum time between two pre-warms of a connection to the same server
+   */
+  @VisibleForTesting
+  ConnectionPrewarmer(final long minIntervalMillis) {
+    this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+  }
+
+  /**
+   * Opens a connection to the server of the given URL provider in the background. Nothing happens, if that was
+   * already done recently, or if the server could not be reached recently (see {@link CircuitBreaker}).
+   * @param urlProvider the URL provider, which determines the server
+   * @return a future that completes with {@code true} when the server answered, or with {@code false} if the
+   *   connection was not pre-warmed (because it was not necessary, or because the server could not be reached).
+   *   The future never completes exceptionally.
+   */
+  @NotNull
+  public CompletableFuture<Boolean> prewarm(@NotNull final UrlProvider urlProvider) {
+    final URL baseUrl = urlProvider.baseUrl();
+    if (!CircuitBreaker.forBaseUrl(baseUrl).isRequestAllowed() || !tryStart(baseUrl)) {
+      return CompletableFuture.completedFuture(false);
+    }
+    try {
+      return CompletableFuture.supplyAsync(() -> warmUp(baseUrl), ApiExecutor.getInstance());
+    } catch (RejectedExecutionException e) {
+      // the API executor is busy anyway, so there will be an open connection
+      return CompletableFuture.completedFuture(false);
+    }
+  }
+
+  private synchronized boolean tryStart(@NotNull final URL baseUrl) {
+    final long now = System.nanoTime();
+    final Long lastPrewarm = lastPrewarms.get(baseUrl.toString());
+    if (lastPrewarm != null && now - lastPrewarm < minIntervalNanos) {
+      return false;
+    }
+    lastPrewarms.put(baseUrl.toString(), now);
+    return true;
+  }
+
+  private static boolean warmUp(@NotNull final URL baseUrl) {
+    try {
+      final long start = System.nanoTime();
+      final int statusCode = ApiTransport.getDefault().ping(baseUrl, TIMEOUT_MILLIS);
+      Logging.debug("[rovas] Pre-warmed the connection to {0} in {1} ms (HTTP status {2})", baseUrl, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), statusCode);
+      return true;
+    } catch (ApiException.ConnectionFailure e) {
+      // no need to record this in the CircuitBreaker, the actual query will do that if the server is still not reachable
+      Logging.debug("[rovas] Could not pre-warm the connection to {0}: {1}", baseUrl, e.getCause() == null ? e.getMessage() : e.getCause().getMessage());
+      return false;
+    }
+  }
+}
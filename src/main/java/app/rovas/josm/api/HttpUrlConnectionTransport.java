@@ -0,0 +1,139 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+
+import com.drew.lang.annotations.NotNull;
+
+/**
+ * Sends the requests with a plain {@link HttpURLConnection}. This is the most lightweight transport, because the
+ * request body is streamed directly from the buffer into the connection. But it ignores the proxy settings of JOSM.
+ */
+final class HttpUrlConnectionTransport implements ApiTransport {
+  static final HttpUrlConnectionTransport INSTANCE = new HttpUrlConnectionTransport();
+
+  private HttpUrlConnectionTransport() {
+    // singleton, use INSTANCE
+  }
+
+  @NotNull
+  @Override
+  public String getName() {
+    return URL_CONNECTION;
+  }
+
+  @NotNull
+  @Override
+  public Response post(
+    @NotNull final URL url,
+    @NotNull final Map<String, String> headers,
+    @NotNull final ByteArrayOutputStream body,
+    final int timeoutMillis
+  ) throws ApiException.ConnectionFailure {
+    final HttpURLConnection connection = openConnection(url);
+    try {
+      headers.forEach(connection::setRequestProperty);
+      connection.setDoOutput(true);
+      connection.setDoInput(true);
+      connection.setConnectTimeout(timeoutMillis);
+      connection.setReadTimeout(timeoutMillis);
+      connection.setFixedLengthStreamingMode(body.size());
+      connection.setRequestMethod("POST");
+    } catch (IOException e) {
+      connection.disconnect();
+      throw new ApiException.ConnectionFailure(url, e, false);
+    }
+    try {
+      // Connecting separately, so it's clear if the request could not be sent at all
+      connection.connect();
+    } catch (IOException e) {
+      connection.disconnect();
+      throw new ApiException.ConnectionFailure(url, e, false);
+    }
+    try {
+      try (OutputStream out = connection.getOutputStream()) {
+        body.writeTo(out);
+      }
+    } catch (IOException e) {
+      connection.disconnect();
+      throw new ApiException.ConnectionFailure(url, e);
+    }
+    return new ConnectionResponse(connection);
+  }
+
+  @NotNull
+  @Override
+  public Response head(@NotNull final URL url, final int timeoutMillis) throws ApiException.ConnectionFailure {
+    final HttpURLConnection connection = openConnection(url);
+    try {
+      connection.setConnectTimeout(timeoutMillis);
+      connection.setReadTimeout(timeoutMillis);
+      connection.setRequestMethod("HEAD");
+      connection.connect();
+    } catch (IOException e) {
+      connection.disconnect();
+      throw new ApiException.ConnectionFailure(url, e, false);
+    }
+    return new ConnectionResponse(connection);
+  }
+
+  @NotNull
+  private static HttpURLConnection openConnection(@NotNull final URL url) throws ApiException.ConnectionFailure {
+    try {
+      final URLConnection connection = url.openConnection();
+      if (!(connection instanceof HttpURLConnection)) {
+        throw new IOException("Not an HTTP URL: " + url);
+      }
+      return (HttpURLConnection) connection;
+    } catch (final IOException e) {
+      throw new ApiException.ConnectionFailure(url, e, false);
+    }
+  }
+
+  private static final class ConnectionResponse implements Response {
+    private final HttpURLConnection connection;
+
+    ConnectionResponse(@NotNull final HttpURLConnection connection) {
+      this.connection = connection;
+    }
+
+    @NotNull
+    @Override
+    public URL getUrl() {
+      return connection.getURL();
+    }
+
+    @Override
+    public int getStatusCode() throws IOException {
+      return connection.getResponseCode();
+    }
+
+    @NotNull
+    @Override
+    public InputStream getBody() throws IOException {
+      if (getStatusCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+        final InputStream errorStream = connection.getErrorStream();
+        return errorStream == null ? new ByteArrayInputStream(new byte[0]) : errorStream;
+      }
+      return connection.getInputStream();
+    }
+
+    @Override
+    public void release() {
+      // nothing to do, the closed response stream already returned the connection to the keep-alive cache
+    }
+
+    @Override
+    public void abort() {
+      connection.disconnect();
+    }
+  }
+}
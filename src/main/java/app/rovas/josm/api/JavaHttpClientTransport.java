@@ -0,0 +1,28 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import java.util.Optional;
+
+import com.drew.lang.annotations.NotNull;
+
+/**
+ * <p>The transport that uses {@code java.net.http.HttpClient}, which is only available on Java 11 or later.</p>
+ *
+ * <p>This is the Java 8 version of the class, which is used when JOSM runs on Java 8 - 10. It never provides
+ * a transport, so {@link ApiTransport#forName(String)} falls back to the default transport.
+ * The actual implementation is in {@code src/main/java11}, it is packaged as multi-release class into the plugin jar.</p>
+ */
+final class JavaHttpClientTransport {
+  private JavaHttpClientTransport() {
+    // this version can't be instantiated
+  }
+
+  /**
+   * @return the transport if {@code java.net.http.HttpClient} can be used,
+   *   which is never the case for this version of the class, so an empty {@link Optional} is always returned
+   */
+  @NotNull
+  static Optional<ApiTransport> getInstance() {
+    return Optional.empty();
+  }
+}
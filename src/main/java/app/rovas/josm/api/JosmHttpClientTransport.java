@@ -0,0 +1,106 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+
+import com.drew.lang.annotations.NotNull;
+
+import org.openstreetmap.josm.tools.HttpClient;
+
+/**
+ * Sends the requests with JOSM's {@link HttpClient}. That way the proxy settings of JOSM are respected,
+ * and the requests are logged like all other requests of JOSM.
+ */
+final class JosmHttpClientTransport implements ApiTransport {
+  static final JosmHttpClientTransport INSTANCE = new JosmHttpClientTransport();
+
+  private JosmHttpClientTransport() {
+    // singleton, use INSTANCE
+  }
+
+  @NotNull
+  @Override
+  public String getName() {
+    return JOSM_HTTP_CLIENT;
+  }
+
+  @NotNull
+  @Override
+  public Response post(
+    @NotNull final URL url,
+    @NotNull final Map<String, String> headers,
+    @NotNull final ByteArrayOutputStream body,
+    final int timeoutMillis
+  ) throws ApiException.ConnectionFailure {
+    final HttpClient client = createClient(url, "POST", timeoutMillis).setRequestBody(body.toByteArray());
+    headers.forEach(client::setHeader);
+    return connect(url, client);
+  }
+
+  @NotNull
+  @Override
+  public Response head(@NotNull final URL url, final int timeoutMillis) throws ApiException.ConnectionFailure {
+    return connect(url, createClient(url, "HEAD", timeoutMillis));
+  }
+
+  @NotNull
+  private static HttpClient createClient(@NotNull final URL url, @NotNull final String method, final int timeoutMillis) {
+    return HttpClient.create(url, method)
+      .setConnectTimeout(timeoutMillis)
+      .setReadTimeout(timeoutMillis)
+      .useCache(false)
+      .keepAlive(true);
+  }
+
+  @NotNull
+  private static Response connect(@NotNull final URL url, @NotNull final HttpClient client) throws ApiException.ConnectionFailure {
+    try {
+      return new ClientResponse(url, client.connect());
+    } catch (IOException e) {
+      client.disconnect();
+      throw new ApiException.ConnectionFailure(url, e, ApiTransport.isRequestPossiblySent(e));
+    }
+  }
+
+  private static final class ClientResponse implements Response {
+    private final URL url;
+    private final HttpClient.Response response;
+
+    ClientResponse(@NotNull final URL url, @NotNull final HttpClient.Response response) {
+      this.url = url;
+      this.response = response;
+    }
+
+    @NotNull
+    @Override
+    public URL getUrl() {
+      return url;
+    }
+
+    @Override
+    public int getStatusCode() {
+      return response.getResponseCode();
+    }
+
+    @NotNull
+    @Override
+    public InputStream getBody() throws IOException {
+      // the HttpClient returns the error stream for error status codes
+      return response.getContent();
+    }
+
+    @Override
+    public void release() {
+      // nothing to do, the closed response stream already returned the connection to the keep-alive cache
+    }
+
+    @Override
+    public void abort() {
+      response.disconnect();
+    }
+  }
+}
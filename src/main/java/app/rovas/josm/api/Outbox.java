@@ -0,0 +1,368 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.json.JsonObject;
+
+import com.drew.lang.annotations.NotNull;
+import com.drew.lang.annotations.Nullable;
+
+import org.openstreetmap.josm.tools.I18n;
+import org.openstreetmap.josm.tools.ListenerList;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+import app.rovas.josm.model.ApiCredentials;
+import app.rovas.josm.util.JsonFileStore;
+import app.rovas.josm.util.UrlProvider;
+import app.rovas.josm.util.VisibleForTesting;
+
+/**
+ * <p>A durable queue of {@link Submission}s that could not be completed, because the Rovas server could not be reached.</p>
+ *
+ * <p>The queue is persisted to a file in the JOSM user data directory, so queued submissions survive a restart of JOSM.
+ * A background thread retries the remaining steps of each submission. After every attempt that fails because of
+ * a connection failure, the delay until the next attempt is doubled (starting at {@link #INITIAL_BACKOFF_MILLIS},
+ * up to {@link #MAX_BACKOFF_MILLIS}). Submissions that fail for other reasons (e.g. the server returned an error code)
+ * are removed from the queue, the {@link Listener}s are notified about that.</p>
+ *
+ * <p>The creation of a work report is only retried, if the request certainly did not reach the server. If the connection
+ * broke down after the request was sent, the work report might have been created, so the submission is handed back to
+ * the user (see {@link Listener#submissionPossiblyCreated(Submission)}) instead of possibly creating the work report
+ * a second time.</p>
+ */
+public final class Outbox {
+  /**
+   * The delay after the first failed attempt
+   */
+  private static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+  /**
+   * The maximum delay between two attempts
+   */
+  private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(30);
+  private static final long THREAD_KEEP_ALIVE_SECONDS = 5;
+  private static final int FILE_VERSION = 1;
+
+  private static Outbox instance;
+
+  /**
+   * Is notified when a queued submission leaves the outbox. The methods are called on the background thread of the outbox.
+   */
+  public interface Listener {
+    /**
+     * Called when the last step of a queued submission was successful
+     * @param submission the submission (at stage {@link Submission.Stage#CREATE_AUR})
+     */
+    void submissionCompleted(@NotNull Submission submission);
+
+    /**
+     * Called when a queued submission failed for another reason than a connection failure.
+     * It is removed from the outbox and will not be retried. Unless the submission is at stage
+     * {@link Submission.Stage#CREATE_AUR}, the work report was not created.
+     * @param submission the submission, at the stage which failed
+     * @param errorCode the error that occured
+     */
+    void submissionFailed(@NotNull Submission submission, @NotNull ApiQuery.ErrorCode errorCode);
+
+    /**
+     * Called when the connection broke down after the request to create the work report of a queued submission
+     * was sent. It is removed from the outbox and will not be retried, because it is unknown whether the work report
+     * was created. Only the user can find that out, by checking their work reports in Rovas.
+     * @param submission the submission, at stage {@link Submission.Stage#CREATE_WORK_REPORT}
+     */
+    void submissionPossiblyCreated(@NotNull Submission submission);
+  }
+
+  private final JsonFileStore store;
+  private final UrlProvider urlProvider;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+  private final ListenerList<Listener> listeners = ListenerList.create();
+  private final ScheduledThreadPoolExecutor worker;
+  /**
+   * An immutable copy of {@link #queue}, that is replaced after every change, so it can be read from any thread
+   */
+  private volatile List<Submission> pendingSubmissions = Collections.emptyList();
+
+  // the following fields are only accessed by the worker thread
+  private final List<Submission> queue = new ArrayList<>();
+  @Nullable
+  private ScheduledFuture<?> scheduledDrain;
+
+  /**
+   * @return the outbox that is persisted to the default location in the JOSM user data directory.
+   *   The queued submissions from the last session are retried in the background.
+   */
+  public static synchronized Outbox getInstance() {
+    if (instance == null) {
+      instance = new Outbox(
+        JsonFileStore.getDefaultFile("outbox.json"),
+        UrlProvider.getInstance(),
+        INITIAL_BACKOFF_MILLIS,
+        MAX_BACKOFF_MILLIS
+      );
+    }
+    return instance;
+  }
+
+  /**
+   * Creates an outbox, which immediately starts to load the submissions that are queued in the given file
+   * and to retry them in the background.
+   * @param file the file to which the queue is persisted
+   * @param urlProvider the URL provider for the API queries
+   * @param initialBackoffMillis the delay after the first failed attempt
+   * @param maxBackoffMillis the maximum delay between two attempts
+   */
+  @VisibleForTesting
+  Outbox(@NotNull final File file, @NotNull final UrlProvider urlProvider, final long initialBackoffMillis, final long maxBackoffMillis) {
+    // the file is only read and written on the worker thread, so the thread of the store is not used
+    this.store = new JsonFileStore(file, "rovas-outbox-store");
+    this.urlProvider = Objects.requireNonNull(urlProvider);
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+
+    this.worker = new ScheduledThreadPoolExecutor(1, Utils.newThreadFactory("rovas-outbox-%d", Thread.NORM_PRIORITY));
+    worker.setKeepAliveTime(THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+    worker.allowCoreThreadTimeOut(true);
+    worker.setRemoveOnCancelPolicy(true);
+
+    worker.execute(() -> {
+      queue.addAll(load());
+      onQueueChanged(false);
+    });
+    // don't wait for the backoff delay, when it is known that the server can be reached again
+    CircuitBreaker.forBaseUrl(urlProvider.baseUrl()).addListener(__ -> retryNow());
+  }
+
+  /**
+   * Adds a submission to the outbox, whose current stage just failed because the server could not be reached.
+   * It is persisted and retried in the background.
+   * @param submission the submission that should be retried later
+   */
+  public void enqueue(@NotNull final Submission submission) {
+    Objects.requireNonNull(submission);
+    worker.execute(() -> {
+      // the same submission must never be queued twice, otherwise the work report could be created twice
+      if (queue.removeIf(it -> it.getIdempotencyKey().equals(submission.getIdempotencyKey()))) {
+        Logging.info("[rovas] Replacing the queued submission with the same idempotency key: {0}", submission);
+      }
+      queue.add(submission.withFailedAttempt(System.currentTimeMillis() + getBackoffMillis(submission.getFailedAttempts())));
+      onQueueChanged(true);
+    });
+  }
+
+  /**
+   * Retries all queued submissions now, without waiting for the end of their backoff delay.
+   * Useful when it is known that the server can be reached again.
+   */
+  public void retryNow() {
+    worker.execute(() -> {
+      queue.replaceAll(it -> it.withStage(it.getStage(), it.getWorkReportId()));
+      onQueueChanged(true);
+    });
+  }
+
+  /**
+   * @return the submissions that are currently queued
+   */
+  @NotNull
+  public List<Submission> getPendingSubmissions() {
+    return pendingSubmissions;
+  }
+
+  /**
+   * @param listener the listener that is notified when a submission leaves the outbox
+   */
+  public void addListener(@NotNull final Listener listener) {
+    listeners.addListener(listener);
+  }
+
+  /**
+   * @param listener the listener that should no longer be notified
+   */
+  public void removeListener(@NotNull final Listener listener) {
+    listeners.removeListener(listener);
+  }
+
+  /**
+   * @param failedAttempts the number of attempts that already failed before
+   * @return the delay until the next attempt, doubled for every failed attempt, but never more than the maximum
+   */
+  @VisibleForTesting
+  long getBackoffMillis(final int failedAttempts) {
+    final int doublings = Math.max(0, Math.min(failedAttempts, 62));
+    return initialBackoffMillis > maxBackoffMillis >> doublings ? maxBackoffMillis : initialBackoffMillis << doublings;
+  }
+
+  /**
+   * Executes the remaining steps of all submissions, for which the backoff delay is over. Runs on the worker thread.
+   */
+  private void drain() {
+    final long now = System.currentTimeMillis();
+    for (final Submission submission : new ArrayList<>(queue)) {
+      if (submission.getNextAttemptMillis() <= now) {
+        Submission current = submission;
+        Submission next = executeStage(current);
+        while (next != null && next.getStage() != current.getStage()) {
+          // persist the progress, so a successful step is not repeated
+          queue.set(queue.indexOf(current), next);
+          onQueueChanged(false);
+          current = next;
+          next = executeStage(current);
+        }
+        if (next == null) {
+          queue.remove(current);
+        } else {
+          queue.set(queue.indexOf(current), next);
+        }
+      }
+    }
+    onQueueChanged(false);
+  }
+
+  /**
+   * Executes the API query for the current stage of the given submission
+   * @param submission the submission
+   * @return the submission at the next stage if the query was successful, the submission at the same stage if it
+   *   should be retried later, or {@code null} if the submission is done (successfully or not)
+   */
+  @Nullable
+  private Submission executeStage(@NotNull final Submission submission) {
+    final Optional<ApiCredentials> lookedUpCredentials = submission.lookUpCredentials();
+    if (!lookedUpCredentials.isPresent()) {
+      return handleError(
+        submission,
+        new ApiQuery.ErrorCode(Optional.empty(), I18n.marktr("The API key and token in the preferences were changed after the work report was queued."))
+      );
+    }
+    final AtomicReference<Submission> next = new AtomicReference<>();
+    final ApiCredentials credentials = lookedUpCredentials.get();
+    switch (submission.getStage()) {
+      case CHECK_SHAREHOLDER:
+        new ApiCheckOrAddShareholder(urlProvider).query(
+          credentials,
+          meritId -> {
+            ShareholderCache.getInstance().put(credentials, meritId);
+            next.set(submission.withStage(Submission.Stage.CREATE_WORK_REPORT, 0));
+          },
+          errorCode -> next.set(handleError(submission, errorCode))
+        );
+        break;
+      case CREATE_WORK_REPORT:
+        new ApiCreateWorkReport(urlProvider, submission).query(
+          credentials,
+          workReportId -> next.set(submission.withStage(Submission.Stage.CREATE_AUR, workReportId)),
+          errorCode -> {
+            if (errorCode.isNotAShareholder()) {
+              ShareholderCache.getInstance().invalidate(credentials);
+            }
+            if (errorCode.isRequestPossiblySent()) {
+              // repeating the query could create the work report a second time, only the user can find out
+              Logging.warn("[rovas] Queued submission possibly created, but no response was received: {0}", submission);
+              listeners.fireEvent(it -> it.submissionPossiblyCreated(submission));
+              return;
+            }
+            next.set(
+              !errorCode.isConnectionFailure() && errorCode.getContinueOption() == ApiCreateWorkReport.ErrorCode.ContinueOption.CONTINUE_TO_AUR_QUERY
+                ? submission.withStage(Submission.Stage.CREATE_AUR, 0)
+                : handleError(submission, errorCode)
+            );
+          }
+        );
+        break;
+      case CREATE_AUR:
+      default:
+        new ApiCreateAur(urlProvider, submission.getWorkReportId(), submission.getMinutes()).query(
+          credentials,
+          result -> {
+            Logging.info("[rovas] Queued submission completed: {0}", submission);
+            listeners.fireEvent(it -> it.submissionCompleted(submission));
+          },
+          errorCode -> next.set(handleError(submission, errorCode))
+        );
+        break;
+    }
+    return next.get();
+  }
+
+  @Nullable
+  private Submission handleError(@NotNull final Submission submission, @NotNull final ApiQuery.ErrorCode errorCode) {
+    if (errorCode.isConnectionFailure()) {
+      final long backoffMillis = getBackoffMillis(submission.getFailedAttempts());
+      Logging.info("[rovas] Rovas server not reachable, retrying in {0} seconds: {1}", backoffMillis / 1000, submission);
+      return submission.withFailedAttempt(System.currentTimeMillis() + backoffMillis);
+    }
+    Logging.warn("[rovas] Queued submission failed ({0}): {1}", errorCode, submission);
+    listeners.fireEvent(it -> it.submissionFailed(submission, errorCode));
+    return null;
+  }
+
+  /**
+   * Publishes the new state of the queue, persists it and schedules the next drain. Runs on the worker thread.
+   * @param persist if the queue should be written to the file
+   */
+  private void onQueueChanged(final boolean persist) {
+    final List<Submission> snapshot = Collections.unmodifiableList(new ArrayList<>(queue));
+    if (persist || !snapshot.equals(pendingSubmissions)) {
+      save(snapshot);
+    }
+    pendingSubmissions = snapshot;
+
+    if (scheduledDrain != null) {
+      scheduledDrain.cancel(false);
+      scheduledDrain = null;
+    }
+    queue.stream()
+      .mapToLong(Submission::getNextAttemptMillis)
+      .min()
+      .ifPresent(nextAttempt -> scheduledDrain = worker.schedule(
+        this::drain,
+        Math.max(0, nextAttempt - System.currentTimeMillis()),
+        TimeUnit.MILLISECONDS
+      ));
+  }
+
+  @NotNull
+  private List<Submission> load() {
+    final List<Submission> result = store.read(json -> {
+      final List<Submission> submissions = new ArrayList<>();
+      for (final JsonObject submission : json.getJsonArray("submissions").getValuesAs(JsonObject.class)) {
+        final Optional<Submission> decoded = Submission.readFrom(submission);
+        if (decoded.isPresent()) {
+          submissions.add(decoded.get());
+        } else {
+          Logging.warn("[rovas] Skipping invalid submission in the outbox {0}: {1}", store.getFile(), submission);
+        }
+      }
+      return submissions;
+    }).orElseGet(ArrayList::new);
+    if (!result.isEmpty()) {
+      Logging.info("[rovas] {0} submissions are queued in the outbox", result.size());
+    }
+    return result;
+  }
+
+  /**
+   * Writes the submissions to the outbox file, so they survive a restart of JOSM
+   * @param submissions the submissions to persist
+   */
+  private void save(@NotNull final List<Submission> submissions) {
+    final boolean isWritten = store.write(generator -> {
+      generator.writeStartObject().write("version", FILE_VERSION).writeStartArray("submissions");
+      submissions.forEach(it -> it.writeTo(generator));
+      generator.writeEnd().writeEnd();
+    });
+    if (!isWritten) {
+      Logging.warn("[rovas] Queued submissions will not survive a restart");
+    }
+  }
+}
@@ -0,0 +1,41 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import java.util.Objects;
+import java.util.Optional;
+import javax.json.stream.JsonParser;
+
+import com.drew.lang.annotations.NotNull;
+
+import app.rovas.josm.util.JsonUtil;
+
+/**
+ * Decodes an integer code (an error code or an ID) from one field of the top-level JSON object.
+ * @see ResponseDecoder#responseCode(String)
+ */
+final class ResponseCodeDecoder implements ResponseDecoder<Integer> {
+  @NotNull
+  private final String key;
+  @NotNull
+  private Optional<Integer> result = Optional.empty();
+
+  ResponseCodeDecoder(@NotNull final String key) {
+    this.key = Objects.requireNonNull(key);
+  }
+
+  @Override
+  public boolean decodeField(@NotNull final String key, @NotNull final JsonParser.Event valueEvent, @NotNull final JsonParser parser) {
+    if (this.key.equals(key)) {
+      result = JsonUtil.extractResponseCode(valueEvent, parser);
+      return true;
+    }
+    JsonUtil.skipValue(valueEvent, parser);
+    return false;
+  }
+
+  @NotNull
+  @Override
+  public Optional<Integer> getResult() {
+    return result;
+  }
+}
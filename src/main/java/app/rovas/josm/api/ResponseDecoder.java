@@ -0,0 +1,47 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import java.util.Optional;
+import javax.json.stream.JsonParser;
+
+import com.drew.lang.annotations.NotNull;
+
+/**
+ * <p>Decodes the top-level JSON object of an API response while it is streamed from a {@link JsonParser}.</p>
+ *
+ * <p>The decoder only sees the fields of the top-level object one after the other, it picks the values it needs
+ * and ignores all others. As soon as it has all values it needs, the rest of the response is not parsed anymore.
+ * A decoder is stateful, so a new instance is needed for every response.</p>
+ *
+ * @param <R> the type of the decoded result
+ */
+public interface ResponseDecoder<R> {
+  /**
+   * Is called for every field of the top-level JSON object in the order in which they appear in the response.
+   * The decoder must consume the value completely (for objects and arrays see {@link app.rovas.josm.util.JsonUtil#skipValue(JsonParser.Event, JsonParser)}).
+   *
+   * @param key the key of the field
+   * @param valueEvent the event that the parser returned for the value of the field
+   * @param parser the parser, which is positioned at the value of the field
+   * @return {@code true} if the decoder has all values it needs, so parsing can stop
+   */
+  boolean decodeField(@NotNull String key, @NotNull JsonParser.Event valueEvent, @NotNull JsonParser parser);
+
+  /**
+   * @return the decoded result, or an empty {@link Optional} if the fields that were seen so far are not sufficient
+   *   or not valid
+   */
+  @NotNull
+  Optional<R> getResult();
+
+  /**
+   * Creates a decoder for responses in the form {@code {"result": "42"}} or {@code {"result": 42}}.
+   * The code can be provided as integer, or as string (as long as it is an integer number),
+   * same as {@link app.rovas.josm.util.JsonUtil#extractResponseCode(javax.json.JsonObject, String)}.
+   * @param key the key of the field in which the code is stored
+   * @return a new decoder that stops as soon as it has seen the field with the given key
+   */
+  static ResponseDecoder<Integer> responseCode(@NotNull final String key) {
+    return new ResponseCodeDecoder(key);
+  }
+}
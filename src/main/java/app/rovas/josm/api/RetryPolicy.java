@@ -0,0 +1,103 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openstreetmap.josm.tools.CheckParameterUtil;
+
+/**
+ * <p>Determines how often and how long an {@link ApiQuery} is retried, when it fails with an
+ * {@link ApiException.ConnectionFailure} (timeouts, HTTP status codes 5xx, connection resets, …).
+ * Other exceptions (like {@link ApiException.WrongPluginApiCredentials}, {@link ApiException.ClientError} for other
+ * 4xx status codes, or {@link ApiException.DecodeResponse}) are never retried, because another attempt would fail
+ * the same way.</p>
+ *
+ * <p>Between two attempts, the query waits for an exponentially growing delay. The delay is randomized
+ * ("jitter", a random value between half of the delay and the full delay), so that many clients that failed
+ * at the same time don't all retry at the same time.</p>
+ */
+public final class RetryPolicy {
+  /**
+   * Makes only a single attempt
+   */
+  public static final RetryPolicy NO_RETRIES = new RetryPolicy(1, TimeUnit.SECONDS.toMillis(10), TimeUnit.SECONDS.toMillis(10), 0, 0);
+  /**
+   * The policy that is used by default: up to three attempts within 30 seconds
+   */
+  public static final RetryPolicy DEFAULT = new RetryPolicy(3, TimeUnit.SECONDS.toMillis(10), TimeUnit.SECONDS.toMillis(30), 500, TimeUnit.SECONDS.toMillis(4));
+
+  private final int maxAttempts;
+  private final long attemptTimeoutMillis;
+  private final long overallTimeoutMillis;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+
+  /**
+   * Creates a new retry policy
+   * @param maxAttempts the maximum number of attempts, including the first one (at least 1)
+   * @param attemptTimeoutMillis the time after which a single attempt is aborted, this is applied to
+   *   the connect timeout and to the read timeout
+   * @param overallTimeoutMillis no further attempt is started, if it would start after this time has passed
+   *   since the first attempt. Also the timeout of the last attempt is shortened, so it ends in time.
+   * @param initialBackoffMillis the delay after the first failed attempt, it is doubled after every further failed attempt
+   * @param maxBackoffMillis the maximum delay between two attempts
+   */
+  public RetryPolicy(
+    final int maxAttempts,
+    final long attemptTimeoutMillis,
+    final long overallTimeoutMillis,
+    final long initialBackoffMillis,
+    final long maxBackoffMillis
+  ) {
+    CheckParameterUtil.ensureThat(maxAttempts >= 1, () -> "At least one attempt is needed (was " + maxAttempts + ")!");
+    CheckParameterUtil.ensureThat(attemptTimeoutMillis > 0 && overallTimeoutMillis > 0, () -> "Timeouts must be positive!");
+    CheckParameterUtil.ensureThat(initialBackoffMillis >= 0 && maxBackoffMillis >= initialBackoffMillis, () -> "Invalid backoff delays!");
+    this.maxAttempts = maxAttempts;
+    this.attemptTimeoutMillis = attemptTimeoutMillis;
+    this.overallTimeoutMillis = overallTimeoutMillis;
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public long getAttemptTimeoutMillis() {
+    return attemptTimeoutMillis;
+  }
+
+  public long getOverallTimeoutMillis() {
+    return overallTimeoutMillis;
+  }
+
+  /**
+   * @param failedAttempts the number of attempts that failed so far ({@code >= 1})
+   * @return the delay before the next attempt, it is randomized between half of the exponential delay and the full delay
+   */
+  public long getBackoffMillis(final int failedAttempts) {
+    final int doublings = Math.max(0, Math.min(failedAttempts - 1, 62));
+    final long delay = initialBackoffMillis > maxBackoffMillis >> doublings ? maxBackoffMillis : initialBackoffMillis << doublings;
+    return delay == 0 ? 0 : delay / 2 + ThreadLocalRandom.current().nextLong(delay - delay / 2 + 1);
+  }
+
+  /**
+   * @param exception the exception with which an attempt failed
+   * @param isIdempotent if the query can be repeated without side effects, even if the server already received it
+   * @return {@code true} if another attempt could succeed: only for connection failures, and for queries that are
+   *   not idempotent, only if the request was not sent yet
+   */
+  public boolean isRetryable(final ApiException exception, final boolean isIdempotent) {
+    return exception instanceof ApiException.ConnectionFailure &&
+      (isIdempotent || !((ApiException.ConnectionFailure) exception).isRequestSent());
+  }
+
+  @Override
+  public String toString() {
+    return "RetryPolicy{maxAttempts=" + maxAttempts +
+      ", attemptTimeout=" + attemptTimeoutMillis +
+      "ms, overallTimeout=" + overallTimeoutMillis +
+      "ms, backoff=" + initialBackoffMillis + '…' + maxBackoffMillis + "ms}";
+  }
+}
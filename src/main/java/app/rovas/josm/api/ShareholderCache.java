@@ -0,0 +1,205 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import javax.json.JsonObject;
+
+import com.drew.lang.annotations.NotNull;
+
+import org.openstreetmap.josm.tools.Logging;
+
+import app.rovas.josm.model.ApiCredentials;
+import app.rovas.josm.model.RovasProperties;
+import app.rovas.josm.util.JsonFileStore;
+import app.rovas.josm.util.VisibleForTesting;
+
+/**
+ * <p>Remembers for which API credentials the {@link ApiCheckOrAddShareholder} query was successful, so the query
+ * does not have to be sent before every work report. The shareholder status of a user in a project almost never
+ * changes, so an entry is valid for {@link RovasProperties#SHAREHOLDER_CACHE_TTL_HOURS} hours. If the server
+ * still reports that the user is no shareholder ({@link ApiCreateWorkReport} returns {@code -1}),
+ * the entry is {@link #invalidate(ApiCredentials) invalidated}.</p>
+ *
+ * <p>The entries are keyed by a hash of the API key and the project ID (the API key itself is not stored),
+ * and they are persisted to a file in the JOSM user data directory, so they survive a restart of JOSM.
+ * The file is read and written on a background thread.</p>
+ */
+public final class ShareholderCache {
+  private static final int FILE_VERSION = 1;
+  /**
+   * 16 bytes result in 22 Base64 characters
+   */
+  private static final int API_KEY_HASH_BYTES = 16;
+
+  private static ShareholderCache instance;
+
+  private final JsonFileStore store;
+  private final LongSupplier clock;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  /**
+   * @return the cache that is persisted to the default location in the JOSM user data directory
+   */
+  public static synchronized ShareholderCache getInstance() {
+    if (instance == null) {
+      instance = new ShareholderCache(
+        JsonFileStore.getDefaultFile("shareholders.json"),
+        System::currentTimeMillis
+      );
+    }
+    return instance;
+  }
+
+  /**
+   * Replaces the instance that {@link #getInstance()} returns by an empty cache that is persisted to the given file,
+   * so tests don't read or write the file in the JOSM user data directory
+   * @param file the file to which the entries of the new instance are persisted, it should not exist yet
+   */
+  @VisibleForTesting
+  public static synchronized void replaceInstance(@NotNull final File file) {
+    instance = new ShareholderCache(file, System::currentTimeMillis);
+  }
+
+  /**
+   * Creates a cache, which immediately starts to load the entries from the given file in the background
+   * @param file the file to which the entries are persisted
+   * @param clock supplies the current time in milliseconds since the epoch
+   */
+  @VisibleForTesting
+  ShareholderCache(@NotNull final File file, @NotNull final LongSupplier clock) {
+    this.store = new JsonFileStore(file, "rovas-shareholder-cache");
+    this.clock = Objects.requireNonNull(clock);
+    store.execute(this::load);
+  }
+
+  /**
+   * @param credentials the API credentials
+   * @return {@code true} if the shareholder check for these credentials was successful within the TTL,
+   *   so it does not have to be repeated
+   */
+  public boolean isShareholder(@NotNull final ApiCredentials credentials) {
+    final Entry entry = entries.get(toKey(credentials));
+    return entry != null && !entry.isExpired(clock.getAsLong(), getTtlMillis());
+  }
+
+  /**
+   * Remembers that the shareholder check for these credentials was successful
+   * @param credentials the API credentials, for which {@link ApiCheckOrAddShareholder} was successful
+   * @param meritId the worker merit allocation ID that the server returned
+   */
+  public void put(@NotNull final ApiCredentials credentials, final int meritId) {
+    if (getTtlMillis() > 0) {
+      entries.put(toKey(credentials), new Entry(meritId, clock.getAsLong()));
+      store.execute(this::save);
+    }
+  }
+
+  /**
+   * Forgets the successful shareholder check for these credentials, so it is made again before the next work report
+   * @param credentials the API credentials
+   */
+  public void invalidate(@NotNull final ApiCredentials credentials) {
+    final String key = toKey(credentials);
+    if (entries.remove(key) != null) {
+      Logging.info("[rovas] The cached shareholder status for project {0} is no longer valid", credentials.getProjectId());
+    }
+    store.execute(() -> {
+      // removed again on the thread of the store, in case the entry was loaded from the file in the meantime
+      entries.remove(key);
+      save();
+    });
+  }
+
+  private static long getTtlMillis() {
+    return TimeUnit.HOURS.toMillis(Math.max(0, RovasProperties.SHAREHOLDER_CACHE_TTL_HOURS.get()));
+  }
+
+  /**
+   * @param credentials the API credentials
+   * @return the key for the credentials, which consists of a hash of the API key and the project ID.
+   *   The API token is not part of the key, because the shareholder status does not depend on it.
+   */
+  @NotNull
+  @VisibleForTesting
+  static String toKey(@NotNull final ApiCredentials credentials) {
+    try {
+      final byte[] hash = MessageDigest.getInstance("SHA-256").digest(credentials.getApiKey().getBytes(StandardCharsets.UTF_8));
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, API_KEY_HASH_BYTES)) + ':' + credentials.getProjectId();
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Reads the entries from the file. Entries that were already added in the meantime are not replaced.
+   * Runs on the thread of the {@link #store}.
+   */
+  private void load() {
+    store.read(json -> {
+      final Map<String, Entry> loadedEntries = new HashMap<>();
+      for (final JsonObject entry : json.getJsonArray("entries").getValuesAs(JsonObject.class)) {
+        loadedEntries.put(
+          entry.getString("key"),
+          new Entry(entry.getInt("merit_id"), entry.getJsonNumber("checked_at").longValue())
+        );
+      }
+      return loadedEntries;
+    }).ifPresent(loadedEntries -> loadedEntries.forEach(entries::putIfAbsent));
+  }
+
+  /**
+   * Writes the entries that are not yet expired to the file. Runs on the thread of the {@link #store}.
+   */
+  private void save() {
+    final long now = clock.getAsLong();
+    final long ttlMillis = getTtlMillis();
+    store.write(generator -> {
+      generator.writeStartObject().write("version", FILE_VERSION).writeStartArray("entries");
+      entries.forEach((key, entry) -> {
+        if (!entry.isExpired(now, ttlMillis)) {
+          generator.writeStartObject()
+            .write("key", key)
+            .write("merit_id", entry.meritId)
+            .write("checked_at", entry.checkedAtMillis)
+            .writeEnd();
+        }
+      });
+      generator.writeEnd().writeEnd();
+    });
+  }
+
+  /**
+   * Waits until the entries are loaded and all changes are written to the file
+   * @throws InterruptedException if the current thread is interrupted while waiting
+   */
+  @VisibleForTesting
+  public void awaitWrites() throws InterruptedException {
+    store.awaitTasks();
+  }
+
+  private static final class Entry {
+    private final int meritId;
+    private final long checkedAtMillis;
+
+    Entry(final int meritId, final long checkedAtMillis) {
+      this.meritId = meritId;
+      this.checkedAtMillis = checkedAtMillis;
+    }
+
+    boolean isExpired(final long nowMillis, final long ttlMillis) {
+      return nowMillis - checkedAtMillis >= ttlMillis;
+    }
+  }
+}
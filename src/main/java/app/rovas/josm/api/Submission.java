@@ -0,0 +1,326 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.Optional;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+
+import com.drew.lang.annotations.NotNull;
+import com.drew.lang.annotations.Nullable;
+
+import org.openstreetmap.josm.data.osm.Changeset;
+
+import app.rovas.josm.model.ApiCredentials;
+import app.rovas.josm.model.RovasProperties;
+
+/**
+ * <p>A work report that should be submitted to Rovas, together with the step of the submission at which it currently is.
+ * It contains everything that is needed to make the remaining API queries, so it can be queued in the {@link Outbox}
+ * and be submitted later (even after a restart of JOSM).</p>
+ *
+ * <p>The API key and token are not part of the submission, so they are never written to the outbox file.
+ * Only a {@link ApiCredentials#getKeyAndTokenHash() hash} of them is kept, the credentials are
+ * {@link #lookUpCredentials() looked up} in the preferences when the API queries are made.</p>
+ *
+ * <p>Every submission has an idempotency key, which is {@link #createIdempotencyKey(Integer, int, long) derived} when
+ * the submission is created. It is sent as {@code access_token} of the work report. The key is persisted together with
+ * the submission in the outbox file, so all attempts to submit it send the same key, also after a restart of JOSM
+ * (deriving it again in a new session would result in a different key). The key is only a stable token: it is not
+ * known whether the Rovas server recognizes work reports with the same access token as duplicates. That's why
+ * a request that might already have reached the server is not repeated automatically, see {@link Outbox}.</p>
+ *
+ * <p>Instances are immutable, every change of the state results in a new instance.</p>
+ */
+public final class Submission {
+  /**
+   * A random value that is generated once per JOSM session, so the idempotency keys are not predictable
+   */
+  private static final byte[] SESSION_NONCE = new byte[16];
+  /**
+   * 12 bytes result in 16 Base64 characters
+   */
+  private static final int IDEMPOTENCY_KEY_BYTES = 12;
+
+  static {
+    new SecureRandom().nextBytes(SESSION_NONCE);
+  }
+
+  /**
+   * The steps of a submission, in the order in which they are executed
+   */
+  public enum Stage {
+    /**
+     * Checks if the user is a shareholder of the project (and makes them one, if possible), see {@link ApiCheckOrAddShareholder}
+     */
+    CHECK_SHAREHOLDER,
+    /**
+     * Creates the work report, see {@link ApiCreateWorkReport}
+     */
+    CREATE_WORK_REPORT,
+    /**
+     * Creates the asset usage record for the work report, see {@link ApiCreateAur}
+     */
+    CREATE_AUR
+  }
+
+  @NotNull
+  private final String keyAndTokenHash;
+  private final int projectId;
+  private final int minutes;
+  @Nullable
+  private final Integer changesetId;
+  private final long dateStarted;
+  @NotNull
+  private final String idempotencyKey;
+  @NotNull
+  private final Stage stage;
+  private final int workReportId;
+  private final int failedAttempts;
+  private final long nextAttemptMillis;
+
+  private Submission(
+    @NotNull final String keyAndTokenHash,
+    final int projectId,
+    final int minutes,
+    @Nullable final Integer changesetId,
+    final long dateStarted,
+    @NotNull final String idempotencyKey,
+    @NotNull final Stage stage,
+    final int workReportId,
+    final int failedAttempts,
+    final long nextAttemptMillis
+  ) {
+    this.keyAndTokenHash = Objects.requireNonNull(keyAndTokenHash);
+    this.projectId = projectId;
+    this.minutes = minutes;
+    this.changesetId = changesetId;
+    this.dateStarted = dateStarted;
+    this.idempotencyKey = Objects.requireNonNull(idempotencyKey);
+    this.stage = Objects.requireNonNull(stage);
+    this.workReportId = workReportId;
+    this.failedAttempts = failedAttempts;
+    this.nextAttemptMillis = nextAttemptMillis;
+  }
+
+  /**
+   * Creates a new submission, that starts at the given stage
+   * @param credentials the credentials with which the API queries are made
+   * @param minutes the number of minutes that are reported
+   * @param changeset the changeset for which the work is reported, can be empty but not null
+   * @param stage the stage from which the submission should continue
+   * @param workReportId the ID of the work report, only relevant for {@link Stage#CREATE_AUR}
+   * @return the new submission
+   */
+  public static Submission create(
+    @NotNull final ApiCredentials credentials,
+    final int minutes,
+    @NotNull final Optional<Changeset> changeset,
+    @NotNull final Stage stage,
+    final int workReportId
+  ) {
+    final Integer changesetId = changeset.map(Changeset::getId).orElse(null);
+    final long dateStarted = changeset.map(Changeset::getCreatedAt).orElse(Instant.now()).getEpochSecond();
+    return new Submission(
+      credentials.getKeyAndTokenHash(),
+      credentials.getProjectId(),
+      minutes,
+      changesetId,
+      dateStarted,
+      createIdempotencyKey(changesetId, minutes, dateStarted),
+      stage,
+      workReportId,
+      0,
+      0
+    );
+  }
+
+  /**
+   * Derives the idempotency key for a work report. Within one JOSM session, the key for the same changeset and
+   * the same number of minutes is always the same. Keys from different sessions differ (the key depends on a random
+   * value that is generated once per session), as do keys for work reports without changeset that started
+   * at different times.
+   * @param changesetId the ID of the changeset for which the work is reported, {@code null} if there is none
+   * @param minutes the number of minutes that are reported
+   * @param dateStarted the time when the work started, in seconds since the epoch
+   * @return the key, consisting of 16 URL-safe Base64 characters
+   */
+  @NotNull
+  static String createIdempotencyKey(@Nullable final Integer changesetId, final int minutes, final long dateStarted) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(SESSION_NONCE);
+      digest.update(
+        (changesetId == null ? "-:" + dateStarted : changesetId.toString()).concat(":" + minutes).getBytes(StandardCharsets.UTF_8)
+      );
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest.digest(), IDEMPOTENCY_KEY_BYTES));
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Looks up the API key and token in the preferences, because they are not part of the submission
+   * @return the API key and token from the preferences together with the project ID of this submission,
+   *   or an empty {@link Optional} if the preferences no longer contain the API key and token with which
+   *   the submission was created
+   */
+  @NotNull
+  public Optional<ApiCredentials> lookUpCredentials() {
+    return ApiCredentials.createFrom(
+      RovasProperties.WRITER.get(RovasProperties.ROVAS_API_KEY),
+      RovasProperties.WRITER.get(RovasProperties.ROVAS_API_TOKEN),
+      projectId
+    ).filter(it -> it.getKeyAndTokenHash().equals(keyAndTokenHash));
+  }
+
+  /**
+   * @return the ID of the project for which the work is reported
+   */
+  public int getProjectId() {
+    return projectId;
+  }
+
+  public int getMinutes() {
+    return minutes;
+  }
+
+  @Nullable
+  public Integer getChangesetId() {
+    return changesetId;
+  }
+
+  /**
+   * @return the time when the reported work started, in seconds since the epoch
+   */
+  public long getDateStarted() {
+    return dateStarted;
+  }
+
+  /**
+   * @return the key that identifies this submission in all attempts to submit it
+   */
+  @NotNull
+  public String getIdempotencyKey() {
+    return idempotencyKey;
+  }
+
+  @NotNull
+  public Stage getStage() {
+    return stage;
+  }
+
+  /**
+   * @return the ID of the work report that was created, or 0 if it is not known
+   */
+  public int getWorkReportId() {
+    return workReportId;
+  }
+
+  /**
+   * @return the number of attempts that failed in a row, because the server could not be reached
+   */
+  public int getFailedAttempts() {
+    return failedAttempts;
+  }
+
+  /**
+   * @return the time at which the next attempt should be made (in milliseconds since the epoch)
+   */
+  public long getNextAttemptMillis() {
+    return nextAttemptMillis;
+  }
+
+  /**
+   * @param nextStage the stage that is next
+   * @param workReportId the ID of the work report
+   * @return a copy of this submission, that continues at the given stage. The failed attempts are reset.
+   */
+  Submission withStage(@NotNull final Stage nextStage, final int workReportId) {
+    return new Submission(keyAndTokenHash, projectId, minutes, changesetId, dateStarted, idempotencyKey, nextStage, workReportId, 0, 0);
+  }
+
+  /**
+   * @param nextAttemptMillis the time of the next attempt (in milliseconds since the epoch)
+   * @return a copy of this submission with one more failed attempt, that should be retried at the given time
+   */
+  Submission withFailedAttempt(final long nextAttemptMillis) {
+    return new Submission(
+      keyAndTokenHash, projectId, minutes, changesetId, dateStarted, idempotencyKey, stage, workReportId, failedAttempts + 1, nextAttemptMillis
+    );
+  }
+
+  /**
+   * Writes this submission as JSON object
+   * @param generator the generator to which the object is written
+   */
+  void writeTo(@NotNull final JsonGenerator generator) {
+    generator.writeStartObject()
+      .write("key_and_token_hash", keyAndTokenHash)
+      .write("project_id", projectId)
+      .write("minutes", minutes);
+    if (changesetId == null) {
+      generator.writeNull("changeset_id");
+    } else {
+      generator.write("changeset_id", changesetId);
+    }
+    generator
+      .write("date_started", dateStarted)
+      .write("idempotency_key", idempotencyKey)
+      .write("stage", stage.name())
+      .write("work_report_id", workReportId)
+      .write("failed_attempts", failedAttempts)
+      .write("next_attempt", nextAttemptMillis)
+      .writeEnd();
+  }
+
+  /**
+   * Reads a submission that was written by {@link #writeTo(JsonGenerator)}
+   * @param json the JSON object
+   * @return the submission, or an empty {@link Optional} if the object is not a valid submission
+   */
+  static Optional<Submission> readFrom(@NotNull final JsonObject json) {
+    try {
+      final JsonValue changesetIdValue = json.get("changeset_id");
+      final Integer changesetId = changesetIdValue instanceof JsonNumber ? ((JsonNumber) changesetIdValue).intValue() : null;
+      final int minutes = json.getInt("minutes");
+      final long dateStarted = json.getJsonNumber("date_started").longValue();
+      return Optional.of(new Submission(
+        json.getString("key_and_token_hash"),
+        json.getInt("project_id"),
+        minutes,
+        changesetId,
+        dateStarted,
+        json.getString("idempotency_key"),
+        Stage.valueOf(json.getString("stage")),
+        json.getInt("work_report_id"),
+        json.getInt("failed_attempts"),
+        json.getJsonNumber("next_attempt").longValue()
+      ));
+    } catch (final ClassCastException | NullPointerException | IllegalArgumentException e) {
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "Submission{" +
+      "minutes=" + minutes +
+      ", changesetId=" + changesetId +
+      ", idempotencyKey=" + idempotencyKey +
+      ", stage=" + stage +
+      ", workReportId=" + workReportId +
+      ", failedAttempts=" + failedAttempts +
+      '}';
+  }
+}
@@ -1,12 +1,18 @@
 // License: GPL. For details, see LICENSE file.
 package app.rovas.josm.api;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import javax.json.JsonObject;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
 
 import com.drew.lang.annotations.NotNull;
 
+import app.rovas.josm.util.JsonUtil;
+
 public class UserData {
   @NotNull
   public String getCountry() {
@@ -90,6 +96,91 @@ public class UserData {
     }
   }
 
+  /**
+   * Writes the user data as JSON object with the same fields as the API response,
+   * so it can be read again by {@link #createFromJson(JsonObject)}
+   * @param generator the generator to which the object is written
+   */
+  void writeTo(@NotNull final JsonGenerator generator) {
+    generator.writeStartObject()
+      .write("country", country)
+      .write("uid", uid)
+      .write("username", username)
+      .write("lang_code", langCode)
+      .write("email", email)
+      .write("comp_score", Integer.toString(complianceScore))
+      .write("whole_name", wholeName)
+      .writeEnd();
+  }
+
+  /**
+   * @return a new decoder that reads the same fields as {@link #createFromJson(JsonObject)}, but directly from the
+   *   streamed response. It stops as soon as all fields are read, or as soon as one of them has an unexpected type.
+   */
+  public static ResponseDecoder<UserData> decoder() {
+    return new StreamingDecoder();
+  }
+
+  private static final class StreamingDecoder implements ResponseDecoder<UserData> {
+    private static final String[] STRING_KEYS = {"country", "username", "lang_code", "email", "comp_score", "whole_name"};
+    private static final String UID_KEY = "uid";
+
+    private final Map<String, String> strings = new HashMap<>(STRING_KEYS.length * 2);
+    private Integer uid;
+    private boolean isInvalid;
+
+    @Override
+    public boolean decodeField(@NotNull final String key, @NotNull final JsonParser.Event valueEvent, @NotNull final JsonParser parser) {
+      if (UID_KEY.equals(key)) {
+        if (valueEvent == JsonParser.Event.VALUE_NUMBER) {
+          uid = parser.getInt();
+        } else {
+          isInvalid = true;
+        }
+      } else if (isStringKey(key)) {
+        if (valueEvent == JsonParser.Event.VALUE_STRING) {
+          strings.put(key, parser.getString());
+        } else {
+          isInvalid = true;
+        }
+      }
+      JsonUtil.skipValue(valueEvent, parser);
+      return isInvalid || (uid != null && strings.size() == STRING_KEYS.length);
+    }
+
+    private static boolean isStringKey(final String key) {
+      for (final String stringKey : STRING_KEYS) {
+        if (stringKey.equals(key)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @NotNull
+    @Override
+    public Optional<UserData> getResult() {
+      if (isInvalid || uid == null || strings.size() != STRING_KEYS.length) {
+        return Optional.empty();
+      }
+      try {
+        return Optional.of(
+          new UserData(
+            strings.get("country"),
+            uid,
+            strings.get("username"),
+            strings.get("lang_code"),
+            strings.get("email"),
+            strings.get("comp_score"),
+            strings.get("whole_name")
+          )
+        );
+      } catch (final NumberFormatException e) {
+        return Optional.empty();
+      }
+    }
+  }
+
   @Override
   public String toString() {
     return "UserData{" +
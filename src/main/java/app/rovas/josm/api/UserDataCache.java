@@ -0,0 +1,250 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import javax.json.JsonObject;
+
+import com.drew.lang.annotations.NotNull;
+
+import org.openstreetmap.josm.tools.ListenerList;
+import org.openstreetmap.josm.tools.Logging;
+
+import app.rovas.josm.model.ApiCredentials;
+import app.rovas.josm.util.JsonFileStore;
+import app.rovas.josm.util.UrlProvider;
+import app.rovas.josm.util.VisibleForTesting;
+
+/**
+ * <p>Caches the {@link UserData} of the users, so it can be displayed immediately, without waiting for
+ * the {@link ApiFetchUserData} query. The profile of a user rarely changes.</p>
+ *
+ * <p>{@link #get(ApiCredentials)} always returns the cached user data immediately, even if it is stale
+ * (older than {@link #DEFAULT_MAX_AGE_MILLIS}). In that case (or if nothing is cached yet) the user data is refreshed
+ * in the background, and the {@link Listener}s are notified as soon as the new user data arrived
+ * (stale-while-revalidate). Concurrent refreshes for the same user share the same query.</p>
+ *
+ * <p>The entries are keyed by a hash of API key and API token, and they are persisted to a file in the JOSM user
+ * data directory, so they survive a restart of JOSM. The file is read and written on a background thread.
+ * Entries that were not refreshed for {@link #MAX_ENTRY_AGE_MILLIS} are dropped when the file is read or written,
+ * so the file does not keep growing with the profiles of users that no longer use this JOSM installation.</p>
+ */
+public final class UserDataCache {
+  /**
+   * After this time the cached user data is refreshed, when it is requested the next time
+   */
+  private static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+  /**
+   * Entries older than this are no longer read from or written to the file
+   */
+  @VisibleForTesting
+  static final long MAX_ENTRY_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+  private static final int FILE_VERSION = 1;
+
+  private static UserDataCache instance;
+
+  /**
+   * Is notified when the cached user data changes
+   */
+  @FunctionalInterface
+  public interface Listener {
+    /**
+     * Called (on a background thread) when the user data for a user was refreshed or removed
+     * @param credentials the credentials of the user
+     * @param userData the new user data, empty if the credentials turned out to be wrong
+     */
+    void userDataChanged(@NotNull ApiCredentials credentials, @NotNull Optional<UserData> userData);
+  }
+
+  private final JsonFileStore store;
+  private final UrlProvider urlProvider;
+  private final long maxAgeMillis;
+  private final LongSupplier clock;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final Map<String, CompletableFuture<UserData>> pendingRefreshes = new ConcurrentHashMap<>();
+  private final ListenerList<Listener> listeners = ListenerList.create();
+
+  /**
+   * @return the cache that is persisted to the default location in the JOSM user data directory
+   */
+  public static synchronized UserDataCache getInstance() {
+    if (instance == null) {
+      instance = new UserDataCache(
+        JsonFileStore.getDefaultFile("user-data.json"),
+        UrlProvider.getInstance(),
+        DEFAULT_MAX_AGE_MILLIS,
+        System::currentTimeMillis
+      );
+    }
+    return instance;
+  }
+
+  /**
+   * Creates a cache, which immediately starts to load the entries from the given file in the background
+   * @param file the file to which the entries are persisted
+   * @param urlProvider the URL provider for the {@link ApiFetchUserData} queries
+   * @param maxAgeMillis the age after which cached user data is refreshed
+   * @param clock supplies the current time in milliseconds since the epoch
+   */
+  @VisibleForTesting
+  UserDataCache(@NotNull final File file, @NotNull final UrlProvider urlProvider, final long maxAgeMillis, @NotNull final LongSupplier clock) {
+    this.store = new JsonFileStore(file, "rovas-user-data-cache");
+    this.urlProvider = Objects.requireNonNull(urlProvider);
+    this.maxAgeMillis = maxAgeMillis;
+    this.clock = Objects.requireNonNull(clock);
+
+    store.execute(this::load);
+  }
+
+  /**
+   * Returns the cached user data immediately. If it is stale or missing, it is {@link #refresh(ApiCredentials) refreshed}
+   * in the background, the {@link Listener}s are notified when that is done.
+   * @param credentials the credentials of the user
+   * @return the cached user data (possibly stale), or an empty {@link Optional} if nothing is cached for the user
+   */
+  @NotNull
+  public Optional<UserData> get(@NotNull final ApiCredentials credentials) {
+    final Entry entry = entries.get(toKey(credentials));
+    if (entry == null || clock.getAsLong() - entry.fetchedAtMillis >= maxAgeMillis) {
+      refresh(credentials);
+    }
+    return Optional.ofNullable(entry).map(it -> it.userData);
+  }
+
+  /**
+   * Fetches the user data from the server in the background. If a refresh for the same user is already
+   * in progress, no further query is sent, instead the future of the running refresh is returned.
+   * @param credentials the credentials of the user
+   * @return a future that completes with the fetched user data, or completes exceptionally
+   *   like {@link ApiQuery#queryAsync(ApiCredentials)}
+   */
+  @NotNull
+  public CompletableFuture<UserData> refresh(@NotNull final ApiCredentials credentials) {
+    final String key = toKey(credentials);
+    final CompletableFuture<UserData> result = new CompletableFuture<>();
+    final CompletableFuture<UserData> pendingRefresh = pendingRefreshes.putIfAbsent(key, result);
+    if (pendingRefresh != null) {
+      return pendingRefresh;
+    }
+    new ApiFetchUserData(urlProvider).queryAsync(credentials).whenComplete((userData, throwable) -> {
+      // the entry is updated before the refresh is no longer pending, so no second refresh is started in between
+      if (throwable == null) {
+        entries.put(key, new Entry(userData, clock.getAsLong()));
+        store.execute(this::save);
+        pendingRefreshes.remove(key, result);
+        listeners.fireEvent(it -> it.userDataChanged(credentials, Optional.of(userData)));
+        result.complete(userData);
+      } else {
+        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        Logging.debug("[rovas] Could not refresh the user data: {0}", cause.getMessage());
+        // the stale user data is still better than nothing, unless it belongs to credentials that are no longer valid
+        final boolean isRemoved = cause instanceof ApiException.WrongPluginApiCredentials && entries.remove(key) != null;
+        if (isRemoved) {
+          store.execute(this::save);
+        }
+        pendingRefreshes.remove(key, result);
+        if (isRemoved) {
+          listeners.fireEvent(it -> it.userDataChanged(credentials, Optional.empty()));
+        }
+        result.completeExceptionally(throwable);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * @param listener the listener that is notified when the cached user data changes
+   */
+  public void addListener(@NotNull final Listener listener) {
+    listeners.addListener(listener);
+  }
+
+  /**
+   * @param listener the listener that should no longer be notified
+   */
+  public void removeListener(@NotNull final Listener listener) {
+    listeners.removeListener(listener);
+  }
+
+  /**
+   * @param credentials the credentials of a user
+   * @return the key for the credentials, a hash of the API key and the API token (the user data does not depend
+   *   on the project ID). So the credentials themselves are not written to the file.
+   */
+  @NotNull
+  private static String toKey(@NotNull final ApiCredentials credentials) {
+    return credentials.getKeyAndTokenHash();
+  }
+
+  /**
+   * Reads the entries from the file, except the ones older than {@link #MAX_ENTRY_AGE_MILLIS}.
+   * Entries that were already fetched in the meantime are not replaced. Runs on the thread of the {@link #store}.
+   */
+  private void load() {
+    final long now = clock.getAsLong();
+    store.read(json -> {
+      final Map<String, Entry> loadedEntries = new HashMap<>();
+      for (final JsonObject entry : json.getJsonArray("entries").getValuesAs(JsonObject.class)) {
+        final Optional<UserData> userData = UserData.createFromJson(entry.getJsonObject("user_data"));
+        final long fetchedAtMillis = entry.getJsonNumber("fetched_at").longValue();
+        if (now - fetchedAtMillis >= MAX_ENTRY_AGE_MILLIS) {
+          Logging.debug("[rovas] Dropping user data that was fetched more than {0} days ago", TimeUnit.MILLISECONDS.toDays(MAX_ENTRY_AGE_MILLIS));
+        } else if (userData.isPresent()) {
+          loadedEntries.put(entry.getString("key"), new Entry(userData.get(), fetchedAtMillis));
+        } else {
+          Logging.warn("[rovas] Skipping invalid user data in {0}", store.getFile());
+        }
+      }
+      return loadedEntries;
+    }).ifPresent(loadedEntries -> loadedEntries.forEach(entries::putIfAbsent));
+  }
+
+  /**
+   * Drops the entries older than {@link #MAX_ENTRY_AGE_MILLIS} and writes the remaining ones to the file.
+   * Runs on the thread of the {@link #store}.
+   */
+  private void save() {
+    final long now = clock.getAsLong();
+    entries.values().removeIf(entry -> now - entry.fetchedAtMillis >= MAX_ENTRY_AGE_MILLIS);
+    store.write(generator -> {
+      generator.writeStartObject().write("version", FILE_VERSION).writeStartArray("entries");
+      entries.forEach((key, entry) -> {
+        generator.writeStartObject()
+          .write("key", key)
+          .write("fetched_at", entry.fetchedAtMillis)
+          .writeKey("user_data");
+        entry.userData.writeTo(generator);
+        generator.writeEnd();
+      });
+      generator.writeEnd().writeEnd();
+    });
+  }
+
+  /**
+   * Waits until the entries are loaded and all changes are written to the file
+   * @throws InterruptedException if the current thread is interrupted while waiting
+   */
+  @VisibleForTesting
+  void awaitWrites() throws InterruptedException {
+    store.awaitTasks();
+  }
+
+  private static final class Entry {
+    @NotNull
+    private final UserData userData;
+    private final long fetchedAtMillis;
+
+    Entry(@NotNull final UserData userData, final long fetchedAtMillis) {
+      this.userData = Objects.requireNonNull(userData);
+      this.fetchedAtMillis = fetchedAtMillis;
+    }
+  }
+}
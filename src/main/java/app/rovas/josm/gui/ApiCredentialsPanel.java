@@ -163,9 +163,9 @@ public class ApiCredentialsPanel extends VerticallyScrollablePanel {
 
     buildGui();
 
-    setApiKeyValue(RovasProperties.ROVAS_API_KEY.get());
-    setApiTokenValue(RovasProperties.ROVAS_API_TOKEN.get());
-    setActiveProjectIdValue(RovasProperties.ACTIVE_PROJECT_ID.get());
+    setApiKeyValue(RovasProperties.WRITER.get(RovasProperties.ROVAS_API_KEY));
+    setApiTokenValue(RovasProperties.WRITER.get(RovasProperties.ROVAS_API_TOKEN));
+    setActiveProjectIdValue(RovasProperties.WRITER.get(RovasProperties.ACTIVE_PROJECT_ID));
   }
 
   /**
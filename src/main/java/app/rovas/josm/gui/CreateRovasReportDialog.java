@@ -23,9 +23,12 @@ import org.openstreetmap.josm.gui.widgets.JMultilineLabel;
 import org.openstreetmap.josm.tools.GBC;
 import org.openstreetmap.josm.tools.I18n;
 import org.openstreetmap.josm.tools.ImageProvider;
+import org.openstreetmap.josm.tools.Logging;
 import org.openstreetmap.josm.tools.Utils;
 
 import app.rovas.josm.RovasPlugin;
+import app.rovas.josm.api.ConnectionPrewarmer;
+import app.rovas.josm.gui.upload.SpeculativeShareholderCheck;
 import app.rovas.josm.gui.upload.UploadStep1AddShareholder;
 import app.rovas.josm.model.TimeTrackingManager;
 import app.rovas.josm.util.GuiComponentFactory;
@@ -50,18 +53,23 @@ public class CreateRovasReportDialog extends JDialog {
       public void actionPerformed(final ActionEvent e) {
         new UploadStep1AddShareholder(
           hoursModel.getNumber().intValue() * 60 + minutesModel.getNumber().intValue(),
-          changeset
+          changeset,
+          speculativeShareholderCheck
         ).showStep(
           Optional.of(CreateRovasReportDialog.this),
           UrlProvider.getInstance(),
           CreateRovasReportDialog.this.timeTrackingManager
-        );
+        ).exceptionally(throwable -> {
+          Logging.error(throwable);
+          return null;
+        });
       }
     }
   );
 
   private final transient Optional<Changeset> changeset;
   private final TimeTrackingManager timeTrackingManager;
+  private final transient Optional<SpeculativeShareholderCheck> speculativeShareholderCheck;
 
   /**
    * The dialog that is shown after an OSM upload completed. With it, the user can correct the recorded time
@@ -76,6 +84,10 @@ public class CreateRovasReportDialog extends JDialog {
 
     this.timeTrackingManager = timeTrackingManager;
     this.changeset = changeset;
+    // while the user checks the reported time, the connection for submitting the report is established
+    ConnectionPrewarmer.getInstance().prewarm(UrlProvider.getInstance());
+    // the shareholder check of the first upload step does not depend on the reported time, so it can start right away
+    this.speculativeShareholderCheck = SpeculativeShareholderCheck.start(UrlProvider.getInstance());
     this.hoursModel = new SpinnerNumberModel(Utils.clamp(defaultReportedMinutes / 60, 0, TimeConverterUtil.MAX_HOURS), 0, TimeConverterUtil.MAX_HOURS, 1);
     this.minutesModel = new SpinnerNumberModel(defaultReportedMinutes % 60, 0, 59, 1);
 
@@ -66,6 +66,8 @@ public class RovasConnectorDialog extends ToggleDialog implements TimeTrackingUp
 
     panel.add(new JLabel(I18n.tr("Active time")), GBC_LEFT_COLUMN);
     panel.add(timerValue, GBC_RIGHT_COLUMN);
+    panel.add(new JLabel(I18n.tr("Rovas account")), GBC_LEFT_COLUMN);
+    panel.add(new UserDataLabel(), GBC_RIGHT_COLUMN);
 
     updatePreviousTime();
     previousTimePanel.add(previousTimeLabel, BorderLayout.CENTER);
@@ -126,7 +128,9 @@ public class RovasConnectorDialog extends ToggleDialog implements TimeTrackingUp
   public void destroy() {
     super.destroy();
     timeTrackingManager.removeTimeTrackingUpdateListener(this);
-    RovasProperties.ALREADY_TRACKED_TIME.put(timeTrackingManager.commit());
+    RovasProperties.persistAlreadyTrackedTime(timeTrackingManager.commit());
+    // JOSM is shutting down, so persist everything now
+    RovasProperties.WRITER.flush();
   }
 
   @Override
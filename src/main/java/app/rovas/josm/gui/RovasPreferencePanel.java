@@ -78,6 +78,9 @@ public final class RovasPreferencePanel extends ApiCredentialsPanel {
    */
   @SuppressWarnings("JavadocReference")
   private void extendGui() {
+    add(new JLabel(I18n.tr("Rovas account")), GBC_COLUMN_A);
+    add(new UserDataLabel(), GBC_COLUMNS_BCD);
+
     add(new JPanel(), GBC_COLUMN_A);
     add(GuiComponentFactory.createWrapperPanel(feeNote), GBC_COLUMNS_BCD);
 
@@ -9,7 +9,8 @@ import app.rovas.josm.model.TimeTrackingManager;
  */
 public interface TimeTrackingUpdateListener {
   /**
-   * This is called each time an update occurs
+   * This is called each time an update occurs. Depending on the {@link TimeTrackingManager.NotificationResolution}
+   * that the listener was registered with, this happens for every change or only when the tracked minutes change.
    * @param n the total number of seconds that have been tracked so far
    */
   void updateNumberOfTrackedSeconds(final long n);
@@ -0,0 +1,72 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.gui;
+
+import java.util.Optional;
+import javax.swing.JLabel;
+
+import com.drew.lang.annotations.NotNull;
+import com.drew.lang.annotations.Nullable;
+
+import org.openstreetmap.josm.gui.util.GuiHelper;
+import org.openstreetmap.josm.tools.I18n;
+
+import app.rovas.josm.api.UserData;
+import app.rovas.josm.api.UserDataCache;
+import app.rovas.josm.model.ApiCredentials;
+import app.rovas.josm.model.RovasProperties;
+
+/**
+ * Shows the profile of the Rovas user, whose API credentials are set in the preferences.
+ * While the label is displayed, it shows the {@link UserDataCache cached} profile and is updated
+ * when the profile is refreshed in the background.
+ */
+public class UserDataLabel extends JLabel implements UserDataCache.Listener {
+  /**
+   * The credentials for which the profile was requested when the label was displayed. The preferences are not read
+   * again when the profile arrives, because they might not reflect the latest changes yet.
+   */
+  @Nullable
+  private volatile ApiCredentials displayedCredentials;
+
+  /**
+   * Creates the label, the profile is shown as soon as the label is displayed
+   */
+  public UserDataLabel() {
+    super();
+    setUserData(Optional.empty());
+  }
+
+  @Override
+  public void addNotify() {
+    super.addNotify();
+    final Optional<ApiCredentials> credentials = RovasProperties.getApiCredentials();
+    displayedCredentials = credentials.orElse(null);
+    UserDataCache.getInstance().addListener(this);
+    setUserData(credentials.flatMap(UserDataCache.getInstance()::get));
+  }
+
+  @Override
+  public void removeNotify() {
+    UserDataCache.getInstance().removeListener(this);
+    super.removeNotify();
+  }
+
+  @Override
+  public void userDataChanged(@NotNull final ApiCredentials credentials, @NotNull final Optional<UserData> userData) {
+    // the profile does not depend on the project ID
+    final boolean isCurrentUser = Optional.ofNullable(displayedCredentials)
+      .filter(it -> it.getApiKey().equals(credentials.getApiKey()) && it.getApiToken().equals(credentials.getApiToken()))
+      .isPresent();
+    if (isCurrentUser) {
+      GuiHelper.runInEDT(() -> setUserData(userData));
+    }
+  }
+
+  private void setUserData(@NotNull final Optional<UserData> userData) {
+    setText(
+      userData
+        .map(it -> I18n.tr("{0} (compliance score: {1})", it.getUsername(), it.getComplianceScore()))
+        .orElse(I18n.tr("unknown"))
+    );
+  }
+}
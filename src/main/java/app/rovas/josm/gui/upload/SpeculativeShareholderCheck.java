@@ -0,0 +1,71 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.gui.upload;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import com.drew.lang.annotations.NotNull;
+
+import app.rovas.josm.api.ApiCheckOrAddShareholder;
+import app.rovas.josm.api.ShareholderCache;
+import app.rovas.josm.model.ApiCredentials;
+import app.rovas.josm.model.RovasProperties;
+import app.rovas.josm.util.UrlProvider;
+
+/**
+ * <p>A shareholder check ({@link ApiCheckOrAddShareholder}) that is started before the user submits the work report,
+ * e.g. while the {@link app.rovas.josm.gui.CreateRovasReportDialog} is open. When the user then submits the report,
+ * {@link UploadStep1AddShareholder} uses its result instead of sending the query only then.</p>
+ *
+ * <p>Sending the query early is not free of side effects: if the user is not yet a shareholder of the project,
+ * the server adds them as one, even if the user cancels the report afterwards. This is accepted, because the user
+ * already configured the project to report to, and the first upload step makes the same change for every report.
+ * The query is only sent when {@link ShareholderCache} does not already know the user is a shareholder.</p>
+ */
+public final class SpeculativeShareholderCheck {
+  private final ApiCredentials credentials;
+  private final CompletableFuture<Integer> result;
+  private final AtomicBoolean isConsumed = new AtomicBoolean();
+
+  /**
+   * Starts the shareholder check in the background, if the API credentials are set in the preferences.
+   * @param urlProvider the URL provider for the query
+   * @return the started check, or an empty {@link Optional} if the API credentials are not (completely) set,
+   *   or if the check is not needed, because the user is known to be a shareholder (see {@link ShareholderCache})
+   */
+  @NotNull
+  public static Optional<SpeculativeShareholderCheck> start(@NotNull final UrlProvider urlProvider) {
+    return RovasProperties.getApiCredentials().filter(it -> !ShareholderCache.getInstance().isShareholder(it)).map(credentials ->
+      new SpeculativeShareholderCheck(credentials, new ApiCheckOrAddShareholder(urlProvider).queryAsync(credentials))
+    );
+  }
+
+  private SpeculativeShareholderCheck(@NotNull final ApiCredentials credentials, @NotNull final CompletableFuture<Integer> result) {
+    this.credentials = Objects.requireNonNull(credentials);
+    this.result = Objects.requireNonNull(result);
+  }
+
+  /**
+   * Takes the result of the check. That is only possible once, and only for the same credentials with which
+   * the check was started. If the speculative query failed with an exception (e.g. the server could not be reached),
+   * the query is sent again, because the situation might have changed in the meantime.
+   * @param credentials the credentials for which the result is needed
+   * @param query the query that is sent again, if the speculative query failed with an exception
+   * @return the result as returned by {@link ApiCheckOrAddShareholder#queryAsync(ApiCredentials)},
+   *   or an empty {@link Optional} if the result can't be used for these credentials
+   */
+  @NotNull
+  Optional<CompletableFuture<Integer>> consume(@NotNull final ApiCredentials credentials, @NotNull final ApiCheckOrAddShareholder query) {
+    if (!this.credentials.equals(credentials) || !isConsumed.compareAndSet(false, true)) {
+      return Optional.empty();
+    }
+    return Optional.of(
+      result
+        .handle((value, throwable) -> throwable == null ? CompletableFuture.completedFuture(value) : query.queryAsync(credentials))
+        .thenCompose(Function.identity())
+    );
+  }
+}
@@ -3,9 +3,16 @@ package app.rovas.josm.gui.upload;
 
 import java.awt.Window;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import javax.swing.JOptionPane;
 
 import com.drew.lang.annotations.NotNull;
 
+import org.openstreetmap.josm.gui.Notification;
+import org.openstreetmap.josm.tools.I18n;
+
+import app.rovas.josm.api.Outbox;
+import app.rovas.josm.api.Submission;
 import app.rovas.josm.model.TimeTrackingManager;
 import app.rovas.josm.util.UrlProvider;
 
@@ -15,11 +22,41 @@ import app.rovas.josm.util.UrlProvider;
 public interface UploadStep {
 
   /**
-   * Starts the upload step. The message will block until the step is done.
+   * Starts the upload step. The API queries run in the background, so this method returns immediately.
+   * @param parent the window from which the upload was started
+   * @param urlProvider the URL provider for the API queries
+   * @param timeTrackingManager the time tracking manager, which is reset once the work report is created
+   * @return a future that completes once this step and all the following steps are done
    */
-  void showStep(
+  CompletableFuture<Void> showStep(
     @NotNull final Optional<Window> parent,
     @NotNull final UrlProvider urlProvider,
     @NotNull final TimeTrackingManager timeTrackingManager
   );
+
+  /**
+   * Hands the submission over to the {@link Outbox}, after the current step failed because the Rovas server
+   * could not be reached. The tracked time is then reset, because it is now stored in the outbox.
+   * If the outbox gives up on the submission before the work report is created, the time is added back
+   * to the tracked time (see {@link Outbox.Listener#submissionFailed(Submission, app.rovas.josm.api.ApiQuery.ErrorCode)}).
+   * But not if the work report might have been created (see {@link Outbox.Listener#submissionPossiblyCreated(Submission)}).
+   * @param parent the window from which the upload was started, it is disposed
+   * @param timeTrackingManager the time tracking manager, which is reset
+   * @param submission the submission at the stage that failed
+   * @return a completed future
+   */
+  static CompletableFuture<Void> queueInOutbox(
+    @NotNull final Optional<Window> parent,
+    @NotNull final TimeTrackingManager timeTrackingManager,
+    @NotNull final Submission submission
+  ) {
+    Outbox.getInstance().enqueue(submission);
+    timeTrackingManager.setCurrentlyTrackedSeconds(0);
+    parent.ifPresent(Window::dispose);
+    new Notification(I18n.tr("The Rovas server could not be reached. Your work report will be submitted automatically in the background, as soon as the server can be reached again."))
+      .setIcon(JOptionPane.INFORMATION_MESSAGE)
+      .setDuration(Notification.TIME_LONG)
+      .show();
+    return CompletableFuture.completedFuture(null);
+  }
 }
@@ -4,15 +4,20 @@ package app.rovas.josm.gui.upload;
 import java.awt.Window;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import javax.swing.JOptionPane;
 
 import com.drew.lang.annotations.NotNull;
 
 import org.openstreetmap.josm.data.osm.Changeset;
 import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.util.GuiHelper;
 import org.openstreetmap.josm.tools.I18n;
+import org.openstreetmap.josm.tools.Logging;
 
 import app.rovas.josm.api.ApiCheckOrAddShareholder;
+import app.rovas.josm.api.ShareholderCache;
+import app.rovas.josm.api.Submission;
 import app.rovas.josm.gui.ApiCredentialsPanel;
 import app.rovas.josm.model.ApiCredentials;
 import app.rovas.josm.model.RovasProperties;
@@ -29,6 +34,7 @@ public class UploadStep1AddShareholder implements UploadStep {
 
   private final int minutes;
   private final Optional<Changeset> changeset;
+  private final Optional<SpeculativeShareholderCheck> speculativeCheck;
 
   /**
    * Creates the first upload step
@@ -38,34 +44,46 @@ public class UploadStep1AddShareholder implements UploadStep {
   public UploadStep1AddShareholder(
     final int minutes,
     @NotNull final Optional<Changeset> changeset
+  ) {
+    this(minutes, changeset, Optional.empty());
+  }
+
+  /**
+   * Creates the first upload step, which uses the result of a shareholder check that was already started before
+   * @param minutes the number of minutes that will be reported to the server in the work report
+   * @param changeset the changeset that should be associated with the work report, can be empty, but never null
+   * @param speculativeCheck the shareholder check that was started before, its result is used if it was made
+   *   with the same credentials. Can be empty, but never null.
+   */
+  public UploadStep1AddShareholder(
+    final int minutes,
+    @NotNull final Optional<Changeset> changeset,
+    @NotNull final Optional<SpeculativeShareholderCheck> speculativeCheck
   ) {
     super();
     this.minutes = minutes;
     this.changeset = Objects.requireNonNull(changeset);
+    this.speculativeCheck = Objects.requireNonNull(speculativeCheck);
   }
 
   @Override
-  public void showStep(
+  public CompletableFuture<Void> showStep(
     @NotNull final Optional<Window> parent,
     @NotNull final UrlProvider urlProvider,
     @NotNull final TimeTrackingManager timeTrackingManager
   ) {
     parent.ifPresent(it -> it.setVisible(false));
-    showStep(parent, urlProvider, timeTrackingManager, false, 0);
+    return showStep(parent, urlProvider, timeTrackingManager, false, 0);
   }
 
-  private void showStep(
+  private CompletableFuture<Void> showStep(
     @NotNull final Optional<Window> parent,
     final UrlProvider urlProvider,
     final TimeTrackingManager timeTrackingManager,
     final boolean forceCredentialsDialog,
     final int recursionDepth
   ) {
-    final Optional<ApiCredentials> initialCredentials = ApiCredentials.createFrom(
-      RovasProperties.ROVAS_API_KEY.get(),
-      RovasProperties.ROVAS_API_TOKEN.get(),
-      RovasProperties.ACTIVE_PROJECT_ID.get()
-    );
+    final Optional<ApiCredentials> initialCredentials = RovasProperties.getApiCredentials();
 
     final ApiCredentials credentials;
     if (!initialCredentials.isPresent() || forceCredentialsDialog) {
@@ -81,7 +99,7 @@ public class UploadStep1AddShareholder implements UploadStep {
         } else {
           // Go back to the main dialog
           parent.ifPresent(it -> it.setVisible(true));
-          return;
+          return CompletableFuture.completedFuture(null);
         }
       }
       RovasProperties.persistApiCredentials(apiCredentialsPanel);
@@ -90,10 +108,31 @@ public class UploadStep1AddShareholder implements UploadStep {
       credentials = initialCredentials.get();
     }
 
-    new ApiCheckOrAddShareholder(urlProvider).query(
-      credentials,
-      meritId -> new UploadStep2CreateWorkReport(credentials, minutes, changeset).showStep(parent, urlProvider, timeTrackingManager),
+    if (!forceCredentialsDialog && ShareholderCache.getInstance().isShareholder(credentials)) {
+      Logging.debug("[rovas] Skipping the shareholder check, the user is known to be a shareholder of project {0}", credentials.getProjectId());
+      return new UploadStep2CreateWorkReport(credentials, minutes, changeset).showStep(parent, urlProvider, timeTrackingManager);
+    }
+
+    final ApiCheckOrAddShareholder query = new ApiCheckOrAddShareholder(urlProvider);
+    // When the user was asked for the credentials, the query has to be sent (again) with the entered credentials
+    final CompletableFuture<Integer> result = (forceCredentialsDialog ? Optional.<SpeculativeShareholderCheck>empty() : speculativeCheck)
+      .flatMap(it -> it.consume(credentials, query))
+      .orElseGet(() -> query.queryAsync(credentials));
+    return query.handleResultAsync(
+      result,
+      GuiHelper::runInEDT,
+      meritId -> {
+        ShareholderCache.getInstance().put(credentials, meritId);
+        return new UploadStep2CreateWorkReport(credentials, minutes, changeset).showStep(parent, urlProvider, timeTrackingManager);
+      },
       errorCode -> {
+        if (errorCode.isConnectionFailure()) {
+          return UploadStep.queueInOutbox(
+            parent,
+            timeTrackingManager,
+            Submission.create(credentials, minutes, changeset, Submission.Stage.CHECK_SHAREHOLDER, 0)
+          );
+        }
         if (recursionDepth < MAX_STEP_REPETITIONS && JOptionPane.YES_OPTION == JOptionPane.showConfirmDialog(
           parent.orElse(null),
           "<html>" +
@@ -106,10 +145,10 @@ public class UploadStep1AddShareholder implements UploadStep {
           JOptionPane.YES_NO_OPTION,
           JOptionPane.WARNING_MESSAGE
         )) {
-          showStep(parent, urlProvider, timeTrackingManager, true, recursionDepth + 1);
-        } else {
-          parent.ifPresent(it -> it.setVisible(true));
+          return showStep(parent, urlProvider, timeTrackingManager, true, recursionDepth + 1);
         }
+        parent.ifPresent(it -> it.setVisible(true));
+        return CompletableFuture.completedFuture(null);
       }
     );
   }
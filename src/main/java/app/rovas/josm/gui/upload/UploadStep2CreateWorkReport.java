@@ -4,15 +4,19 @@ package app.rovas.josm.gui.upload;
 import java.awt.Window;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import javax.swing.JOptionPane;
 
 import com.drew.lang.annotations.NotNull;
 
 import org.openstreetmap.josm.data.osm.Changeset;
+import org.openstreetmap.josm.gui.util.GuiHelper;
 import org.openstreetmap.josm.tools.I18n;
 
 import app.rovas.josm.api.ApiCreateWorkReport;
 import app.rovas.josm.api.ApiQuery;
+import app.rovas.josm.api.ShareholderCache;
+import app.rovas.josm.api.Submission;
 import app.rovas.josm.model.ApiCredentials;
 import app.rovas.josm.model.TimeTrackingManager;
 import app.rovas.josm.util.UrlProvider;
@@ -43,25 +47,43 @@ public class UploadStep2CreateWorkReport implements UploadStep {
   }
 
   @Override
-  public void showStep(
+  public CompletableFuture<Void> showStep(
     @NotNull final Optional<Window> parent,
     @NotNull final UrlProvider urlProvider,
     @NotNull final TimeTrackingManager timeTrackingManager
   ) {
     parent.ifPresent(it -> it.setVisible(false));
 
-    new ApiCreateWorkReport(urlProvider, minutes, changeset).query(
+    // if the submission is queued, it sends the same idempotency key as this query
+    final Submission submission = Submission.create(credentials, minutes, changeset, Submission.Stage.CREATE_WORK_REPORT, 0);
+    return new ApiCreateWorkReport(urlProvider, submission).queryAsync(
       credentials,
-      workReportId -> {
-        new UploadStep3CreateAur(credentials, workReportId, minutes).showStep(parent, urlProvider, timeTrackingManager);
-      },
+      GuiHelper::runInEDT,
+      workReportId -> new UploadStep3CreateAur(credentials, workReportId, minutes).showStep(parent, urlProvider, timeTrackingManager),
       errorCode -> {
+        if (errorCode.isRequestPossiblySent()) {
+          // the work report might have been created, so it is not queued, the user has to check it
+          JOptionPane.showMessageDialog(
+            parent.orElse(null),
+            I18n.tr("The connection to the Rovas server broke down after the work report was sent, so it is unknown whether it was created. Please check your work reports in Rovas, before you submit this work report again."),
+            I18n.tr("Error"),
+            JOptionPane.WARNING_MESSAGE
+          );
+          parent.ifPresent(it -> it.setVisible(true));
+          return CompletableFuture.completedFuture(null);
+        }
+        if (errorCode.isConnectionFailure()) {
+          return UploadStep.queueInOutbox(parent, timeTrackingManager, submission);
+        }
+        if (errorCode.isNotAShareholder()) {
+          ShareholderCache.getInstance().invalidate(credentials);
+        }
         showErrorMessage(parent, errorCode);
         if (errorCode.getContinueOption() == ApiCreateWorkReport.ErrorCode.ContinueOption.CONTINUE_TO_AUR_QUERY) {
-          new UploadStep3CreateAur(credentials, 0, minutes).showStep(parent, urlProvider, timeTrackingManager);
-        } else {
-          parent.ifPresent(it -> it.setVisible(true));
+          return new UploadStep3CreateAur(credentials, 0, minutes).showStep(parent, urlProvider, timeTrackingManager);
         }
+        parent.ifPresent(it -> it.setVisible(true));
+        return CompletableFuture.completedFuture(null);
       }
     );
   }
@@ -3,16 +3,19 @@ package app.rovas.josm.gui.upload;
 
 import java.awt.Window;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import javax.swing.JOptionPane;
 
 import com.drew.lang.annotations.NotNull;
 
 import org.openstreetmap.josm.gui.Notification;
+import org.openstreetmap.josm.gui.util.GuiHelper;
 import org.openstreetmap.josm.gui.widgets.HtmlPanel;
 import org.openstreetmap.josm.tools.I18n;
 import org.openstreetmap.josm.tools.ImageProvider;
 
 import app.rovas.josm.api.ApiCreateAur;
+import app.rovas.josm.api.Submission;
 import app.rovas.josm.model.ApiCredentials;
 import app.rovas.josm.model.TimeTrackingManager;
 import app.rovas.josm.util.UrlProvider;
@@ -39,15 +42,16 @@ public class UploadStep3CreateAur implements UploadStep {
   }
 
   @Override
-  public void showStep(
+  public CompletableFuture<Void> showStep(
     @NotNull final Optional<Window> parent,
     @NotNull final UrlProvider urlProvider,
     @NotNull final TimeTrackingManager timeTrackingManager
   ) {
     timeTrackingManager.setCurrentlyTrackedSeconds(0);
     parent.ifPresent(Window::dispose);
-    new ApiCreateAur(urlProvider, workReportId, reportedMinutes).query(
+    return new ApiCreateAur(urlProvider, workReportId, reportedMinutes).queryAsync(
       credentials,
+      GuiHelper::runInEDT,
       result -> {
         final HtmlPanel panel = new HtmlPanel(I18n.tr("Your {0} was created successfully!", UrlProvider.toHtmlHyperlink(UrlProvider.getInstance().node(workReportId), I18n.tr("work report"))));
         panel.setOpaque(false);
@@ -57,8 +61,19 @@ public class UploadStep3CreateAur implements UploadStep {
           .setIcon(ImageProvider.get("misc", "check_large"))
           .setDuration(Notification.TIME_LONG)
           .show();
+        return CompletableFuture.completedFuture(null);
       },
-      errorCode -> JOptionPane.showMessageDialog(parent.orElse(null), I18n.tr("Failed to create AUR!"))
+      errorCode -> {
+        if (errorCode.isConnectionFailure()) {
+          return UploadStep.queueInOutbox(
+            parent,
+            timeTrackingManager,
+            Submission.create(credentials, reportedMinutes, Optional.empty(), Submission.Stage.CREATE_AUR, workReportId)
+          );
+        }
+        JOptionPane.showMessageDialog(parent.orElse(null), I18n.tr("Failed to create AUR!"));
+        return CompletableFuture.completedFuture(null);
+      }
     );
   }
 }
@@ -0,0 +1,59 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.model;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import com.drew.lang.annotations.NotNull;
+
+import org.openstreetmap.josm.tools.ListenerList;
+
+/**
+ * <p>A list of listeners, which can be notified without allocating any objects. A {@link ListenerList} creates
+ * iterators every time it fires an event, that is too much for listeners that are notified about every tracked
+ * change.</p>
+ *
+ * <p>The listeners are kept in an array, which is replaced whenever a listener is added or removed (copy-on-write).
+ * So firing an event never blocks and never sees a partially modified list.</p>
+ *
+ * @param <T> the type of the listeners
+ */
+final class AllocationFreeListenerList<T> {
+  private static final Object[] EMPTY = new Object[0];
+
+  private volatile Object[] listeners = EMPTY;
+
+  /**
+   * @param listener the listener that is notified from now on
+   */
+  synchronized void addListener(@NotNull final T listener) {
+    final Object[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+    newListeners[listeners.length] = Objects.requireNonNull(listener);
+    listeners = newListeners;
+  }
+
+  /**
+   * @param listener the listener that should no longer be notified, nothing happens if it was not added before
+   */
+  synchronized void removeListener(@NotNull final T listener) {
+    listeners = Arrays.stream(listeners).filter(it -> it != listener).toArray();
+  }
+
+  /**
+   * @return {@code true} if at least one listener was added (and not removed again)
+   */
+  boolean hasListeners() {
+    return listeners.length > 0;
+  }
+
+  /**
+   * Notifies all listeners, on the calling thread
+   * @param eventFirerer notifies each listener
+   */
+  @SuppressWarnings("unchecked")
+  void fireEvent(@NotNull final ListenerList.EventFirerer<T> eventFirerer) {
+    for (final Object listener : listeners) {
+      eventFirerer.fire((T) listener);
+    }
+  }
+}
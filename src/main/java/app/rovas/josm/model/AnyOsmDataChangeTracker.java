@@ -11,10 +11,11 @@ import org.openstreetmap.josm.tools.Utils;
  * that are relevant for time tracking.</p>
  * <p>Add this to JOSM's {@link LayerManager} using
  * {@link LayerManager#addAndFireLayerChangeListener(LayerManager.LayerChangeListener)}.</p>
+ * <p>Bursts of changes are collapsed by a {@link ChangeCoalescer} before they reach the {@link TimeTrackingManager}.</p>
  */
 public class AnyOsmDataChangeTracker implements LayerManager.LayerChangeListener {
 
-  private final TimeTrackingManager timeTrackingManager;
+  private final ChangeCoalescer changeCoalescer;
   private final DataSetListener datasetListener;
 
   /**
@@ -22,13 +23,13 @@ public class AnyOsmDataChangeTracker implements LayerManager.LayerChangeListener
    * @param timeTrackingManager the time tracking manager to report changes to
    */
   public AnyOsmDataChangeTracker(final TimeTrackingManager timeTrackingManager) {
-    this.timeTrackingManager = timeTrackingManager;
-    this.datasetListener = new DataSetListenerAdapter(__ -> timeTrackingManager.trackChangeNow());
+    this.changeCoalescer = new ChangeCoalescer(timeTrackingManager);
+    this.datasetListener = new DataSetListenerAdapter(__ -> changeCoalescer.trackChangeNow());
   }
 
   @Override
   public void layerAdded(final LayerManager.LayerAddEvent e) {
-    timeTrackingManager.trackChangeNow();
+    changeCoalescer.trackChangeNow();
     Utils.instanceOfAndCast(e.getAddedLayer(), OsmDataLayer.class)
       .ifPresent(layer -> layer.data.addDataSetListener(datasetListener));
   }
@@ -1,6 +1,11 @@
 // License: GPL. For details, see LICENSE file.
 package app.rovas.josm.model;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -19,6 +24,10 @@ public class ApiCredentials {
    * Smaller values will be treated the same as if no value was set.
    */
   public static final int MIN_PROJECT_ID = 2;
+  /**
+   * 16 bytes result in 22 Base64 characters
+   */
+  private static final int KEY_AND_TOKEN_HASH_BYTES = 16;
 
   private final String apiKey;
   private final String apiToken;
@@ -89,4 +98,39 @@ public class ApiCredentials {
   public int getProjectId() {
     return projectId;
   }
+
+  /**
+   * @return a hash of the API key and the API token, which identifies the user without revealing the credentials
+   *   (the project ID is not part of it). It can be stored in files, where the credentials themselves should not be written.
+   */
+  @NotNull
+  public String getKeyAndTokenHash() {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(apiKey.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) '\n');
+      digest.update(apiToken.getBytes(StandardCharsets.UTF_8));
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest.digest(), KEY_AND_TOKEN_HASH_BYTES));
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public boolean equals(final Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (other == null || getClass() != other.getClass()) {
+      return false;
+    }
+    final ApiCredentials that = (ApiCredentials) other;
+    return projectId == that.projectId && apiKey.equals(that.apiKey) && apiToken.equals(that.apiToken);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(apiKey, apiToken, projectId);
+  }
 }
@@ -0,0 +1,63 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.model;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import com.drew.lang.annotations.NotNull;
+
+import app.rovas.josm.util.VisibleForTesting;
+
+/**
+ * <p>Sits in between the sources of change events and the {@link TimeTrackingManager}. The time tracking only has a
+ * resolution of one second, so all changes that happen within the same epoch second are collapsed into a single call
+ * to {@link TimeTrackingManager#trackChangeAt(long)}.</p>
+ *
+ * <p>This makes the cost per change event O(1) (one clock read and one atomic swap), regardless of how many
+ * primitives a single command touches. Changes made inside a {@code DataSet.beginUpdate()}/{@code endUpdate()} batch
+ * are delivered by JOSM either as one combined event or as a burst of events within the same second,
+ * so each batch results in at most one tracked change.</p>
+ *
+ * <p>When the {@link TimeTrackingManager} commits or resets the tracked time, the last tracked second is forgotten,
+ * so a change in that same second is passed on again and starts a new uncommitted timespan.</p>
+ */
+final class ChangeCoalescer {
+  private static final long NO_SECOND = Long.MIN_VALUE;
+
+  private final TimeTrackingManager timeTrackingManager;
+  private final LongSupplier epochSecondSupplier;
+  /**
+   * The epoch second for which the last change was passed on to the {@link #timeTrackingManager}.
+   */
+  private final AtomicLong lastTrackedEpochSecond = new AtomicLong(NO_SECOND);
+
+  /**
+   * Creates a new coalescer that reports changes using the system clock
+   * @param timeTrackingManager the time tracking manager to which the changes are reported
+   */
+  ChangeCoalescer(@NotNull final TimeTrackingManager timeTrackingManager) {
+    this(timeTrackingManager, () -> System.currentTimeMillis() / 1000);
+  }
+
+  /**
+   * @param timeTrackingManager the time tracking manager to which the changes are reported
+   * @param epochSecondSupplier supplies the current unix timestamp (in seconds)
+   */
+  @VisibleForTesting
+  ChangeCoalescer(@NotNull final TimeTrackingManager timeTrackingManager, @NotNull final LongSupplier epochSecondSupplier) {
+    this.timeTrackingManager = Objects.requireNonNull(timeTrackingManager);
+    this.epochSecondSupplier = Objects.requireNonNull(epochSecondSupplier);
+    timeTrackingManager.addResetListener(() -> lastTrackedEpochSecond.set(NO_SECOND));
+  }
+
+  /**
+   * Tracks a change for the current second, unless a change was already tracked for that same second.
+   */
+  void trackChangeNow() {
+    final long currentSecond = epochSecondSupplier.getAsLong();
+    if (lastTrackedEpochSecond.getAndSet(currentSecond) != currentSecond) {
+      timeTrackingManager.trackChangeAt(currentSecond);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.model;
+
+import java.util.Objects;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.drew.lang.annotations.NotNull;
+
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * <p>Runs a dispatch task on a single background thread, whenever a dispatch is requested.</p>
+ *
+ * <p>Requests are coalesced: if a dispatch is already pending, requesting another one does nothing.
+ * The dispatch task is expected to read the latest value itself when it runs, so it always publishes
+ * the most recent value (latest value wins) and intermediate values may be skipped.
+ * A request that arrives while the task is running causes exactly one more run afterwards,
+ * so the latest value is never lost.</p>
+ *
+ * <p>Requesting a dispatch never blocks, no matter how long the dispatch task takes.
+ * The background thread terminates after a few seconds without requests.</p>
+ */
+final class LatestValueDispatcher {
+  private static final long THREAD_KEEP_ALIVE_SECONDS = 5;
+
+  private final Runnable dispatchTask;
+  private final AtomicBoolean isDispatchPending = new AtomicBoolean(false);
+  private final Runnable runnable = this::dispatch;
+  private final ThreadPoolExecutor executor;
+
+  /**
+   * @param threadName the name of the background thread
+   * @param dispatchTask the task that publishes the latest value
+   */
+  LatestValueDispatcher(@NotNull final String threadName, @NotNull final Runnable dispatchTask) {
+    this.dispatchTask = Objects.requireNonNull(dispatchTask);
+    this.executor = new ThreadPoolExecutor(
+      1, 1, THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+      Utils.newThreadFactory(threadName + "-%d", Thread.NORM_PRIORITY)
+    );
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Requests that the dispatch task runs on the background thread. Returns immediately.
+   */
+  void requestDispatch() {
+    if (isDispatchPending.compareAndSet(false, true)) {
+      executor.execute(runnable);
+    }
+  }
+
+  private void dispatch() {
+    isDispatchPending.set(false);
+    try {
+      dispatchTask.run();
+    } catch (RuntimeException e) {
+      Logging.error(e);
+    }
+  }
+}
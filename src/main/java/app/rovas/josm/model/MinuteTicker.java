@@ -0,0 +1,99 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.model;
+
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import com.drew.lang.annotations.NotNull;
+
+import org.openstreetmap.josm.tools.Utils;
+
+import app.rovas.josm.util.VisibleForTesting;
+
+/**
+ * <p>Runs a task at one specific point in time, that can be moved or cancelled any time.
+ * The {@link TimeTrackingManager} uses this to wake up exactly when the displayed minutes roll over.</p>
+ *
+ * <p>There is never more than one wakeup scheduled, and when no wakeup is scheduled the worker thread
+ * terminates after a few seconds. So while the ticker is dormant it causes no CPU wakeups at all.</p>
+ */
+final class MinuteTicker {
+  /**
+   * Passed to {@link #scheduleAt(long)} to cancel the scheduled wakeup without scheduling a new one.
+   */
+  static final long NONE = Long.MIN_VALUE;
+
+  private static final long THREAD_KEEP_ALIVE_SECONDS = 5;
+
+  private final Runnable task;
+  private final LongSupplier clock;
+  /**
+   * The unix timestamp (seconds) for which the {@link #task} is currently scheduled, or {@link #NONE}.
+   */
+  private final AtomicLong scheduledEpochSecond = new AtomicLong(NONE);
+
+  // the following two fields are guarded by `this`
+  private ScheduledThreadPoolExecutor executor;
+  private ScheduledFuture<?> scheduledTask;
+
+  /**
+   * @param task the task that is run at the scheduled point in time
+   * @param clock supplies the current time in milliseconds since the epoch
+   */
+  MinuteTicker(@NotNull final Runnable task, @NotNull final LongSupplier clock) {
+    this.task = Objects.requireNonNull(task);
+    this.clock = Objects.requireNonNull(clock);
+  }
+
+  /**
+   * Schedules the task for the given unix timestamp. Any previously scheduled execution is cancelled.
+   * If the task is already scheduled for exactly that timestamp, nothing is changed (and nothing is allocated).
+   * @param epochSecond the unix timestamp (in seconds) when the task should run, or {@link #NONE} to cancel
+   */
+  void scheduleAt(final long epochSecond) {
+    if (scheduledEpochSecond.get() == epochSecond) {
+      return;
+    }
+    synchronized (this) {
+      if (scheduledEpochSecond.getAndSet(epochSecond) == epochSecond) {
+        return;
+      }
+      if (scheduledTask != null) {
+        scheduledTask.cancel(false);
+        scheduledTask = null;
+      }
+      if (epochSecond != NONE) {
+        scheduledTask = getExecutor().schedule(
+          () -> {
+            scheduledEpochSecond.compareAndSet(epochSecond, NONE);
+            task.run();
+          },
+          Math.max(0, epochSecond * 1000 - clock.getAsLong()),
+          TimeUnit.MILLISECONDS
+        );
+      }
+    }
+  }
+
+  /**
+   * @return the unix timestamp (seconds) for which the task is currently scheduled, or {@link #NONE}
+   */
+  @VisibleForTesting
+  long getScheduledEpochSecond() {
+    return scheduledEpochSecond.get();
+  }
+
+  private synchronized ScheduledThreadPoolExecutor getExecutor() {
+    if (executor == null) {
+      executor = new ScheduledThreadPoolExecutor(1, Utils.newThreadFactory("rovas-minute-ticker-%d", Thread.NORM_PRIORITY));
+      executor.setKeepAliveTime(THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+      executor.allowCoreThreadTimeOut(true);
+      executor.setRemoveOnCancelPolicy(true);
+    }
+    return executor;
+  }
+}
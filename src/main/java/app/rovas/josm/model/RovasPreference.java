@@ -31,19 +31,19 @@ public final class RovasPreference extends DefaultTabPreferenceSetting {
 
   @Override
   public void addGui(final PreferenceTabbedPane gui) {
-    prefPanel.setApiKeyValue(RovasProperties.ROVAS_API_KEY.get());
-    prefPanel.setApiTokenValue(RovasProperties.ROVAS_API_TOKEN.get());
-    prefPanel.setActiveProjectIdValue(RovasProperties.ACTIVE_PROJECT_ID.get());
-    prefPanel.setInactivityTolerance(RovasProperties.INACTIVITY_TOLERANCE.get());
-    prefPanel.setUnpaidEditor(RovasProperties.UNPAID_EDITOR.get());
+    prefPanel.setApiKeyValue(RovasProperties.WRITER.get(RovasProperties.ROVAS_API_KEY));
+    prefPanel.setApiTokenValue(RovasProperties.WRITER.get(RovasProperties.ROVAS_API_TOKEN));
+    prefPanel.setActiveProjectIdValue(RovasProperties.WRITER.get(RovasProperties.ACTIVE_PROJECT_ID));
+    prefPanel.setInactivityTolerance(RovasProperties.WRITER.get(RovasProperties.INACTIVITY_TOLERANCE));
+    prefPanel.setUnpaidEditor(RovasProperties.WRITER.get(RovasProperties.UNPAID_EDITOR));
     gui.createPreferenceTab(this).add(prefPanel, GBC.eol().fill());
   }
 
   @Override
   public boolean ok() {
     RovasProperties.persistApiCredentials(prefPanel); // API key and token, active project ID
-    RovasProperties.INACTIVITY_TOLERANCE.put(prefPanel.getInactivityTolerance());
-    RovasProperties.UNPAID_EDITOR.put(prefPanel.isUnpaidEditor());
+    RovasProperties.WRITER.put(RovasProperties.INACTIVITY_TOLERANCE, prefPanel.getInactivityTolerance());
+    RovasProperties.WRITER.put(RovasProperties.UNPAID_EDITOR, prefPanel.isUnpaidEditor());
     return false; // no restart required
   }
 
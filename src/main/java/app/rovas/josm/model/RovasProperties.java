@@ -1,6 +1,8 @@
 // License: GPL. For details, see LICENSE file.
 package app.rovas.josm.model;
 
+import java.util.Optional;
+
 import com.drew.lang.annotations.NotNull;
 
 import org.openstreetmap.josm.data.preferences.BooleanProperty;
@@ -8,7 +10,10 @@ import org.openstreetmap.josm.data.preferences.IntegerProperty;
 import org.openstreetmap.josm.data.preferences.LongProperty;
 import org.openstreetmap.josm.data.preferences.StringProperty;
 
+import app.rovas.josm.api.ApiTransport;
 import app.rovas.josm.gui.ApiCredentialsPanel;
+import app.rovas.josm.util.BatchedPropertyWriter;
+import app.rovas.josm.util.CachedProperty;
 import app.rovas.josm.util.NullableProperty;
 
 /**
@@ -65,29 +70,97 @@ public final class RovasProperties {
    */
   public static final IntegerProperty INACTIVITY_TOLERANCE =
     new IntegerProperty("rovas.inactivity-tolerance-seconds", INACTIVITY_TOLERANCE_DEFAULT_VALUE);
+  /**
+   * The cached value of {@link #INACTIVITY_TOLERANCE}, negative values are replaced by {@code 0}.
+   * This is read every time a change is tracked.
+   */
+  public static final CachedProperty<Integer> CACHED_INACTIVITY_TOLERANCE =
+    new CachedProperty<>(INACTIVITY_TOLERANCE, () -> Math.max(0, INACTIVITY_TOLERANCE.get()));
 
   /**
    * This property persists the time that was already tracked across restarts
    */
   public static final LongProperty ALREADY_TRACKED_TIME = new LongProperty("rovas.already-tracked-time", 0);
+  /**
+   * When {@link #ALREADY_TRACKED_TIME} was last set (milliseconds since the epoch), so it can be compared with the
+   * last record of the {@link TimeJournal}. {@code 0} if it was set by a version of the plugin that did not know this
+   * property yet. Use {@link #persistAlreadyTrackedTime(long)} to set both properties together.
+   */
+  public static final LongProperty ALREADY_TRACKED_TIME_SAVED_AT = new LongProperty("rovas.already-tracked-time-saved-at", 0);
 
   public static final BooleanProperty DEVELOPER = new BooleanProperty("rovas.developer", false);
+  /**
+   * The cached value of {@link #DEVELOPER}, this is read for every URL that is built.
+   */
+  public static final CachedProperty<Boolean> CACHED_DEVELOPER = CachedProperty.of(DEVELOPER);
   /**
    * This property denotes, if the user is not paid by a company for editing OSM. Only if this is true, work reports should be created.
    */
   public static final BooleanProperty UNPAID_EDITOR = new BooleanProperty("rovas.is-unpaid-editor", true);
+  /**
+   * If this is true, the beginning of every API response is captured, so it can be logged in case it can't be decoded.
+   * This is also done without this property, when debug logging is enabled.
+   */
+  public static final BooleanProperty CAPTURE_RESPONSES = new BooleanProperty("rovas.capture-responses", false);
+  /**
+   * The cached value of {@link #CAPTURE_RESPONSES}, this is read for every API response.
+   */
+  public static final CachedProperty<Boolean> CACHED_CAPTURE_RESPONSES = CachedProperty.of(CAPTURE_RESPONSES);
+  /**
+   * The number of hours for which a successful shareholder check is remembered, so it does not have to be repeated
+   * before every work report. A value of {@code 0} disables the cache.
+   */
+  public static final IntegerProperty SHAREHOLDER_CACHE_TTL_HOURS = new IntegerProperty("rovas.shareholder-cache-ttl-hours", 7 * 24);
+  /**
+   * The name of the {@link ApiTransport} with which the API requests are sent, see {@link ApiTransport#forName(String)}
+   */
+  public static final StringProperty API_TRANSPORT = new StringProperty("rovas.api-transport", ApiTransport.JOSM_HTTP_CLIENT);
+  /**
+   * The cached value of {@link #API_TRANSPORT}, this is read for every API request.
+   */
+  public static final CachedProperty<String> CACHED_API_TRANSPORT = CachedProperty.of(API_TRANSPORT);
+
+  /**
+   * Persists changes to the properties above in the background, so the disk I/O of saving the preferences
+   * does not block the caller. It is flushed when the plugin shuts down.
+   */
+  public static final BatchedPropertyWriter WRITER = new BatchedPropertyWriter("rovas-preferences");
 
   private RovasProperties() {
     // private constructor to avoid instantiation
   }
 
   /**
-   * Convenience method that persists the settings of an {@link ApiCredentialsPanel} in the appropriate preferences
+   * Convenience method that reads the API credentials from the appropriate preferences.
+   * The values are read via {@link #WRITER}, so values that were just put are already returned,
+   * even if they are not yet persisted.
+   * @return the API credentials, or an empty {@link Optional} if any of them is not set
+   * @see ApiCredentials#createFrom(String, String, Integer)
+   */
+  @NotNull
+  public static Optional<ApiCredentials> getApiCredentials() {
+    return ApiCredentials.createFrom(WRITER.get(ROVAS_API_KEY), WRITER.get(ROVAS_API_TOKEN), WRITER.get(ACTIVE_PROJECT_ID));
+  }
+
+  /**
+   * Convenience method that persists the tracked time, which was not reported yet, across restarts of JOSM.
+   * It is persisted in the background via {@link #WRITER}, together with the current time as
+   * {@link #ALREADY_TRACKED_TIME_SAVED_AT}.
+   * @param seconds the number of tracked seconds
+   */
+  public static void persistAlreadyTrackedTime(final long seconds) {
+    WRITER.put(ALREADY_TRACKED_TIME, seconds);
+    WRITER.put(ALREADY_TRACKED_TIME_SAVED_AT, System.currentTimeMillis());
+  }
+
+  /**
+   * Convenience method that persists the settings of an {@link ApiCredentialsPanel} in the appropriate preferences.
+   * The values are persisted in the background via {@link #WRITER}.
    * @param apiCredentialsPanel the panel from which the new values are read
    */
   public static void persistApiCredentials(@NotNull final ApiCredentialsPanel apiCredentialsPanel) {
-    ROVAS_API_KEY.put(apiCredentialsPanel.getApiKeyValue());
-    ROVAS_API_TOKEN.put(apiCredentialsPanel.getApiTokenValue());
-    ACTIVE_PROJECT_ID.put(apiCredentialsPanel.getActiveProjectIdValue());
+    WRITER.put(ROVAS_API_KEY, apiCredentialsPanel.getApiKeyValue());
+    WRITER.put(ROVAS_API_TOKEN, apiCredentialsPanel.getApiTokenValue());
+    WRITER.put(ACTIVE_PROJECT_ID, apiCredentialsPanel.getActiveProjectIdValue());
   }
 }
@@ -0,0 +1,250 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import com.drew.lang.annotations.NotNull;
+
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+import app.rovas.josm.util.TimeConverterUtil;
+import app.rovas.josm.util.VisibleForTesting;
+
+/**
+ * <p>A small, memory-mapped, append-only file that records the state of the {@link TimeTrackingManager},
+ * so tracked time survives a crash of JOSM (or the JVM being killed).</p>
+ *
+ * <p>Each record contains the committed seconds, the currently open (uncommitted) interval, the previously
+ * tracked seconds that were neither added nor discarded yet, and when the record was written (so it can be compared
+ * with {@link RovasProperties#ALREADY_TRACKED_TIME_SAVED_AT}). Records are appended one after the other and only then
+ * the record count in the header is increased, so a record is never torn. When recovering, only the last record
+ * is relevant. Once the file is full, or once all tracked time is reported (nothing tracked anymore),
+ * the journal is compacted by starting over at the first record. If the first record is the last one,
+ * the next record is appended instead, because the last record must never be overwritten in place.</p>
+ *
+ * <p>Writing a record costs O(1) and happens on a background thread, the tracking threads only flag that a new
+ * record should be written. Changes to the mapped file survive a crash of the JVM immediately, they are
+ * additionally forced to the storage device in batches (at most every {@link #FORCE_DELAY_SECONDS} seconds),
+ * and when the journal is {@link #close() closed}.</p>
+ */
+public final class TimeJournal {
+  /**
+   * Value for the timestamps in a record, when there is no open interval
+   */
+  static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+  private static final int MAGIC = 0x52564A31; // "RVJ1"
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 16; // magic, version, record count, reserved
+  private static final int RECORD_SIZE = 40; // committed seconds, first and last timestamp, previous seconds, written at
+  private static final int FILE_SIZE = 64 * 1024;
+  @VisibleForTesting
+  static final int MAX_RECORDS = (FILE_SIZE - HEADER_SIZE) / RECORD_SIZE;
+  private static final int OFFSET_RECORD_COUNT = 8;
+
+  private static final long FORCE_DELAY_SECONDS = 10;
+  private static final long THREAD_KEEP_ALIVE_SECONDS = 5;
+  private static final long CLOSE_TIMEOUT_SECONDS = 5;
+
+  private final File file;
+  private final MappedByteBuffer buffer;
+  private long recoveredSeconds;
+  private long recoveredTimestamp = NO_TIMESTAMP;
+
+  private final ScheduledThreadPoolExecutor writer;
+  private final AtomicBoolean writePending = new AtomicBoolean(false);
+  private final Runnable writeTask = this::write;
+  // the following fields are only accessed by the writer thread
+  private Consumer<TimeJournal> recordSource;
+  private boolean forceScheduled; // = false
+
+  /**
+   * Opens the journal at the default location in the JOSM user data directory.
+   * @return the journal, or an empty {@link Optional} if it can't be opened (a warning is logged in that case)
+   */
+  public static Optional<TimeJournal> openDefault() {
+    return open(new File(new File(Config.getDirs().getUserDataDirectory(true), "rovas"), "time-journal.bin"));
+  }
+
+  /**
+   * Opens the given journal file, it is created if it does not yet exist.
+   * @param file the journal file
+   * @return the journal, or an empty {@link Optional} if it can't be opened (a warning is logged in that case)
+   */
+  public static Optional<TimeJournal> open(@NotNull final File file) {
+    try {
+      return Optional.of(new TimeJournal(file));
+    } catch (IOException e) {
+      Logging.warn("[rovas] Could not open the time journal {0}, tracked time will not survive a crash: {1}", file, e.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  private TimeJournal(@NotNull final File file) throws IOException {
+    this.file = Objects.requireNonNull(file);
+    final File parentDir = file.getAbsoluteFile().getParentFile();
+    if (parentDir != null && !parentDir.isDirectory() && !parentDir.mkdirs()) {
+      throw new IOException("Could not create directory " + parentDir);
+    }
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw"); FileChannel channel = randomAccessFile.getChannel()) {
+      // the mapping stays valid after the channel is closed
+      this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+    }
+    readLastRecord();
+
+    // once the journal is closed, requested writes are silently discarded
+    this.writer = new ScheduledThreadPoolExecutor(
+      1,
+      Utils.newThreadFactory("rovas-time-journal-%d", Thread.NORM_PRIORITY),
+      new ThreadPoolExecutor.DiscardPolicy()
+    );
+    writer.setKeepAliveTime(THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+    writer.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Validates the header and reads the last record into {@link #recoveredSeconds} and {@link #recoveredTimestamp}.
+   */
+  private void readLastRecord() {
+    final int recordCount = buffer.getInt(OFFSET_RECORD_COUNT);
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || recordCount < 0 || recordCount > MAX_RECORDS) {
+      Logging.info("[rovas] Initializing the time journal {0}", file);
+      buffer.putInt(OFFSET_RECORD_COUNT, 0);
+      buffer.putInt(0, MAGIC);
+      buffer.putInt(4, VERSION);
+      return;
+    }
+    if (recordCount == 0) {
+      return;
+    }
+    final int offset = HEADER_SIZE + (recordCount - 1) * RECORD_SIZE;
+    final long committedSeconds = buffer.getLong(offset);
+    final long firstTimestamp = buffer.getLong(offset + 8);
+    final long lastTimestamp = buffer.getLong(offset + 16);
+    final long previousSeconds = buffer.getLong(offset + 24);
+    recoveredTimestamp = buffer.getLong(offset + 32);
+    recoveredSeconds = TimeConverterUtil.clampToSeconds(
+      Math.max(0, committedSeconds) +
+      (firstTimestamp == NO_TIMESTAMP || lastTimestamp == NO_TIMESTAMP ? 0 : Math.max(0, lastTimestamp - firstTimestamp)) +
+      Math.max(0, previousSeconds)
+    );
+    Logging.info("[rovas] Recovered {0} tracked seconds from the time journal {1}", recoveredSeconds, file);
+  }
+
+  /**
+   * @return the number of seconds that were tracked according to the journal at the time it was opened.
+   *   That includes time that was not committed yet, but not the inactivity tolerance after the last change.
+   */
+  public long getRecoveredSeconds() {
+    return recoveredSeconds;
+  }
+
+  /**
+   * @return when the record was written (milliseconds since the epoch), from which the
+   *   {@link #getRecoveredSeconds() recovered seconds} were read. {@link #NO_TIMESTAMP} if the journal was empty.
+   */
+  public long getRecoveredTimestamp() {
+    return recoveredTimestamp;
+  }
+
+  /**
+   * Sets where the records come from. Each time a write is requested, the given consumer will be called
+   * on the background thread and is expected to call {@link #append(long, long, long, long)} exactly once.
+   * @param recordSource the source of the records
+   */
+  void setRecordSource(@NotNull final Consumer<TimeJournal> recordSource) {
+    Objects.requireNonNull(recordSource);
+    writer.execute(() -> this.recordSource = recordSource);
+  }
+
+  /**
+   * Requests that a new record is written in the background. If a write is already pending, this does nothing.
+   * This never blocks.
+   */
+  void requestWrite() {
+    if (writePending.compareAndSet(false, true)) {
+      writer.execute(writeTask);
+    }
+  }
+
+  private void write() {
+    writePending.set(false);
+    if (recordSource != null) {
+      recordSource.accept(this);
+    }
+  }
+
+  /**
+   * Appends a record to the journal. Must only be called from the record source (see {@link #setRecordSource(Consumer)}).
+   * @param committedSeconds the number of committed seconds
+   * @param firstTimestamp the start of the open interval, or {@link #NO_TIMESTAMP}
+   * @param lastTimestamp the end of the open interval, or {@link #NO_TIMESTAMP}
+   * @param previousSeconds the seconds from a previous session, which were not yet added or discarded
+   */
+  void append(final long committedSeconds, final long firstTimestamp, final long lastTimestamp, final long previousSeconds) {
+    final int recordCount = buffer.getInt(OFFSET_RECORD_COUNT);
+    final boolean isEmpty = committedSeconds <= 0 && previousSeconds <= 0 && (firstTimestamp == NO_TIMESTAMP || lastTimestamp == NO_TIMESTAMP);
+    // Compact when the file is full, or when all tracked time was reported.
+    // But if the first record is the last one, it must not be overwritten, so the record is appended after it.
+    final int index = (recordCount >= MAX_RECORDS || isEmpty) && recordCount != 1 ? 0 : recordCount;
+    final int offset = HEADER_SIZE + index * RECORD_SIZE;
+    buffer.putLong(offset, committedSeconds);
+    buffer.putLong(offset + 8, firstTimestamp);
+    buffer.putLong(offset + 16, lastTimestamp);
+    buffer.putLong(offset + 24, previousSeconds);
+    buffer.putLong(offset + 32, System.currentTimeMillis());
+    buffer.putInt(OFFSET_RECORD_COUNT, index + 1);
+
+    if (!forceScheduled) {
+      forceScheduled = true;
+      writer.schedule(this::force, FORCE_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+  }
+
+  private void force() {
+    forceScheduled = false;
+    buffer.force();
+  }
+
+  /**
+   * Writes a last record, forces the journal to the storage device and stops the background thread.
+   * Afterwards, requested writes are ignored. This blocks until the journal is closed,
+   * but at most {@value #CLOSE_TIMEOUT_SECONDS} seconds.
+   */
+  public void close() {
+    writer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    writer.execute(() -> {
+      write();
+      buffer.force();
+    });
+    writer.shutdown();
+    try {
+      if (!writer.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        Logging.warn("[rovas] The time journal {0} could not be closed in time", file);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return the number of records that are currently in the journal
+   */
+  @VisibleForTesting
+  int getRecordCount() {
+    return buffer.getInt(OFFSET_RECORD_COUNT);
+  }
+}
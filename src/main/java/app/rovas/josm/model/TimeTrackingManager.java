@@ -3,8 +3,14 @@ package app.rovas.josm.model;
 
 import java.text.MessageFormat;
 import java.time.Instant;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import com.drew.lang.annotations.NotNull;
+import com.drew.lang.annotations.Nullable;
 
 import org.openstreetmap.josm.tools.ListenerList;
 import org.openstreetmap.josm.tools.Logging;
@@ -22,12 +28,79 @@ import app.rovas.josm.util.VisibleForTesting;
  * A change can be tracked via {@link #trackChangeNow()}.
  * When you want to retrieve the number of tracked seconds, call {@link #commit()}.
  * In order to reset the currently tracked time, call {@link #setCurrentlyTrackedSeconds(long)}
+ *
+ * <p>This class is lock-free: the committed seconds and the uncommitted timespan are kept together in one immutable
+ * {@link State}, which is replaced atomically via compare-and-set. Tracking a change never blocks the calling thread
+ * and readers always see a consistent total.</p>
+ *
+ * <p>Tracking a change in a second that is already covered by the uncommitted timespan does not allocate any objects
+ * (unless debug logging is enabled). Only when the state actually changes, a new {@link State} is created.</p>
+ *
+ * <p>By default, listeners are only notified when the tracked time rounded to full minutes changes
+ * (see {@link NotificationResolution}). Those listeners are also notified when the minutes roll over because of the
+ * inactivity tolerance after the last change. For that, exactly one wakeup is scheduled at the moment of the next
+ * rollover, once the tolerance has expired no more wakeups happen.</p>
+ *
+ * <p>Optionally, each change of the state is also written to a {@link TimeJournal} in the background,
+ * so the tracked time can be recovered after a crash.</p>
+ *
+ * <p>With {@link ListenerDispatch#ASYNCHRONOUS} the listeners are notified on a separate thread, so a slow listener
+ * can't delay the thread that tracks a change (see {@link ListenerDispatch}).</p>
  */
 public final class TimeTrackingManager {
   @VisibleForTesting
   static final String LOG_MESSAGE_BACKWARDS_CLOCK = "Your clock seems to have been running backwards!";
 
-  private final ListenerList<TimeTrackingUpdateListener> listeners = ListenerList.create();
+  /**
+   * The listeners that are notified about every change of the tracked seconds
+   */
+  private final AllocationFreeListenerList<TimeTrackingUpdateListener> secondListeners = new AllocationFreeListenerList<>();
+  /**
+   * The listeners that are only notified when the tracked minutes change
+   */
+  private final AllocationFreeListenerList<TimeTrackingUpdateListener> minuteListeners = new AllocationFreeListenerList<>();
+  /**
+   * Held while the {@link #minuteListeners} are notified, so they receive the minutes in the order in which they change
+   */
+  private final Object minuteNotificationLock = new Object();
+  /**
+   * The number of minutes that the {@link #minuteListeners} were last notified about, {@code -1} if never notified.
+   * Guarded by {@link #minuteNotificationLock}.
+   */
+  private int lastNotifiedMinutes = -1;
+  /**
+   * The number of seconds that the {@link #minuteListeners} were last notified about.
+   * Guarded by {@link #minuteNotificationLock}.
+   */
+  private long lastNotifiedSeconds;
+  /**
+   * Notifies a listener about the {@link #lastNotifiedSeconds}, created once so notifying does not allocate
+   */
+  private final ListenerList.EventFirerer<TimeTrackingUpdateListener> minuteEventFirerer =
+    it -> it.updateNumberOfTrackedSeconds(lastNotifiedSeconds);
+  /**
+   * The state that the {@link #secondListeners} were last notified about by the {@link #listenerDispatcher}.
+   * Only accessed on the thread of the dispatcher.
+   */
+  @Nullable
+  private State lastDispatchedState;
+  /**
+   * Notified after the uncommitted time was committed or the tracked time was reset
+   */
+  private final ListenerList<Runnable> resetListeners = ListenerList.create();
+  /**
+   * Wakes up when the displayed minutes roll over, while no changes are tracked
+   */
+  private final MinuteTicker minuteTicker;
+  /**
+   * Supplies the current time in milliseconds since the epoch
+   */
+  private final LongSupplier clock;
+  /**
+   * Notifies the listeners on a background thread, {@code null} if they are notified synchronously.
+   */
+  @Nullable
+  private final LatestValueDispatcher listenerDispatcher;
 
   /**
    * Saves the initial value when the time tracking manager is initialized
@@ -36,36 +109,99 @@ public final class TimeTrackingManager {
   private final AtomicBoolean previouslyTrackedTimeIsAlreadyAdded;
 
   /**
-   * The number of seconds that are already committed.
+   * The current state of the time tracking (committed seconds and uncommitted timespan).
+   */
+  private final AtomicReference<State> state = new AtomicReference<>(State.EMPTY);
+
+  /**
+   * The journal to which the state is written, {@code null} if the state is not journaled.
    */
-  private long committedSeconds; // = 0L
+  @Nullable
+  private final TimeJournal journal;
 
   /**
-   * The timestamp when the first change occured that was not counted towards the {@link #committedSeconds}.
-   * If there are currently no uncommitted changes, this is set to {@code null}.
+   * Creates a new time tracking manager without a journal.
+   * The previously tracked time is read from {@link RovasProperties#ALREADY_TRACKED_TIME}.
    */
-  private Long firstUncommittedChangeTimestamp; // = null
+  public TimeTrackingManager() {
+    this(Optional.empty(), ListenerDispatch.SYNCHRONOUS);
+  }
+
   /**
-   * The timestamp when the last change occured that was not counted towards the {@link #committedSeconds}.
-   * If there are currently no uncommitted changes, this is set to {@code null}.
+   * Creates a new time tracking manager, which writes its state to the given journal.
+   * If the last record of the journal was written after {@link RovasProperties#ALREADY_TRACKED_TIME} was set,
+   * the previously tracked time is recovered from the journal, otherwise it is read from that property.
+   * @param journal the journal to which the state is written
+   * @param listenerDispatch determines on which thread the listeners are notified about changes
    */
-  private Long lastUncommittedChangeTimestamp; // = null
+  public TimeTrackingManager(@NotNull final Optional<TimeJournal> journal, @NotNull final ListenerDispatch listenerDispatch) {
+    this(journal, listenerDispatch, System::currentTimeMillis);
+  }
 
   /**
-   * Creates a new time tracking manager.
+   * Same as {@link #TimeTrackingManager(Optional, ListenerDispatch)}, but with an arbitrary clock
+   * @param journal the journal to which the state is written
+   * @param listenerDispatch determines on which thread the listeners are notified about changes
+   * @param clock supplies the current time in milliseconds since the epoch
    */
-  public TimeTrackingManager() {
-    this.previouslyTrackedSeconds = TimeConverterUtil.clampToSeconds(RovasProperties.ALREADY_TRACKED_TIME.get());
+  @VisibleForTesting
+  TimeTrackingManager(
+    @NotNull final Optional<TimeJournal> journal,
+    @NotNull final ListenerDispatch listenerDispatch,
+    @NotNull final LongSupplier clock
+  ) {
+    this.clock = Objects.requireNonNull(clock);
+    this.minuteTicker = new MinuteTicker(this::onMinuteTick, clock);
+    this.listenerDispatcher = listenerDispatch == ListenerDispatch.ASYNCHRONOUS
+      ? new LatestValueDispatcher("rovas-time-tracking-listeners", this::dispatchToListeners)
+      : null;
+    this.journal = journal.orElse(null);
+    // whichever was written last, the journal or the property, is up to date
+    this.previouslyTrackedSeconds = TimeConverterUtil.clampToSeconds(
+      this.journal != null && this.journal.getRecoveredTimestamp() >= RovasProperties.ALREADY_TRACKED_TIME_SAVED_AT.get()
+        ? this.journal.getRecoveredSeconds()
+        : RovasProperties.ALREADY_TRACKED_TIME.get()
+    );
     this.previouslyTrackedTimeIsAlreadyAdded = new AtomicBoolean(false);
+    if (this.journal != null) {
+      this.journal.setRecordSource(this::appendJournalRecord);
+      this.journal.requestWrite();
+    }
   }
 
   /**
-   * Adds a listener that will be notified once immediately and then also any time the amount of tracked seconds changes.
+   * Adds a listener that will be notified once immediately and then also any time the amount of tracked minutes
+   * changes. This is the same as calling {@link #addAndFireTimeTrackingUpdateListener(TimeTrackingUpdateListener, NotificationResolution)}
+   * with {@link NotificationResolution#MINUTES}.
    * @param listener the listener that will be notified
    */
   public void addAndFireTimeTrackingUpdateListener(final TimeTrackingUpdateListener listener) {
-    listeners.addListener(listener);
-    fireTimeTrackingUpdateListeners();
+    addAndFireTimeTrackingUpdateListener(listener, NotificationResolution.MINUTES);
+  }
+
+  /**
+   * Adds a listener that will be notified once immediately and then also any time the amount of tracked time changes.
+   * @param listener the listener that will be notified
+   * @param resolution determines how often the listener is notified
+   */
+  public void addAndFireTimeTrackingUpdateListener(final TimeTrackingUpdateListener listener, final NotificationResolution resolution) {
+    if (resolution == NotificationResolution.SECONDS) {
+      secondListeners.addListener(listener);
+      state.get().fire(listener);
+    } else {
+      synchronized (minuteNotificationLock) {
+        minuteListeners.addListener(listener);
+        // if the minutes changed since the last notification, all minute listeners are notified (including the new one),
+        // otherwise only the new listener receives the seconds, which are within the minute the others were notified about
+        final State currentState = state.get();
+        final long liveSeconds = getLiveSeconds(currentState);
+        if (!notifyMinuteListenersIfChanged(liveSeconds)) {
+          listener.updateNumberOfTrackedSeconds(liveSeconds);
+        }
+        // the minute ticker is not scheduled while there are no minute listeners
+        scheduleMinuteTick(currentState);
+      }
+    }
   }
 
   /**
@@ -79,40 +215,187 @@ public final class TimeTrackingManager {
    *   without changing the currently tracked time.
    */
   public void handlePreviouslyTrackedSeconds(final boolean shouldBeAdded) {
-    synchronized (this) {
-      if (!previouslyTrackedTimeIsAlreadyAdded.get()) {
-        previouslyTrackedTimeIsAlreadyAdded.set(true);
-        RovasProperties.ALREADY_TRACKED_TIME.put(0L);
-        if (shouldBeAdded) {
-          committedSeconds += Math.min(previouslyTrackedSeconds, TimeConverterUtil.MAX_SECONDS - committedSeconds);
-          fireTimeTrackingUpdateListeners();
-        }
+    if (previouslyTrackedTimeIsAlreadyAdded.compareAndSet(false, true)) {
+      RovasProperties.persistAlreadyTrackedTime(0L);
+      if (shouldBeAdded) {
+        fireTimeTrackingUpdateListeners(state.updateAndGet(it -> it.withAdditionalCommittedSeconds(previouslyTrackedSeconds)));
       }
+      requestJournalWrite();
     }
   }
 
-  private void fireTimeTrackingUpdateListeners() {
-    listeners.fireEvent(it -> it.updateNumberOfTrackedSeconds(
-      committedSeconds +
-      Optional.ofNullable(firstUncommittedChangeTimestamp)
-        .flatMap(first ->
-          Optional.ofNullable(lastUncommittedChangeTimestamp)
-            .map(last -> last - first)
-        )
-        .orElse(0L)
-    ));
+  /**
+   * Adds seconds to the committed time, without interfering with the uncommitted time.
+   * This is used to give back the time of a work report, that could not be submitted, so it can be reported again.
+   * @param seconds the number of seconds that are added
+   */
+  public void addCommittedSeconds(final long seconds) {
+    fireTimeTrackingUpdateListeners(state.updateAndGet(it -> it.withAdditionalCommittedSeconds(seconds)));
+    requestJournalWrite();
+  }
+
+  /**
+   * Writes the current state to the journal one last time and closes the journal (if there is one).
+   * Call this when JOSM shuts down. The time tracking itself continues to work, but is no longer journaled.
+   */
+  public void closeJournal() {
+    if (journal != null) {
+      journal.close();
+    }
+  }
+
+  private void requestJournalWrite() {
+    if (journal != null) {
+      journal.requestWrite();
+    }
+  }
+
+  /**
+   * Appends the current state to the journal, called on the background thread of the journal.
+   * @param targetJournal the journal to write to
+   */
+  private void appendJournalRecord(final TimeJournal targetJournal) {
+    final State currentState = state.get();
+    targetJournal.append(
+      currentState.committedSeconds,
+      currentState.firstUncommittedChangeTimestamp,
+      currentState.lastUncommittedChangeTimestamp,
+      previouslyTrackedTimeIsAlreadyAdded.get() ? 0 : previouslyTrackedSeconds
+    );
+  }
+
+  private void fireTimeTrackingUpdateListeners(final State currentState) {
+    if (listenerDispatcher == null) {
+      notifyListeners(currentState);
+    } else {
+      // the dispatcher reads the state again when it runs, so the listeners always receive the latest state
+      listenerDispatcher.requestDispatch();
+    }
+  }
+
+  private void notifyListeners(final State currentState) {
+    secondListeners.fireEvent(currentState);
+    notifyMinuteListeners();
+  }
+
+  /**
+   * Notifies the listeners on the thread of the {@link #listenerDispatcher}, both after changes of the state and
+   * after {@link #onMinuteTick() minute ticks}. The {@link #secondListeners} are only notified if the state changed.
+   */
+  private void dispatchToListeners() {
+    final State currentState = state.get();
+    if (currentState != lastDispatchedState) {
+      lastDispatchedState = currentState;
+      secondListeners.fireEvent(currentState);
+    }
+    notifyMinuteListeners();
+  }
+
+  /**
+   * Notifies the {@link #minuteListeners} about the {@link #getLiveSeconds(State) live seconds}, if the minutes
+   * changed since the last notification, and schedules the next minute tick.
+   * The latest state is read while holding the lock, so the minutes are always delivered in order,
+   * even if this is called concurrently. Without minute listeners, this returns immediately without locking.
+   */
+  private void notifyMinuteListeners() {
+    if (!minuteListeners.hasListeners()) {
+      return;
+    }
+    synchronized (minuteNotificationLock) {
+      final State currentState = state.get();
+      notifyMinuteListenersIfChanged(getLiveSeconds(currentState));
+      scheduleMinuteTick(currentState);
+    }
+  }
+
+  /**
+   * Schedules the {@link #minuteTicker} for the next time the minutes roll over.
+   * Must only be called while holding the {@link #minuteNotificationLock}.
+   * @param currentState the state of the time tracking
+   */
+  private void scheduleMinuteTick(final State currentState) {
+    minuteTicker.scheduleAt(
+      currentState.getNextMinuteRollover(clock.getAsLong() / 1000, RovasProperties.CACHED_INACTIVITY_TOLERANCE.get())
+    );
+  }
+
+  /**
+   * Must only be called while holding the {@link #minuteNotificationLock}.
+   * @param liveSeconds the number of seconds about which the listeners are notified
+   * @return {@code true} if the listeners were notified, {@code false} if the minutes did not change
+   */
+  private boolean notifyMinuteListenersIfChanged(final long liveSeconds) {
+    final int minutes = TimeConverterUtil.secondsToMinutes(liveSeconds);
+    if (lastNotifiedMinutes != minutes) {
+      lastNotifiedMinutes = minutes;
+      lastNotifiedSeconds = liveSeconds;
+      minuteListeners.fireEvent(minuteEventFirerer);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * The {@link #minuteListeners} always receive this value, no matter if they are notified after a change or after
+   * a minute tick. At the moment of a change it is the same as the total seconds, after that it also includes
+   * the inactivity tolerance that accrued since the last change (like a commit at the current time would).
+   * @param currentState the state of the time tracking
+   * @return the number of seconds that would be committed at the current time of the {@link #clock}
+   */
+  private long getLiveSeconds(final State currentState) {
+    return currentState.getCommittedSecondsUntil(clock.getAsLong() / 1000, RovasProperties.CACHED_INACTIVITY_TOLERANCE.get());
+  }
+
+  /**
+   * Called by the {@link #minuteTicker} when the displayed minutes roll over because of the inactivity tolerance
+   * that accrues after the last tracked change. With {@link ListenerDispatch#ASYNCHRONOUS} the tick is handed
+   * to the {@link #listenerDispatcher}, so all listeners are notified on the same thread.
+   */
+  private void onMinuteTick() {
+    if (listenerDispatcher == null) {
+      notifyMinuteListeners();
+    } else {
+      listenerDispatcher.requestDispatch();
+    }
+  }
+
+  /**
+   * @param currentTimestamp the current unix timestamp (in seconds)
+   * @return the unix timestamp at which the displayed minutes will roll over next, if no further change is tracked.
+   *   If the minutes won't roll over before the inactivity tolerance expires, {@link MinuteTicker#NONE} is returned.
+   */
+  @VisibleForTesting
+  long getNextMinuteRollover(final long currentTimestamp) {
+    return state.get().getNextMinuteRollover(currentTimestamp, RovasProperties.CACHED_INACTIVITY_TOLERANCE.get());
+  }
+
+  /**
+   * @return the unix timestamp for which the next wakeup of the {@link #minuteTicker} is scheduled,
+   *   or {@link MinuteTicker#NONE} if none is scheduled
+   */
+  @VisibleForTesting
+  long getScheduledMinuteTick() {
+    return minuteTicker.getScheduledEpochSecond();
   }
 
   /**
    * @return the amount of previously tracked time that could be added to the currently tracked time
    */
   public long getPreviouslyTrackedSeconds() {
-    synchronized (this) {
-      return
-        previouslyTrackedTimeIsAlreadyAdded.get() || TimeConverterUtil.secondsToMinutes(previouslyTrackedSeconds) <= 0
-          ? 0
-          : previouslyTrackedSeconds;
-    }
+    return
+      previouslyTrackedTimeIsAlreadyAdded.get() || TimeConverterUtil.secondsToMinutes(previouslyTrackedSeconds) <= 0
+        ? 0
+        : previouslyTrackedSeconds;
+  }
+
+  /**
+   * Adds a listener that is notified (on the thread that made the change) after the uncommitted time was committed
+   * or the tracked time was reset. After that, even a change in the same second as the last tracked change
+   * starts a new uncommitted timespan.
+   * @param listener the listener that will be notified
+   */
+  void addResetListener(final Runnable listener) {
+    resetListeners.addListener(listener);
   }
 
   /**
@@ -120,15 +403,16 @@ public final class TimeTrackingManager {
    * @param listener the listener to be removed
    */
   public void removeTimeTrackingUpdateListener(final TimeTrackingUpdateListener listener) {
-    listeners.removeListener(listener);
+    secondListeners.removeListener(listener);
+    minuteListeners.removeListener(listener);
   }
 
   /**
    * Whenever this method is called, a change is tracked for the current timestamp.
-   * This is equivalent to calling {@link #trackChangeAt(Instant)} with {@link Instant#now()} as argument.
+   * This is equivalent to calling {@link #trackChangeAt(long)} with the current unix timestamp as argument.
    */
   public void trackChangeNow() {
-    trackChangeAt(Instant.now());
+    trackChangeAt(clock.getAsLong() / 1000);
   }
 
   /**
@@ -145,54 +429,62 @@ public final class TimeTrackingManager {
    * </p>
    *
    * @param instant the timestamp when the change occurred. The seconds of that instant are recorded.
+   * @see #trackChangeAt(long)
    */
   @VisibleForTesting
   void trackChangeAt(final Instant instant) {
-    synchronized (this) {
-      final int tolerance = Math.max(0, RovasProperties.INACTIVITY_TOLERANCE.get());
-      final Long firstTimestamp = firstUncommittedChangeTimestamp;
-      final Long lastTimestamp = lastUncommittedChangeTimestamp;
-      final long currentTimestamp = instant.getEpochSecond();
+    trackChangeAt(instant.getEpochSecond());
+  }
 
+  /**
+   * Same as {@link #trackChangeAt(Instant)}, but takes the unix timestamp directly, so no {@link Instant} is needed.
+   * @param currentTimestamp the unix timestamp (in seconds) when the change occurred
+   */
+  void trackChangeAt(final long currentTimestamp) {
+    final int tolerance = RovasProperties.CACHED_INACTIVITY_TOLERANCE.get();
+
+    State oldState;
+    State newState;
+    do {
+      oldState = state.get();
+      newState = oldState.withChangeAt(currentTimestamp, tolerance);
+    } while (!state.compareAndSet(oldState, newState));
+
+    if (Logging.isDebugEnabled()) {
       Logging.debug(
-        "[TTM] {0,number,#} seconds committed, {1,number,#} - {2,number,#} uncommitted, new change at {3,number,#}",
-        this.committedSeconds,
-        firstTimestamp,
-        lastTimestamp,
+        "[TTM] {0,number,#} seconds committed, {1} - {2} uncommitted, new change at {3,number,#}",
+        oldState.committedSeconds,
+        oldState.formatTimestamp(oldState.firstUncommittedChangeTimestamp),
+        oldState.formatTimestamp(oldState.lastUncommittedChangeTimestamp),
         currentTimestamp
       );
-
-      if (firstTimestamp == null) {
-        // initialize when no time was tracked before
-        resetAutomaticTracker(currentTimestamp, Optional.empty());
-      } else if (lastTimestamp != null) {
-        // something went wrong, current time is before the last timestamp that was recorded previously.
-        if (currentTimestamp < lastTimestamp) {
-          Logging.error(LOG_MESSAGE_BACKWARDS_CLOCK);
-        }
-        // In case the current time is not inside the uncommitted timespan (including tolerance), then that timespan is committed and a new timespan is started.
-        if (currentTimestamp > lastTimestamp + tolerance || currentTimestamp < firstTimestamp) {
-          resetAutomaticTracker(currentTimestamp, Optional.of(instant));
-        } else {
-          // if inside tolerance, extend the current uncommitted timespan
-          lastUncommittedChangeTimestamp = Math.max(lastTimestamp, currentTimestamp);
-          fireTimeTrackingUpdateListeners();
-        }
-      }
     }
+    if (oldState.hasUncommittedChanges() && currentTimestamp < oldState.lastUncommittedChangeTimestamp) {
+      // something went wrong, current time is before the last timestamp that was recorded previously.
+      Logging.error(LOG_MESSAGE_BACKWARDS_CLOCK);
+    }
+    if (newState == oldState) {
+      // e.g. another change within the same second, nobody has to be notified
+      return;
+    }
+    requestJournalWrite();
+    fireTimeTrackingUpdateListeners(newState);
   }
 
   /**
-   * Sets the {@link #committedSeconds} to the given number of seconds.
+   * Sets the committed seconds to the given number of seconds.
    * The uncommitted time is reset.
-   * @param numSeconds the number of seconds that should be set as {@link #committedSeconds}
+   * @param numSeconds the number of seconds that should be set as committed seconds
    */
   public void setCurrentlyTrackedSeconds(final long numSeconds) {
-    synchronized (this) {
-      resetAutomaticTracker(null, Optional.empty());
-      this.committedSeconds = TimeConverterUtil.clampToSeconds(numSeconds);
-      fireTimeTrackingUpdateListeners();
+    final State newState = new State(TimeConverterUtil.clampToSeconds(numSeconds), State.NO_TIMESTAMP, State.NO_TIMESTAMP);
+    state.set(newState);
+    if (Logging.isDebugEnabled()) {
+      Logging.debug("[TTM] Reset to {0,number,#} committed seconds", newState.committedSeconds);
     }
+    resetListeners.fireEvent(Runnable::run);
+    requestJournalWrite();
+    fireTimeTrackingUpdateListeners(newState);
   }
 
   /**
@@ -206,53 +498,201 @@ public final class TimeTrackingManager {
    * @return the current number of tracked seconds, after the commit happened
    */
   public long commit() {
-    return commit(Instant.now());
+    return commit(Instant.ofEpochMilli(clock.getAsLong()));
   }
 
   @VisibleForTesting
   long commit(final Instant instant) {
-    synchronized (this) {
-      return resetAutomaticTracker(null, Optional.of(instant));
+    final int tolerance = RovasProperties.CACHED_INACTIVITY_TOLERANCE.get();
+    final long commitTimestamp = instant.getEpochSecond();
+
+    State oldState;
+    State newState;
+    do {
+      oldState = state.get();
+      newState = oldState.withCommitUntil(commitTimestamp, tolerance);
+    } while (!state.compareAndSet(oldState, newState));
+
+    if (Logging.isDebugEnabled()) {
+      Logging.debug(MessageFormat.format(
+        "[TTM] Committing uncommitted time ({0} – {1}) with {2,number,#} seconds tolerance, now {3,number,#} seconds committed",
+        oldState.formatTimestamp(oldState.firstUncommittedChangeTimestamp),
+        oldState.formatTimestamp(oldState.lastUncommittedChangeTimestamp),
+        tolerance,
+        newState.committedSeconds
+      ));
     }
+    resetListeners.fireEvent(Runnable::run);
+    requestJournalWrite();
+    fireTimeTrackingUpdateListeners(newState);
+    return newState.committedSeconds;
   }
 
   /**
-   * @param newValue the new value that {@link #firstUncommittedChangeTimestamp} and
-   *   {@link #lastUncommittedChangeTimestamp} will be set to
-   * @param commitTimeUntil if an {@link Instant} is present, any uncommitted time will be added to the
-   *   {@link #committedSeconds}. If no {@link Instant} is present, any uncommitted time will be discarded.
-   * @return the current number of tracked seconds, after the reset
-   */
-  private long resetAutomaticTracker(final Long newValue, final Optional<Instant> commitTimeUntil) {
-    commitTimeUntil.ifPresent(currentInstant -> {
-      final Long firstUncommitted = this.firstUncommittedChangeTimestamp;
-      final Long lastUncommitted = this.lastUncommittedChangeTimestamp;
-      if (firstUncommitted == null || lastUncommitted == null) {
-        Logging.debug("[TTM] Tried to commit time, but fields were null (firstUncommitted={0},lastUncommitted={1})", firstUncommitted, lastUncommitted);
-      } else {
-        if (Logging.isDebugEnabled()) {
-          Logging.debug(MessageFormat.format(
-            "[TTM] Committing uncommitted time of {0,number,#} seconds ({1,number,#} – {2,number,#}) with {3,number,#} seconds tolerance",
-            lastUncommitted - firstUncommitted,
-            firstUncommitted,
-            lastUncommitted,
-            RovasProperties.INACTIVITY_TOLERANCE.get()
-          ));
-        }
-        this.committedSeconds = TimeConverterUtil.clampToSeconds(
-          this.committedSeconds +
-          Math.max(0, lastUncommitted - firstUncommitted) + // uncommitted time
-          Math.min(
-            Math.max(0, currentInstant.getEpochSecond() - lastUncommitted), // time since last uncommitted timestamp
-            Math.max(0, RovasProperties.INACTIVITY_TOLERANCE.get()) // tolerance
-          )
-        );
+   * On which thread the {@link TimeTrackingUpdateListener}s are notified about changes of the tracked time.
+   */
+  public enum ListenerDispatch {
+    /**
+     * The listeners are notified on the thread that changed the tracked time, before the method that changed it
+     * returns. Each listener receives every change.
+     */
+    SYNCHRONOUS,
+    /**
+     * The listeners are notified on a single background thread. Changes that happen while the listeners are still
+     * being notified are coalesced, the listeners then only receive the latest state (never an outdated one).
+     * Tracking a change never waits for a listener.
+     */
+    ASYNCHRONOUS
+  }
+
+  /**
+   * How often a {@link TimeTrackingUpdateListener} is notified about changes of the tracked time.
+   */
+  public enum NotificationResolution {
+    /**
+     * The listener is notified about every change of the tracked time, even if it's only a change of a few seconds.
+     */
+    SECONDS,
+    /**
+     * The listener is only notified when the tracked time (rounded to full minutes with
+     * {@link TimeConverterUtil#secondsToMinutes(long)}) changes. This is sufficient for anything that only displays
+     * hours and minutes. The listener receives the seconds that a commit at that moment would result in,
+     * so the minutes also roll over while the inactivity tolerance after the last change accrues.
+     */
+    MINUTES
+  }
+
+  /**
+   * An immutable snapshot of the tracked time. Instances are never modified, any change creates a new instance.
+   * It also serves as the {@link ListenerList.EventFirerer} that notifies the listeners about its total,
+   * so firing an event does not need an additional object.
+   */
+  private static final class State implements ListenerList.EventFirerer<TimeTrackingUpdateListener> {
+    /**
+     * Sentinel value for {@link #firstUncommittedChangeTimestamp} and {@link #lastUncommittedChangeTimestamp},
+     * which is used when there are currently no uncommitted changes.
+     */
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    private static final State EMPTY = new State(0L, NO_TIMESTAMP, NO_TIMESTAMP);
+
+    /**
+     * The number of seconds that are already committed.
+     */
+    private final long committedSeconds;
+    /**
+     * The timestamp when the first change occured that was not counted towards the {@link #committedSeconds}.
+     * If there are currently no uncommitted changes, this is set to {@link #NO_TIMESTAMP}.
+     */
+    private final long firstUncommittedChangeTimestamp;
+    /**
+     * The timestamp when the last change occured that was not counted towards the {@link #committedSeconds}.
+     * If there are currently no uncommitted changes, this is set to {@link #NO_TIMESTAMP}.
+     */
+    private final long lastUncommittedChangeTimestamp;
+
+    private State(final long committedSeconds, final long firstUncommittedChangeTimestamp, final long lastUncommittedChangeTimestamp) {
+      this.committedSeconds = committedSeconds;
+      this.firstUncommittedChangeTimestamp = firstUncommittedChangeTimestamp;
+      this.lastUncommittedChangeTimestamp = lastUncommittedChangeTimestamp;
+    }
+
+    @Override
+    public void fire(final TimeTrackingUpdateListener listener) {
+      listener.updateNumberOfTrackedSeconds(getTotalSeconds());
+    }
+
+    private boolean hasUncommittedChanges() {
+      return firstUncommittedChangeTimestamp != NO_TIMESTAMP && lastUncommittedChangeTimestamp != NO_TIMESTAMP;
+    }
+
+    /**
+     * @param timestamp one of the two timestamps of this state
+     * @return the timestamp as string, or {@code "null"} for {@link #NO_TIMESTAMP} (only intended for log messages)
+     */
+    private String formatTimestamp(final long timestamp) {
+      return timestamp == NO_TIMESTAMP ? "null" : Long.toString(timestamp);
+    }
+
+    /**
+     * @return the committed seconds plus the seconds in between the first and last uncommitted change
+     */
+    private long getTotalSeconds() {
+      return hasUncommittedChanges()
+        ? committedSeconds + lastUncommittedChangeTimestamp - firstUncommittedChangeTimestamp
+        : committedSeconds;
+    }
+
+    /**
+     * @param currentTimestamp the unix timestamp of the change
+     * @param tolerance the inactivity tolerance in seconds
+     * @return the state after a change at the given timestamp was tracked, this same instance if nothing changed
+     */
+    private State withChangeAt(final long currentTimestamp, final int tolerance) {
+      if (!hasUncommittedChanges()) {
+        // initialize when no time was tracked before
+        return new State(committedSeconds, currentTimestamp, currentTimestamp);
+      }
+      // In case the current time is not inside the uncommitted timespan (including tolerance), then that timespan is committed and a new timespan is started.
+      if (currentTimestamp > lastUncommittedChangeTimestamp + tolerance || currentTimestamp < firstUncommittedChangeTimestamp) {
+        return new State(getCommittedSecondsUntil(currentTimestamp, tolerance), currentTimestamp, currentTimestamp);
+      }
+      // if inside tolerance, extend the current uncommitted timespan
+      return currentTimestamp <= lastUncommittedChangeTimestamp
+        ? this
+        : new State(committedSeconds, firstUncommittedChangeTimestamp, currentTimestamp);
+    }
+
+    /**
+     * @param commitTimestamp the unix timestamp until which the uncommitted time is committed
+     * @param tolerance the inactivity tolerance in seconds
+     * @return the state after all uncommitted time was committed
+     */
+    private State withCommitUntil(final long commitTimestamp, final int tolerance) {
+      return new State(getCommittedSecondsUntil(commitTimestamp, tolerance), NO_TIMESTAMP, NO_TIMESTAMP);
+    }
+
+    /**
+     * @param seconds the number of seconds that should be added to the committed seconds
+     * @return the state with the given number of seconds added to the committed seconds
+     */
+    private State withAdditionalCommittedSeconds(final long seconds) {
+      return new State(
+        committedSeconds + Math.min(seconds, TimeConverterUtil.MAX_SECONDS - committedSeconds),
+        firstUncommittedChangeTimestamp,
+        lastUncommittedChangeTimestamp
+      );
+    }
+
+    /**
+     * @param currentTimestamp the current unix timestamp
+     * @param tolerance the inactivity tolerance in seconds
+     * @return the unix timestamp, when {@link #getCommittedSecondsUntil(long, int)} reaches the next full minute
+     *   (as rounded by {@link TimeConverterUtil#secondsToMinutes(long)}), or {@link MinuteTicker#NONE} if that
+     *   doesn't happen before the tolerance after the last change expires
+     */
+    private long getNextMinuteRollover(final long currentTimestamp, final int tolerance) {
+      if (!hasUncommittedChanges() || currentTimestamp >= lastUncommittedChangeTimestamp + tolerance) {
+        return MinuteTicker.NONE;
+      }
+      final long liveTotalSeconds = getCommittedSecondsUntil(currentTimestamp, tolerance);
+      // minute m is displayed for 60*m-30 … 60*m+29 seconds, so the next minute starts at 60*m+30 seconds
+      final long nextRolloverSeconds = TimeConverterUtil.secondsToMinutes(liveTotalSeconds) * 60L + 30;
+      final long rolloverTimestamp = Math.max(currentTimestamp, lastUncommittedChangeTimestamp) + nextRolloverSeconds - liveTotalSeconds;
+      return rolloverTimestamp <= lastUncommittedChangeTimestamp + tolerance ? rolloverTimestamp : MinuteTicker.NONE;
+    }
+
+    private long getCommittedSecondsUntil(final long commitTimestamp, final int tolerance) {
+      if (!hasUncommittedChanges()) {
+        return committedSeconds;
       }
-    });
-    Logging.debug("[TTM] Reset to `{0,number,#}` ({1,number,#} committed)", newValue, committedSeconds);
-    this.firstUncommittedChangeTimestamp = newValue;
-    this.lastUncommittedChangeTimestamp = newValue;
-    fireTimeTrackingUpdateListeners();
-    return this.committedSeconds;
+      return TimeConverterUtil.clampToSeconds(
+        committedSeconds +
+        Math.max(0, lastUncommittedChangeTimestamp - firstUncommittedChangeTimestamp) + // uncommitted time
+        Math.min(
+          Math.max(0, commitTimestamp - lastUncommittedChangeTimestamp), // time since last uncommitted timestamp
+          tolerance
+        )
+      );
+    }
   }
 }
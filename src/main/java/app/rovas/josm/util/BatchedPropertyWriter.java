@@ -0,0 +1,179 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.drew.lang.annotations.NotNull;
+import com.drew.lang.annotations.Nullable;
+
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.preferences.AbstractProperty;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * <p>Buffers writes to preferences and persists them on a background thread.</p>
+ *
+ * <p>Every put to a JOSM preference can cause the preferences to be saved to disk. With this class the caller
+ * (e.g. the EDT or the time tracking) only records the new value, which never blocks on disk I/O.
+ * All values that were put until the background thread runs, are then persisted in one batch. If the same property
+ * is put multiple times before that, only the last value is persisted. Whether the preferences are saved after
+ * a put is still up to JOSM ({@link Preferences#enableSaveOnPut(boolean)}), this class never changes that setting,
+ * because it is shared with JOSM and all other plugins.</p>
+ *
+ * <p>Until a value is persisted, reading the property itself still returns the old value. Read it via
+ * {@link #get(AbstractProperty)} instead to also see the buffered value.
+ * Call {@link #flush()} to persist all buffered values immediately (e.g. when the plugin shuts down).</p>
+ */
+public final class BatchedPropertyWriter {
+  private static final long THREAD_KEEP_ALIVE_SECONDS = 5;
+
+  /**
+   * The buffered writes for each property, in the order in which the properties were first put.
+   * A write is only removed after it was persisted, so {@link #get(AbstractProperty)} never sees an old value.
+   */
+  private final Map<Object, PendingWrite> pendingWrites = new LinkedHashMap<>();
+  /**
+   * Held while the buffered writes are persisted, so two batches are never persisted concurrently
+   */
+  private final Object flushLock = new Object();
+  private final ThreadPoolExecutor executor;
+  private final Runnable flushTask = this::flush;
+  private boolean isFlushScheduled; // = false, guarded by pendingWrites
+
+  /**
+   * Creates a new writer, the background thread is only started when needed.
+   * @param threadName the name of the background thread
+   */
+  public BatchedPropertyWriter(@NotNull final String threadName) {
+    executor = new ThreadPoolExecutor(
+      1, 1, THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+      Utils.newThreadFactory(threadName + "-%d", Thread.NORM_PRIORITY)
+    );
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Buffers a new value for the given property, it will be persisted in the background.
+   * @param property the property to set
+   * @param value the new value
+   * @param <T> the type of the property
+   */
+  public <T> void put(@NotNull final AbstractProperty<T> property, @Nullable final T value) {
+    Objects.requireNonNull(property);
+    enqueue(property, new PendingWrite(value, () -> property.put(value)));
+  }
+
+  /**
+   * Buffers a new value for the given property, it will be persisted in the background.
+   * @param property the property to set
+   * @param value the new value
+   * @param <T> the type of the property
+   */
+  public <T> void put(@NotNull final NullableProperty<T> property, @Nullable final T value) {
+    Objects.requireNonNull(property);
+    enqueue(property, new PendingWrite(value, () -> property.put(value)));
+  }
+
+  /**
+   * @param property the property to read
+   * @param <T> the type of the property
+   * @return the value that was last put to the property via this writer, if it's not yet persisted.
+   *   Otherwise the value of the property.
+   */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public <T> T get(@NotNull final AbstractProperty<T> property) {
+    synchronized (pendingWrites) {
+      final PendingWrite pendingWrite = pendingWrites.get(property);
+      if (pendingWrite != null) {
+        return (T) pendingWrite.value;
+      }
+    }
+    return property.get();
+  }
+
+  /**
+   * @param property the property to read
+   * @param <T> the type of the property
+   * @return the value that was last put to the property via this writer, if it's not yet persisted
+   *   (values that the property treats as {@code null} are returned as {@code null}). Otherwise the value
+   *   of the property.
+   */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public <T> T get(@NotNull final NullableProperty<T> property) {
+    synchronized (pendingWrites) {
+      final PendingWrite pendingWrite = pendingWrites.get(property);
+      if (pendingWrite != null) {
+        return property.toNullable((T) pendingWrite.value);
+      }
+    }
+    return property.get();
+  }
+
+  private void enqueue(final Object property, final PendingWrite write) {
+    synchronized (pendingWrites) {
+      pendingWrites.put(property, write);
+      if (!isFlushScheduled) {
+        isFlushScheduled = true;
+        executor.execute(flushTask);
+      }
+    }
+  }
+
+  /**
+   * Persists all buffered values on the calling thread. Returns after all values that were put before this method
+   * was called are persisted.
+   */
+  public void flush() {
+    synchronized (flushLock) {
+      final List<Map.Entry<Object, PendingWrite>> writes;
+      synchronized (pendingWrites) {
+        writes = new ArrayList<>(pendingWrites.entrySet());
+        isFlushScheduled = false;
+      }
+      for (final Map.Entry<Object, PendingWrite> write : writes) {
+        try {
+          write.getValue().write.run();
+        } catch (RuntimeException e) {
+          Logging.warn("[rovas] Could not persist a preference!");
+          Logging.warn(e);
+        }
+      }
+      synchronized (pendingWrites) {
+        // if a property was put again in the meantime, the newer value is still pending
+        writes.forEach(it -> pendingWrites.remove(it.getKey(), it.getValue()));
+      }
+    }
+  }
+
+  /**
+   * @return {@code true} if there are values that are not yet persisted
+   */
+  @VisibleForTesting
+  boolean hasPendingWrites() {
+    synchronized (pendingWrites) {
+      return !pendingWrites.isEmpty();
+    }
+  }
+
+  private static final class PendingWrite {
+    @Nullable
+    private final Object value;
+    @NotNull
+    private final Runnable write;
+
+    PendingWrite(@Nullable final Object value, @NotNull final Runnable write) {
+      this.value = value;
+      this.write = write;
+    }
+  }
+}
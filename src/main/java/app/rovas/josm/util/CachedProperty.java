@@ -0,0 +1,76 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.util;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import com.drew.lang.annotations.NotNull;
+
+import org.openstreetmap.josm.data.preferences.AbstractProperty;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.spi.preferences.IPreferences;
+
+/**
+ * <p>Caches a value that is derived from a preference in a {@code volatile} field.</p>
+ *
+ * <p>Reading a JOSM preference involves a lookup in the preferences and parsing the string value. This class
+ * does that only once and then again only when the preference changes (a preference change listener
+ * is registered for that). Reading the cached value is then only a read of a field,
+ * which makes it suitable for code that runs very often.</p>
+ *
+ * <p>The listener is registered when the value is read for the first time, so instances can be created
+ * before the preferences are initialized. When the preferences instance is replaced (see
+ * {@link Config#setPreferencesInstance(IPreferences)}, tests do that before each test), the listener no longer
+ * receives changes. So the cached value also remembers the preferences instance it was read from,
+ * and it is read again, as soon as a different instance is in use.</p>
+ *
+ * @param <T> the type of the cached value
+ */
+public final class CachedProperty<T> {
+  private final AbstractProperty<?> source;
+  private final Supplier<T> valueSupplier;
+  /**
+   * The preferences from which the {@link #value} was read and at which the listener is registered,
+   * {@code null} if the value was never read
+   */
+  private volatile IPreferences initializedFor; // = null
+  private volatile T value;
+
+  /**
+   * @param source the property that should be cached
+   * @param <T> the type of the property
+   * @return the cache for the value of the given property
+   */
+  public static <T> CachedProperty<T> of(@NotNull final AbstractProperty<T> source) {
+    return new CachedProperty<>(source, source::get);
+  }
+
+  /**
+   * @param source the property, which triggers a recalculation of the cached value whenever it changes
+   * @param valueSupplier calculates the value that is cached (e.g. the value of {@code source} clamped to a range)
+   */
+  public CachedProperty(@NotNull final AbstractProperty<?> source, @NotNull final Supplier<T> valueSupplier) {
+    this.source = Objects.requireNonNull(source);
+    this.valueSupplier = Objects.requireNonNull(valueSupplier);
+  }
+
+  /**
+   * @return the cached value, which is up-to-date with the current value of the source property
+   */
+  public T get() {
+    if (initializedFor != Config.getPref()) {
+      initialize();
+    }
+    return value;
+  }
+
+  private synchronized void initialize() {
+    final IPreferences preferences = Config.getPref();
+    if (initializedFor != preferences) {
+      // the listener is registered at the preferences instance that is currently in use
+      source.addListener(__ -> value = valueSupplier.get());
+      value = valueSupplier.get();
+      initializedFor = preferences;
+    }
+  }
+}
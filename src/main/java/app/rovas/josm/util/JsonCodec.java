@@ -0,0 +1,68 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.util;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.JsonReaderFactory;
+import javax.json.spi.JsonProvider;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+
+import com.drew.lang.annotations.NotNull;
+
+/**
+ * <p>The JSON-P factories that are used for reading and writing JSON.</p>
+ *
+ * <p>The static methods in {@link javax.json.Json} look up the {@link JsonProvider} via the {@link java.util.ServiceLoader}
+ * on every call (e.g. for every {@link javax.json.Json#createObjectBuilder()}). Here the provider is looked up
+ * only once and the factories are created only once, they are thread-safe and can be shared.</p>
+ */
+public final class JsonCodec {
+  private static final JsonProvider PROVIDER = JsonProvider.provider();
+  private static final JsonReaderFactory READER_FACTORY = PROVIDER.createReaderFactory(Collections.emptyMap());
+  private static final JsonBuilderFactory BUILDER_FACTORY = PROVIDER.createBuilderFactory(Collections.emptyMap());
+  private static final JsonGeneratorFactory GENERATOR_FACTORY = PROVIDER.createGeneratorFactory(Collections.emptyMap());
+  private static final JsonParserFactory PARSER_FACTORY = PROVIDER.createParserFactory(Collections.emptyMap());
+
+  private JsonCodec() {
+    // private constructor to prevent instantiation
+  }
+
+  /**
+   * @return a new builder for a JSON object, same as {@link javax.json.Json#createObjectBuilder()}
+   */
+  public static JsonObjectBuilder createObjectBuilder() {
+    return BUILDER_FACTORY.createObjectBuilder();
+  }
+
+  /**
+   * @param in the stream from which JSON is read, the encoding is detected automatically
+   * @return a new reader for the given stream, same as {@link javax.json.Json#createReader(InputStream)}
+   */
+  public static JsonReader createReader(@NotNull final InputStream in) {
+    return READER_FACTORY.createReader(in);
+  }
+
+  /**
+   * @param in the stream from which JSON is read, the encoding is detected automatically
+   * @return a new streaming parser for the given stream, same as {@link javax.json.Json#createParser(InputStream)}
+   */
+  public static JsonParser createParser(@NotNull final InputStream in) {
+    return PARSER_FACTORY.createParser(in);
+  }
+
+  /**
+   * @param out the stream to which the JSON is written as UTF-8
+   * @return a new generator that writes to the given stream
+   */
+  public static JsonGenerator createGenerator(@NotNull final OutputStream out) {
+    return GENERATOR_FACTORY.createGenerator(out, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,141 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.stream.JsonGenerator;
+
+import com.drew.lang.annotations.NotNull;
+
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * <p>A JSON file, that is read and written on a background thread.</p>
+ *
+ * <p>All tasks passed to {@link #execute(Runnable)} run on the same single thread, in the order in which they were
+ * passed. So if every change is followed by a task that {@link #write(Consumer) writes} the file, the file is written
+ * in the same order as the changes are made. The thread terminates when it had nothing to do for a few seconds.</p>
+ *
+ * <p>The file is never only partially written: the content is first written to a temporary file,
+ * which then atomically replaces the file.</p>
+ */
+public final class JsonFileStore {
+  private static final long THREAD_KEEP_ALIVE_SECONDS = 5;
+
+  private final File file;
+  private final ThreadPoolExecutor executor;
+
+  /**
+   * @param fileName the name of the file
+   * @return the file with the given name in the directory of the plugin inside the JOSM user data directory
+   */
+  @NotNull
+  public static File getDefaultFile(@NotNull final String fileName) {
+    return new File(new File(Config.getDirs().getUserDataDirectory(true), "rovas"), fileName);
+  }
+
+  /**
+   * @param file the file that is read and written
+   * @param threadName the name of the background thread
+   */
+  public JsonFileStore(@NotNull final File file, @NotNull final String threadName) {
+    this.file = Objects.requireNonNull(file);
+    this.executor = new ThreadPoolExecutor(
+      1,
+      1,
+      THREAD_KEEP_ALIVE_SECONDS,
+      TimeUnit.SECONDS,
+      new LinkedBlockingQueue<>(),
+      Utils.newThreadFactory(threadName + "-%d", Thread.NORM_PRIORITY)
+    );
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * @return the file that is read and written
+   */
+  @NotNull
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * @param task the task that is executed on the background thread, after all tasks that were passed before
+   */
+  public void execute(@NotNull final Runnable task) {
+    executor.execute(task);
+  }
+
+  /**
+   * Reads the JSON object from the file. Errors are logged, but not thrown.
+   * This should only be called on one thread at a time, e.g. via {@link #execute(Runnable)}.
+   * @param reader converts the JSON object, it may throw a {@link JsonException}, {@link ClassCastException}
+   *   or {@link NullPointerException} if the object does not have the expected structure
+   * @param <T> the type of the result
+   * @return the result of the {@code reader}, or an empty {@link Optional} if the file does not exist or is not valid
+   */
+  @NotNull
+  public <T> Optional<T> read(@NotNull final Function<JsonObject, T> reader) {
+    if (!file.exists()) {
+      return Optional.empty();
+    }
+    try (InputStream in = Files.newInputStream(file.toPath())) {
+      return Optional.of(reader.apply(JsonCodec.createReader(in).readObject()));
+    } catch (IOException | JsonException | ClassCastException | NullPointerException e) {
+      Logging.warn("[rovas] Could not read {0}: {1}", file, e.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Writes the file. The content is written to a temporary file first, which then replaces the file.
+   * Errors are logged, but not thrown.
+   * This should only be called on one thread at a time, e.g. via {@link #execute(Runnable)}.
+   * @param writer writes the content to the generator
+   * @return {@code true} if the file was written, {@code false} if that failed
+   */
+  public boolean write(@NotNull final Consumer<JsonGenerator> writer) {
+    final File tmpFile = new File(file.getPath() + ".tmp");
+    try {
+      final File parentDir = file.getAbsoluteFile().getParentFile();
+      if (parentDir != null && !parentDir.isDirectory() && !parentDir.mkdirs()) {
+        throw new IOException("Could not create directory " + parentDir);
+      }
+      try (OutputStream out = Files.newOutputStream(tmpFile.toPath()); JsonGenerator generator = JsonCodec.createGenerator(out)) {
+        writer.accept(generator);
+      }
+      Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    } catch (IOException | JsonException e) {
+      Logging.warn("[rovas] Could not write {0}: {1}", file, e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Waits until all tasks that were passed to {@link #execute(Runnable)} before are done
+   * @throws InterruptedException if the current thread is interrupted while waiting
+   */
+  @VisibleForTesting
+  public void awaitTasks() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(1);
+    executor.execute(latch::countDown);
+    latch.await();
+  }
+}
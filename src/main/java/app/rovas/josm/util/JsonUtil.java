@@ -7,6 +7,7 @@ import javax.json.JsonNumber;
 import javax.json.JsonObject;
 import javax.json.JsonString;
 import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
 
 public final class JsonUtil {
   private static final Pattern INT_PATTERN = Pattern.compile("^-?[0-9]+$");
@@ -34,6 +35,42 @@ public final class JsonUtil {
     return result;
   }
 
+  /**
+   * Same as {@link #extractResponseCode(JsonObject, String)}, but reads the code directly from a {@link JsonParser}
+   * that is positioned at the value of the attribute. Objects and arrays are skipped.
+   * @param valueEvent the event that the parser returned for the value of the attribute
+   * @param parser the parser from which the code is read
+   * @return the code if the value is an integer number or a string containing one, otherwise an empty {@link Optional}
+   */
+  public static Optional<Integer> extractResponseCode(final JsonParser.Event valueEvent, final JsonParser parser) {
+    final Optional<Integer> result;
+    if (valueEvent == JsonParser.Event.VALUE_STRING) {
+      result = Optional.of(parser.getString())
+        .filter(string -> INT_PATTERN.matcher(string).matches())
+        .map(Integer::parseInt);
+    } else if (valueEvent == JsonParser.Event.VALUE_NUMBER) {
+      result = Optional.of(parser.getInt());
+    } else {
+      skipValue(valueEvent, parser);
+      result = Optional.empty();
+    }
+    return result;
+  }
+
+  /**
+   * Skips the value at which the parser is currently positioned, including all nested values, without building
+   * an in-memory representation of it. For scalar values the parser already is past the value, nothing is done then.
+   * @param valueEvent the event that the parser returned for the value
+   * @param parser the parser that is positioned at the value
+   */
+  public static void skipValue(final JsonParser.Event valueEvent, final JsonParser parser) {
+    if (valueEvent == JsonParser.Event.START_OBJECT) {
+      parser.skipObject();
+    } else if (valueEvent == JsonParser.Event.START_ARRAY) {
+      parser.skipArray();
+    }
+  }
+
   private JsonUtil() {
     // private constructor to prevent instantiation
   }
@@ -52,7 +52,17 @@ public class NullableProperty<T> {
    */
   @Nullable
   public T get() {
-    return Optional.ofNullable(delegate.get()).filter(acceptableValues).orElse(null);
+    return toNullable(delegate.get());
+  }
+
+  /**
+   * @param value any value
+   * @return the given value, if {@link #acceptableValues} returns {@code true} for it, otherwise {@code null}
+   *   (the value that {@link #get()} would return after the value was {@link #put(Object) put})
+   */
+  @Nullable
+  T toNullable(@Nullable final T value) {
+    return Optional.ofNullable(value).filter(acceptableValues).orElse(null);
   }
 
   /**
@@ -0,0 +1,101 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.util;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import com.drew.lang.annotations.NotNull;
+
+/**
+ * <p>An {@link OutputStream} that keeps only the first {@link #CAPACITY} bytes that are written to it,
+ * all further bytes are only counted. This is used to capture the beginning of a response for diagnostics,
+ * without keeping arbitrarily large responses in memory.</p>
+ *
+ * <p>The fixed-size buffers are taken from a small pool when a capture is {@link #acquire() acquired}
+ * and are returned to the pool when the capture is {@link #close() closed}. So for sequential queries
+ * no new buffer needs to be allocated.</p>
+ */
+public final class ResponseCapture extends OutputStream {
+  /**
+   * The maximum number of bytes that is kept
+   */
+  @VisibleForTesting
+  static final int CAPACITY = 16 * 1024;
+  private static final int POOL_SIZE = 4;
+  private static final Queue<byte[]> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+  private byte[] buffer;
+  private int size;
+  private long totalSize;
+
+  private ResponseCapture(@NotNull final byte[] buffer) {
+    this.buffer = buffer;
+  }
+
+  /**
+   * @return a new, empty capture with a buffer from the pool (or a newly allocated one, if the pool is empty)
+   */
+  public static ResponseCapture acquire() {
+    final byte[] pooledBuffer = POOL.poll();
+    return new ResponseCapture(pooledBuffer == null ? new byte[CAPACITY] : pooledBuffer);
+  }
+
+  @Override
+  public void write(final int b) {
+    if (buffer != null && size < CAPACITY) {
+      buffer[size++] = (byte) b;
+    }
+    totalSize++;
+  }
+
+  @Override
+  public void write(@NotNull final byte[] b, final int off, final int len) {
+    if (buffer != null && size < CAPACITY) {
+      final int numCopied = Math.min(len, CAPACITY - size);
+      System.arraycopy(b, off, buffer, size, numCopied);
+      size += numCopied;
+    }
+    totalSize += len;
+  }
+
+  /**
+   * @return the number of bytes that were written to this capture, including the ones that were not kept
+   */
+  public long getTotalSize() {
+    return totalSize;
+  }
+
+  /**
+   * @return {@code true} if more bytes were written than could be kept
+   */
+  public boolean isTruncated() {
+    return totalSize > size;
+  }
+
+  /**
+   * @return the bytes that were kept, decoded as UTF-8. When the capture is truncated,
+   *   the last character might be cut in half.
+   */
+  @NotNull
+  public String getContent() {
+    return buffer == null ? "" : new String(buffer, 0, size, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns the buffer to the pool. Afterwards the content is no longer available, further writes are only counted.
+   */
+  @Override
+  public void close() {
+    if (buffer != null) {
+      POOL.offer(buffer);
+      buffer = null;
+    }
+  }
+
+  @VisibleForTesting
+  static int getPoolSize() {
+    return POOL.size();
+  }
+}
@@ -31,7 +31,9 @@ public class TeeInputStream extends FilterInputStream {
   @Override
   public int read() throws IOException {
     final int result = super.read();
-    redirectTo.write(result);
+    if (result >= 0) {
+      redirectTo.write(result);
+    }
     return result;
   }
 
@@ -66,7 +66,15 @@ public class UrlProvider {
    * @return the base URL used for links to the Rovas app and API calls (includes domain and protocol, e.g. {@code https://rovas.app})
    */
   protected String getBaseUrl() {
-    return RovasProperties.DEVELOPER.get() ? BASE_URL_DEVELOPMENT : BASE_URL_PRODUCTION;
+    return RovasProperties.CACHED_DEVELOPER.get() ? BASE_URL_DEVELOPMENT : BASE_URL_PRODUCTION;
+  }
+
+  /**
+   * @return the base URL used for links to the Rovas app and API calls, see {@link #getBaseUrl()}
+   */
+  @NotNull
+  public URL baseUrl() {
+    return uncheckedURL(getBaseUrl());
   }
 
   /**
@@ -0,0 +1,142 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.ProxySelector;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
+import com.drew.lang.annotations.NotNull;
+
+/**
+ * <p>Sends the requests with {@code java.net.http.HttpClient}. One client is shared by all requests, it keeps
+ * the connections to the server open and negotiates HTTP/2 if the server supports it.
+ * The proxy settings of JOSM are respected, because JOSM installs its proxy selector as default {@link ProxySelector}.</p>
+ *
+ * <p>This is the Java 11 version of the class, it is packaged as multi-release class into the plugin jar.</p>
+ */
+final class JavaHttpClientTransport implements ApiTransport {
+  private static JavaHttpClientTransport instance;
+
+  private final HttpClient client;
+
+  private JavaHttpClientTransport() {
+    this.client = HttpClient.newBuilder()
+      .followRedirects(HttpClient.Redirect.NORMAL)
+      .proxy(ProxySelector.getDefault())
+      .build();
+  }
+
+  /**
+   * @return the transport, which is always available for this version of the class.
+   *   The underlying client is created when this is called for the first time.
+   */
+  @NotNull
+  static synchronized Optional<ApiTransport> getInstance() {
+    if (instance == null) {
+      instance = new JavaHttpClientTransport();
+    }
+    return Optional.of(instance);
+  }
+
+  @NotNull
+  @Override
+  public String getName() {
+    return JAVA_HTTP_CLIENT;
+  }
+
+  @NotNull
+  @Override
+  public Response post(
+    @NotNull final URL url,
+    @NotNull final Map<String, String> headers,
+    @NotNull final ByteArrayOutputStream body,
+    final int timeoutMillis
+  ) throws ApiException.ConnectionFailure {
+    final HttpRequest.Builder request = createRequest(url, timeoutMillis).POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()));
+    try {
+      headers.forEach(request::header);
+    } catch (IllegalArgumentException e) {
+      throw new ApiException.ConnectionFailure(url, e, false);
+    }
+    return send(url, request.build());
+  }
+
+  @NotNull
+  @Override
+  public Response head(@NotNull final URL url, final int timeoutMillis) throws ApiException.ConnectionFailure {
+    return send(url, createRequest(url, timeoutMillis).method("HEAD", HttpRequest.BodyPublishers.noBody()).build());
+  }
+
+  @NotNull
+  private static HttpRequest.Builder createRequest(@NotNull final URL url, final int timeoutMillis) throws ApiException.ConnectionFailure {
+    try {
+      return HttpRequest.newBuilder(url.toURI()).timeout(Duration.ofMillis(timeoutMillis));
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      throw new ApiException.ConnectionFailure(url, e, false);
+    }
+  }
+
+  @NotNull
+  private Response send(@NotNull final URL url, @NotNull final HttpRequest request) throws ApiException.ConnectionFailure {
+    try {
+      return new ClientResponse(url, client.send(request, HttpResponse.BodyHandlers.ofInputStream()));
+    } catch (IOException e) {
+      throw new ApiException.ConnectionFailure(url, e, ApiTransport.isRequestPossiblySent(e));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ApiException.ConnectionFailure(url, new InterruptedIOException(e.getMessage()), true);
+    }
+  }
+
+  private static final class ClientResponse implements Response {
+    private final URL url;
+    private final HttpResponse<InputStream> response;
+
+    ClientResponse(@NotNull final URL url, @NotNull final HttpResponse<InputStream> response) {
+      this.url = url;
+      this.response = response;
+    }
+
+    @NotNull
+    @Override
+    public URL getUrl() {
+      return url;
+    }
+
+    @Override
+    public int getStatusCode() {
+      return response.statusCode();
+    }
+
+    @NotNull
+    @Override
+    public InputStream getBody() {
+      return response.body();
+    }
+
+    @Override
+    public void release() {
+      // nothing to do, the closed response stream already returned the connection to the pool of the client
+    }
+
+    @Override
+    public void abort() {
+      try {
+        // closing the stream before the end of the response cancels the exchange
+        response.body().close();
+      } catch (IOException e) {
+        // the response is not needed anymore anyway
+      }
+    }
+  }
+}
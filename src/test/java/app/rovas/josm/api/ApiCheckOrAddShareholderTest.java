@@ -12,10 +12,14 @@ import static com.github.tomakehurst.wiremock.client.WireMock.post;
 import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.unauthorized;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
@@ -84,6 +88,14 @@ public class ApiCheckOrAddShareholderTest {
     assertQueryErrorWithApiException(server, urlProvider, ApiException.DecodeResponse.class, okJson("{\"result\":null}"));
   }
 
+  @Test
+  @DisplayName("nested values before the result are skipped, everything after the result is not parsed anymore")
+  public void testStreamingDecode(final WireMockServer server, final UrlProvider urlProvider) {
+    assertQuerySuccess(server, urlProvider, 7, okJson("{\"other\": {\"a\": [1, {\"result\": \"2\"}]}, \"list\": [[], {}], \"result\": \"7\", \"rest\": ][ not JSON"));
+    assertQueryErrorWithApiException(server, urlProvider, ApiException.DecodeResponse.class, okJson("[{\"result\": \"7\"}]"));
+    assertQueryErrorWithApiException(server, urlProvider, ApiException.DecodeResponse.class, okJson("{\"other\": ][, \"result\": \"7\"}"));
+  }
+
   @Test
   @DisplayName("error code -1 (expected if no project is found for the given ID)")
   public void testErrorNotAProject(final WireMockServer server, final UrlProvider urlProvider) {
@@ -131,6 +143,68 @@ public class ApiCheckOrAddShareholderTest {
     assertQuerySuccess(server, urlProvider, Integer.MAX_VALUE, okJson("{\"result\":\"" + Integer.MAX_VALUE + "\"}").withStatusMessage("OK"));
   }
 
+  @Test
+  @DisplayName("the request body is sent with a Content-Length, not chunked")
+  public void testFixedLengthRequest(final WireMockServer server, final UrlProvider urlProvider) throws ApiException {
+    stubForCredentials(server, okJson("{\"result\":\"1234\"}"));
+    for (int i = 0; i < 3; i++) { // the request buffer is reused for every request
+      assertEquals(1234, new ApiCheckOrAddShareholder(urlProvider).query(DEFAULT_CREDENTIALS));
+    }
+    final String expectedBody = "{\"project_id\":" + DEFAULT_CREDENTIALS.getProjectId() + "}";
+    server.verify(
+      exactly(3),
+      postRequestedFor(urlEqualTo("/rovas/rules/rules_proxy_check_or_add_shareholder"))
+        .withHeader("Content-Length", equalTo(String.valueOf(expectedBody.length())))
+        .withoutHeader("Transfer-Encoding")
+        .withRequestBody(equalTo(expectedBody))
+    );
+  }
+
+  @Test
+  @DisplayName("asynchronous queries report the same results as the synchronous ones")
+  public void testAsyncQuery(final WireMockServer server, final UrlProvider urlProvider) {
+    stubForCredentials(server, okJson("{\"result\":\"1234\"}"));
+    assertEquals(1234, new ApiCheckOrAddShareholder(urlProvider).queryAsync(DEFAULT_CREDENTIALS).join());
+    assertEquals(
+      "success 1234",
+      new ApiCheckOrAddShareholder(urlProvider).queryAsync(
+        DEFAULT_CREDENTIALS,
+        Runnable::run,
+        result -> CompletableFuture.completedFuture("success " + result),
+        errorCode -> CompletableFuture.completedFuture("error " + errorCode.getCode().orElse(null))
+      ).join()
+    );
+    server.verify(exactly(2), postRequestedFor(urlEqualTo("/rovas/rules/rules_proxy_check_or_add_shareholder")));
+    server.resetRequests();
+
+    stubForCredentials(server, okJson("{\"result\":\"-1\"}"));
+    assertEquals(
+      "error -1",
+      new ApiCheckOrAddShareholder(urlProvider).queryAsync(
+        DEFAULT_CREDENTIALS,
+        Runnable::run,
+        result -> CompletableFuture.completedFuture("success " + result),
+        errorCode -> CompletableFuture.completedFuture("error " + errorCode.getCode().orElse(null))
+      ).join()
+    );
+    verifyOneRequestAndReset(server);
+
+    stubForCredentials(server, unauthorized());
+    final CompletionException exception = assertThrows(
+      CompletionException.class,
+      () -> new ApiCheckOrAddShareholder(urlProvider).queryAsync(DEFAULT_CREDENTIALS).join()
+    );
+    assertTrue(exception.getCause() instanceof ApiException.WrongPluginApiCredentials);
+    assertEquals(
+      "error null",
+      new ApiCheckOrAddShareholder(urlProvider).queryAsync(
+        DEFAULT_CREDENTIALS,
+        Runnable::run,
+        result -> CompletableFuture.completedFuture("success " + result),
+        errorCode -> CompletableFuture.completedFuture("error " + errorCode.getCode().orElse(null))
+      ).join()
+    );
+  }
 
   private void assertQueryError(
     final WireMockServer server,
@@ -145,7 +219,10 @@ public class ApiCheckOrAddShareholderTest {
         (a != null && b != null) &&
         Objects.equals(a.getCode(), b.getCode())
     );
-    new ApiCheckOrAddShareholder(urlProvider).query(DEFAULT_CREDENTIALS, new NoTimeConsumer<>(), errorConsumer);
+    final ApiCheckOrAddShareholder query = new ApiCheckOrAddShareholder(urlProvider);
+    // retries are tested separately in RetryPolicyTest
+    query.setRetryPolicy(RetryPolicy.NO_RETRIES);
+    query.query(DEFAULT_CREDENTIALS, new NoTimeConsumer<>(), errorConsumer);
     errorConsumer.assertHasAccepted();
     verifyOneRequestAndReset(server);
   }
@@ -0,0 +1,6 @@
+package app.rovas.josm.api;
+
+import app.rovas.josm.fixture.UtilityClassTest;
+
+public class ApiExecutorTest implements UtilityClassTest<ApiExecutor> {
+}
@@ -9,6 +9,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.post;
 import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.unauthorized;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.util.Objects;
@@ -59,6 +60,32 @@ public class ApiFetchUserDataTest {
     verifyOneRequestAndReset(server);
   }
 
+  @Test
+  protected void testUnexpectedTypes(final WireMockServer server, final UrlProvider urlProvider) {
+    stubFor(server, okJson("{\"country\":\"DE\",\"uid\":\"42\",\"username\":\"john.doe\",\"lang_code\":\"en\",\"email\":\"john@example.org\",\"comp_score\":\"5\",\"whole_name\":\"John Doe\"}"));
+    assertThrows(ApiException.DecodeResponse.class, () -> new ApiFetchUserData(urlProvider).query(DEFAULT_CREDENTIALS));
+    verifyOneRequestAndReset(server);
+
+    stubFor(server, okJson("{\"country\":\"DE\",\"uid\":42,\"username\":\"john.doe\",\"lang_code\":\"en\",\"email\":\"john@example.org\",\"comp_score\":\"X\",\"whole_name\":\"John Doe\"}"));
+    assertThrows(ApiException.DecodeResponse.class, () -> new ApiFetchUserData(urlProvider).query(DEFAULT_CREDENTIALS));
+    verifyOneRequestAndReset(server);
+
+    stubFor(server, okJson("{\"country\":\"DE\",\"uid\":42,\"username\":\"john.doe\",\"lang_code\":\"en\",\"email\":\"john@example.org\",\"comp_score\":\"5\"}"));
+    assertThrows(ApiException.DecodeResponse.class, () -> new ApiFetchUserData(urlProvider).query(DEFAULT_CREDENTIALS));
+    verifyOneRequestAndReset(server);
+  }
+
+  @Test
+  protected void testAdditionalFields(final WireMockServer server, final UrlProvider urlProvider) throws ApiException {
+    stubFor(server, okJson("{\"roles\":[\"a\",{\"uid\":1}],\"country\":\"DE\",\"uid\":42,\"username\":\"john.doe\",\"lang_code\":\"en\",\"email\":\"john@example.org\",\"comp_score\":\"5\",\"whole_name\":\"John Doe\",\"rest\": ][ not JSON"));
+
+    final UserData result = new ApiFetchUserData(urlProvider).query(DEFAULT_CREDENTIALS);
+    assertEquals(42, result.getUid());
+    assertEquals("John Doe", result.getWholeName());
+    assertEquals(5, result.getComplianceScore());
+    verifyOneRequestAndReset(server);
+  }
+
   @Test
   protected void testError(final WireMockServer server, final UrlProvider urlProvider) throws ApiException {
     stubFor(server, unauthorized());
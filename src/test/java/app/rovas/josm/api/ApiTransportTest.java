@@ -0,0 +1,112 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import static app.rovas.josm.api.ApiQueryTest.DEFAULT_CREDENTIALS;
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalToJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.exactly;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.unauthorized;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import app.rovas.josm.fixture.WiremockExtension;
+import app.rovas.josm.util.UrlProvider;
+
+@ExtendWith(WiremockExtension.class)
+public class ApiTransportTest {
+  private static final String SHAREHOLDER_PATH = "/rovas/rules/rules_proxy_check_or_add_shareholder";
+
+  @Test
+  public void testForName() {
+    assertSame(HttpUrlConnectionTransport.INSTANCE, ApiTransport.forName(ApiTransport.URL_CONNECTION));
+    assertSame(JosmHttpClientTransport.INSTANCE, ApiTransport.forName(ApiTransport.JOSM_HTTP_CLIENT));
+    assertSame(JosmHttpClientTransport.INSTANCE, ApiTransport.forName("unknown"));
+    assertSame(JosmHttpClientTransport.INSTANCE, ApiTransport.forName(null));
+    assertEquals(
+      JavaHttpClientTransport.getInstance().isPresent() ? ApiTransport.JAVA_HTTP_CLIENT : ApiTransport.JOSM_HTTP_CLIENT,
+      ApiTransport.forName(ApiTransport.JAVA_HTTP_CLIENT).getName()
+    );
+    for (final ApiTransport transport : getAvailableTransports()) {
+      assertSame(transport, ApiTransport.forName(transport.getName()));
+    }
+  }
+
+  @Test
+  public void testResponses(final WireMockServer server, final UrlProvider urlProvider) throws ApiException {
+    for (final ApiTransport transport : getAvailableTransports()) {
+      final ApiCheckOrAddShareholder query = new ApiCheckOrAddShareholder(urlProvider);
+      query.setRetryPolicy(RetryPolicy.NO_RETRIES);
+      query.setTransport(transport);
+
+      server.stubFor(post(SHAREHOLDER_PATH).willReturn(okJson("{\"result\": 1234}")));
+      assertEquals(1234, query.queryWithRetries(DEFAULT_CREDENTIALS), transport.getName());
+      server.verify(
+        exactly(1),
+        postRequestedFor(urlEqualTo(SHAREHOLDER_PATH))
+          .withHeader("API-KEY", equalTo(DEFAULT_CREDENTIALS.getApiKey()))
+          .withHeader("TOKEN", equalTo(DEFAULT_CREDENTIALS.getApiToken()))
+          .withHeader("Content-Length", equalTo("17"))
+          .withRequestBody(equalToJson("{\"project_id\": " + DEFAULT_CREDENTIALS.getProjectId() + "}"))
+      );
+
+      server.stubFor(post(SHAREHOLDER_PATH).willReturn(unauthorized().withBody("Unauthorized")));
+      assertThrows(ApiException.WrongPluginApiCredentials.class, () -> query.queryWithRetries(DEFAULT_CREDENTIALS), transport.getName());
+
+      server.stubFor(post(SHAREHOLDER_PATH).willReturn(aResponse().withStatus(503).withBody("{\"result\": 1234}")));
+      assertThrows(ApiException.ConnectionFailure.class, () -> query.queryWithRetries(DEFAULT_CREDENTIALS), transport.getName());
+
+      server.resetAll();
+    }
+  }
+
+  @Test
+  public void testUnreachableServer() throws IOException {
+    // A port where no server is listening, so the request can't be sent
+    final int closedPort;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      closedPort = socket.getLocalPort();
+    }
+    final UrlProvider urlProvider = new UrlProvider() {
+      @Override
+      protected String getBaseUrl() {
+        return "http://localhost:" + closedPort;
+      }
+    };
+    for (final ApiTransport transport : getAvailableTransports()) {
+      final ApiCreateAur query = new ApiCreateAur(urlProvider, 5678, 12);
+      query.setRetryPolicy(RetryPolicy.NO_RETRIES);
+      query.setTransport(transport);
+      final ApiException.ConnectionFailure exception = assertThrows(
+        ApiException.ConnectionFailure.class,
+        () -> query.queryWithRetries(DEFAULT_CREDENTIALS),
+        transport.getName()
+      );
+      assertFalse(exception.isRequestSent(), transport.getName());
+      CircuitBreaker.resetAll();
+    }
+  }
+
+  private static List<ApiTransport> getAvailableTransports() {
+    final List<ApiTransport> transports = new ArrayList<>();
+    transports.add(HttpUrlConnectionTransport.INSTANCE);
+    transports.add(JosmHttpClientTransport.INSTANCE);
+    JavaHttpClientTransport.getInstance().ifPresent(transports::add);
+    return transports;
+  }
+}
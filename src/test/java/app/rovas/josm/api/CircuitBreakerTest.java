@@ -0,0 +1,105 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import static app.rovas.josm.api.ApiQueryTest.DEFAULT_CREDENTIALS;
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.any;
+import static com.github.tomakehurst.wiremock.client.WireMock.anyRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.anyUrl;
+import static com.github.tomakehurst.wiremock.client.WireMock.exactly;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.unauthorized;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.http.Fault;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import app.rovas.josm.fixture.WiremockExtension;
+import app.rovas.josm.util.UrlProvider;
+
+@ExtendWith(WiremockExtension.class)
+public class CircuitBreakerTest {
+  private static final String SHAREHOLDER_PATH = "/rovas/rules/rules_proxy_check_or_add_shareholder";
+
+  @Test
+  public void testOpensAfterConsecutiveFailures(final WireMockServer server, final UrlProvider urlProvider) throws ApiException {
+    final CircuitBreaker breaker = new CircuitBreaker(urlProvider.baseUrl(), 3, TimeUnit.HOURS.toMillis(1), TimeUnit.HOURS.toMillis(1));
+    CircuitBreaker.register(breaker);
+    assertSame(breaker, CircuitBreaker.forBaseUrl(urlProvider.baseUrl()));
+
+    server.stubFor(post(SHAREHOLDER_PATH).willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+    final ApiCheckOrAddShareholder query = new ApiCheckOrAddShareholder(urlProvider);
+    query.setRetryPolicy(RetryPolicy.NO_RETRIES);
+    for (int i = 0; i < 2; i++) {
+      assertThrows(ApiException.ConnectionFailure.class, () -> query.queryWithRetries(DEFAULT_CREDENTIALS));
+    }
+    // a response (even an error) resets the count of consecutive failures
+    server.stubFor(post(SHAREHOLDER_PATH).willReturn(unauthorized()));
+    assertThrows(ApiException.WrongPluginApiCredentials.class, () -> query.queryWithRetries(DEFAULT_CREDENTIALS));
+    server.stubFor(post(SHAREHOLDER_PATH).willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+    for (int i = 0; i < 2; i++) {
+      assertThrows(ApiException.ConnectionFailure.class, () -> query.queryWithRetries(DEFAULT_CREDENTIALS));
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+    assertThrows(ApiException.ConnectionFailure.class, () -> query.queryWithRetries(DEFAULT_CREDENTIALS));
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    server.verify(exactly(6), postRequestedFor(urlEqualTo(SHAREHOLDER_PATH)));
+
+    // the circuit is open, so no request is sent, even though the server would answer now
+    server.stubFor(post(SHAREHOLDER_PATH).willReturn(okJson("{\"result\": 1234}")));
+    final ApiException.ConnectionFailure exception = assertThrows(ApiException.ConnectionFailure.class, () -> query.queryWithRetries(DEFAULT_CREDENTIALS));
+    assertFalse(exception.isRequestSent());
+    server.verify(exactly(6), postRequestedFor(urlEqualTo(SHAREHOLDER_PATH)));
+  }
+
+  @Test
+  public void testProbeClosesCircuit(final WireMockServer server, final UrlProvider urlProvider) throws ApiException {
+    final CircuitBreaker breaker = new CircuitBreaker(urlProvider.baseUrl(), 1, 50, 200);
+    CircuitBreaker.register(breaker);
+    final List<URL> closedEvents = new CopyOnWriteArrayList<>();
+    breaker.addListener(closedEvents::add);
+
+    server.stubFor(post(SHAREHOLDER_PATH).willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+    final ApiCheckOrAddShareholder query = new ApiCheckOrAddShareholder(urlProvider);
+    query.setRetryPolicy(RetryPolicy.NO_RETRIES);
+    assertThrows(ApiException.ConnectionFailure.class, () -> query.queryWithRetries(DEFAULT_CREDENTIALS));
+    assertFalse(breaker.isRequestAllowed());
+
+    // the probe only needs any HTTP response, unmatched requests are answered with status 404
+    await().atMost(5, TimeUnit.SECONDS).until(breaker::isRequestAllowed);
+    assertEquals(1, closedEvents.size());
+    assertEquals(urlProvider.baseUrl(), closedEvents.get(0));
+    server.verify(anyRequestedFor(urlEqualTo("/")));
+
+    server.stubFor(post(SHAREHOLDER_PATH).willReturn(okJson("{\"result\": 1234}")));
+    assertEquals(1234, query.queryWithRetries(DEFAULT_CREDENTIALS));
+  }
+
+  @Test
+  public void testProbeFailureKeepsCircuitOpen(final WireMockServer server, final UrlProvider urlProvider) throws Exception {
+    final CircuitBreaker breaker = new CircuitBreaker(urlProvider.baseUrl(), 1, 20, 40);
+    server.stubFor(any(anyUrl()).willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+    breaker.onConnectionFailure();
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> server.findAll(anyRequestedFor(urlEqualTo("/"))).size() >= 2);
+    assertFalse(breaker.isRequestAllowed());
+
+    server.resetAll();
+    await().atMost(5, TimeUnit.SECONDS).until(breaker::isRequestAllowed);
+  }
+}
@@ -0,0 +1,72 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import static app.rovas.josm.api.ApiQueryTest.DEFAULT_CREDENTIALS;
+import static com.github.tomakehurst.wiremock.client.WireMock.anyRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.anyUrl;
+import static com.github.tomakehurst.wiremock.client.WireMock.exactly;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.matching.RequestPatternBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import app.rovas.josm.fixture.ConnectionCountingProxy;
+import app.rovas.josm.fixture.WiremockExtension;
+import app.rovas.josm.util.UrlProvider;
+
+@ExtendWith(WiremockExtension.class)
+public class ConnectionPrewarmerTest {
+  private static final RequestPatternBuilder HEAD_ROOT = RequestPatternBuilder.newRequestPattern(RequestMethod.HEAD, urlEqualTo("/"));
+
+  @Test
+  public void testPrewarm(final WireMockServer server, final UrlProvider urlProvider) {
+    final ConnectionPrewarmer prewarmer = new ConnectionPrewarmer(TimeUnit.HOURS.toMillis(1));
+    // the server answers with 404, but any answer is fine
+    assertTrue(prewarmer.prewarm(urlProvider).join());
+    server.verify(exactly(1), HEAD_ROOT);
+
+    // not repeated within the minimum interval
+    assertFalse(prewarmer.prewarm(urlProvider).join());
+    server.verify(exactly(1), HEAD_ROOT);
+  }
+
+  @Test
+  public void testNoPrewarmWhileCircuitIsOpen(final WireMockServer server, final UrlProvider urlProvider) {
+    final CircuitBreaker breaker = new CircuitBreaker(urlProvider.baseUrl(), 1, TimeUnit.HOURS.toMillis(1), TimeUnit.HOURS.toMillis(1));
+    CircuitBreaker.register(breaker);
+    breaker.onConnectionFailure();
+
+    assertFalse(new ConnectionPrewarmer(0).prewarm(urlProvider).join());
+    server.verify(exactly(0), anyRequestedFor(anyUrl()));
+  }
+
+  @Test
+  public void testQueryReusesConnection(final WireMockServer server) throws IOException, ApiException {
+    server.stubFor(post("/rovas/rules/rules_proxy_check_or_add_shareholder").willReturn(okJson("{\"result\": 1234}")));
+
+    try (ConnectionCountingProxy proxy = new ConnectionCountingProxy(server.port())) {
+      final UrlProvider proxyUrlProvider = new UrlProvider() {
+        @Override
+        protected String getBaseUrl() {
+          return "http://localhost:" + proxy.getPort();
+        }
+      };
+      assertTrue(new ConnectionPrewarmer(0).prewarm(proxyUrlProvider).join());
+      assertEquals(1, proxy.getNumConnections());
+
+      assertEquals(1234, new ApiCheckOrAddShareholder(proxyUrlProvider).queryWithRetries(DEFAULT_CREDENTIALS));
+      assertEquals(1, proxy.getNumConnections());
+    }
+  }
+}
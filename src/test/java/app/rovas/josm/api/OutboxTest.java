@@ -0,0 +1,253 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import static app.rovas.josm.api.ApiQueryTest.DEFAULT_CREDENTIALS;
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalToJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.exactly;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.github.tomakehurst.wiremock.junit.Stubbing;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import app.rovas.josm.fixture.WiremockExtension;
+import app.rovas.josm.model.RovasProperties;
+import app.rovas.josm.util.JsonCodec;
+import app.rovas.josm.util.UrlProvider;
+
+@ExtendWith(WiremockExtension.class)
+public class OutboxTest {
+  private static final String SHAREHOLDER_PATH = "/rovas/rules/rules_proxy_check_or_add_shareholder";
+  private static final String WORK_REPORT_PATH = "/rovas/rules/rules_proxy_create_work_report";
+  private static final String AUR_PATH = "/rovas/rules/rules_proxy_create_aur";
+
+  @TempDir
+  protected File tempDir;
+
+  @BeforeEach
+  public void setUp(final UrlProvider urlProvider) {
+    CircuitBreaker.register(new CircuitBreaker(urlProvider.baseUrl(), 3, 50, 200));
+    RovasProperties.WRITER.put(RovasProperties.ROVAS_API_KEY, DEFAULT_CREDENTIALS.getApiKey());
+    RovasProperties.WRITER.put(RovasProperties.ROVAS_API_TOKEN, DEFAULT_CREDENTIALS.getApiToken());
+  }
+
+  @AfterEach
+  public void tearDown() {
+    RovasProperties.WRITER.put(RovasProperties.ROVAS_API_KEY, null);
+    RovasProperties.WRITER.put(RovasProperties.ROVAS_API_TOKEN, null);
+    RovasProperties.WRITER.flush();
+  }
+
+  @Test
+  public void testRetryAfterConnectionFailure(final Stubbing server, final UrlProvider urlProvider) {
+    server.stubFor(post(SHAREHOLDER_PATH).willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+    final RecordingListener listener = new RecordingListener();
+    final Outbox outbox = new Outbox(new File(tempDir, "outbox.json"), urlProvider, 50, 200);
+    outbox.addListener(listener);
+
+    outbox.enqueue(Submission.create(DEFAULT_CREDENTIALS, 30, Optional.empty(), Submission.Stage.CHECK_SHAREHOLDER, 0));
+    // every attempt of the outbox already retries the query with backoff (see RetryPolicy.DEFAULT)
+    await().atMost(15, TimeUnit.SECONDS).until(() ->
+      outbox.getPendingSubmissions().size() == 1 && outbox.getPendingSubmissions().get(0).getFailedAttempts() >= 2
+    );
+
+    // the server can be reached again
+    server.stubFor(post(SHAREHOLDER_PATH).willReturn(okJson("{\"result\": 1234}")));
+    server.stubFor(post(WORK_REPORT_PATH).willReturn(okJson("{\"created_wr_nid\": 5678}")));
+    server.stubFor(post(AUR_PATH).willReturn(okJson("{\"result\": 91011}")));
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> outbox.getPendingSubmissions().isEmpty());
+    assertEquals(1, listener.completed.size());
+    assertEquals(5678, listener.completed.get(0).getWorkReportId());
+    assertEquals(0, listener.failed.size());
+    server.verify(exactly(1), postRequestedFor(urlPathEqualTo(WORK_REPORT_PATH)));
+    server.verify(exactly(1), postRequestedFor(urlPathEqualTo(AUR_PATH)).withRequestBody(equalToJson("{\"wr_id\": 5678}", false, true)));
+  }
+
+  @Test
+  public void testPossiblySentWorkReportIsNotRetried(final Stubbing server, final UrlProvider urlProvider) {
+    server.stubFor(post(WORK_REPORT_PATH).willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+    final RecordingListener listener = new RecordingListener();
+    final Outbox outbox = new Outbox(new File(tempDir, "outbox.json"), urlProvider, TimeUnit.HOURS.toMillis(1), TimeUnit.HOURS.toMillis(1));
+    outbox.addListener(listener);
+    final Submission submission = Submission.create(DEFAULT_CREDENTIALS, 30, Optional.empty(), Submission.Stage.CREATE_WORK_REPORT, 0);
+
+    // enqueuing the same submission again replaces the queued one
+    outbox.enqueue(submission);
+    outbox.enqueue(submission);
+    await().atMost(5, TimeUnit.SECONDS).until(() -> outbox.getPendingSubmissions().size() == 1);
+    assertEquals(submission.getIdempotencyKey(), outbox.getPendingSubmissions().get(0).getIdempotencyKey());
+
+    // the connection breaks after the request was sent, so the work report might have been created
+    outbox.retryNow();
+    await().atMost(5, TimeUnit.SECONDS).until(() -> listener.possiblyCreated.size() == 1);
+    assertTrue(outbox.getPendingSubmissions().isEmpty());
+    assertEquals(submission.getIdempotencyKey(), listener.possiblyCreated.get(0).getIdempotencyKey());
+    assertEquals(0, listener.failed.size());
+    server.verify(exactly(1), postRequestedFor(urlPathEqualTo(WORK_REPORT_PATH)));
+
+    // when the user submits it again, the same idempotency key is sent
+    server.stubFor(post(WORK_REPORT_PATH).willReturn(okJson("{\"created_wr_nid\": 5678}")));
+    server.stubFor(post(AUR_PATH).willReturn(okJson("{\"result\": 91011}")));
+    outbox.enqueue(submission);
+    outbox.retryNow();
+    await().atMost(5, TimeUnit.SECONDS).until(() -> listener.completed.size() == 1);
+    server.findAll(postRequestedFor(urlPathEqualTo(WORK_REPORT_PATH))).forEach(request ->
+      assertEquals(
+        submission.getIdempotencyKey(),
+        JsonCodec.createReader(new ByteArrayInputStream(request.getBody())).readObject().getString("access_token")
+      )
+    );
+    server.verify(exactly(2), postRequestedFor(urlPathEqualTo(WORK_REPORT_PATH)));
+  }
+
+  @Test
+  public void testSurvivesRestart(final Stubbing server, final UrlProvider urlProvider) throws IOException {
+    final File file = new File(tempDir, "outbox.json");
+    final Outbox outbox = new Outbox(file, urlProvider, TimeUnit.HOURS.toMillis(1), TimeUnit.HOURS.toMillis(1));
+    outbox.enqueue(Submission.create(DEFAULT_CREDENTIALS, 90, Optional.empty(), Submission.Stage.CREATE_AUR, 4321));
+    await().atMost(5, TimeUnit.SECONDS).until(() -> outbox.getPendingSubmissions().size() == 1 && file.exists());
+
+    server.stubFor(post(AUR_PATH).willReturn(okJson("{\"result\": 91011}")));
+    final RecordingListener listener = new RecordingListener();
+    final Outbox restartedOutbox = new Outbox(file, urlProvider, TimeUnit.HOURS.toMillis(1), TimeUnit.HOURS.toMillis(1));
+    restartedOutbox.addListener(listener);
+    await().atMost(5, TimeUnit.SECONDS).until(() -> restartedOutbox.getPendingSubmissions().size() == 1);
+
+    final Submission restored = restartedOutbox.getPendingSubmissions().get(0);
+    assertEquals(90, restored.getMinutes());
+    assertEquals(4321, restored.getWorkReportId());
+    assertEquals(Submission.Stage.CREATE_AUR, restored.getStage());
+    assertEquals(1, restored.getFailedAttempts());
+    assertEquals(Optional.of(DEFAULT_CREDENTIALS), restored.lookUpCredentials());
+    // only a hash of the credentials is persisted
+    final String fileContent = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    assertFalse(fileContent.contains(DEFAULT_CREDENTIALS.getApiKey()), fileContent);
+    assertFalse(fileContent.contains(DEFAULT_CREDENTIALS.getApiToken()), fileContent);
+    assertEquals(outbox.getPendingSubmissions().get(0).getIdempotencyKey(), restored.getIdempotencyKey());
+
+    // the backoff delay is one hour, so without this no request would be made
+    restartedOutbox.retryNow();
+    await().atMost(5, TimeUnit.SECONDS).until(() -> restartedOutbox.getPendingSubmissions().isEmpty());
+    assertEquals(1, listener.completed.size());
+    server.verify(exactly(1), postRequestedFor(urlPathEqualTo(AUR_PATH)).withRequestBody(equalToJson("{\"wr_id\": 4321}", false, true)));
+  }
+
+  @Test
+  public void testErrorCodeIsNotRetried(final Stubbing server, final UrlProvider urlProvider) {
+    server.stubFor(post(WORK_REPORT_PATH).willReturn(okJson("{\"created_wr_nid\": -2}")));
+    final RecordingListener listener = new RecordingListener();
+    final Outbox outbox = new Outbox(new File(tempDir, "outbox.json"), urlProvider, 50, 200);
+    outbox.addListener(listener);
+
+    outbox.enqueue(Submission.create(DEFAULT_CREDENTIALS, 30, Optional.empty(), Submission.Stage.CREATE_WORK_REPORT, 0));
+    await().atMost(5, TimeUnit.SECONDS).until(() -> listener.failed.size() == 1);
+    await().atMost(5, TimeUnit.SECONDS).until(() -> outbox.getPendingSubmissions().isEmpty());
+
+    assertEquals(Optional.of(-2), listener.failed.get(0).getCode());
+    assertEquals(0, listener.completed.size());
+    server.verify(exactly(1), postRequestedFor(urlPathEqualTo(WORK_REPORT_PATH)));
+    server.verify(exactly(0), postRequestedFor(urlPathEqualTo(AUR_PATH)));
+  }
+
+  @Test
+  public void testClientErrorIsNotRetried(final Stubbing server, final UrlProvider urlProvider) {
+    server.stubFor(post(SHAREHOLDER_PATH).willReturn(aResponse().withStatus(400)));
+    final RecordingListener listener = new RecordingListener();
+    final Outbox outbox = new Outbox(new File(tempDir, "outbox.json"), urlProvider, 50, 200);
+    outbox.addListener(listener);
+
+    outbox.enqueue(Submission.create(DEFAULT_CREDENTIALS, 30, Optional.empty(), Submission.Stage.CHECK_SHAREHOLDER, 0));
+    await().atMost(5, TimeUnit.SECONDS).until(() -> listener.failed.size() == 1);
+    await().atMost(5, TimeUnit.SECONDS).until(() -> outbox.getPendingSubmissions().isEmpty());
+    assertFalse(listener.failed.get(0).isConnectionFailure());
+    server.verify(exactly(1), postRequestedFor(urlPathEqualTo(SHAREHOLDER_PATH)));
+  }
+
+  @Test
+  public void testChangedCredentials(final Stubbing server, final UrlProvider urlProvider) {
+    final RecordingListener listener = new RecordingListener();
+    final Outbox outbox = new Outbox(new File(tempDir, "outbox.json"), urlProvider, TimeUnit.HOURS.toMillis(1), TimeUnit.HOURS.toMillis(1));
+    outbox.addListener(listener);
+    outbox.enqueue(Submission.create(DEFAULT_CREDENTIALS, 30, Optional.empty(), Submission.Stage.CREATE_WORK_REPORT, 0));
+    await().atMost(5, TimeUnit.SECONDS).until(() -> outbox.getPendingSubmissions().size() == 1);
+
+    // the submission is not sent with the credentials of another user
+    RovasProperties.WRITER.put(RovasProperties.ROVAS_API_TOKEN, "another-token");
+    outbox.retryNow();
+    await().atMost(5, TimeUnit.SECONDS).until(() -> listener.failed.size() == 1);
+    assertTrue(outbox.getPendingSubmissions().isEmpty());
+    assertEquals(0, listener.completed.size());
+    server.verify(exactly(0), postRequestedFor(urlPathEqualTo(WORK_REPORT_PATH)));
+  }
+
+  @Test
+  public void testShareholderCache(final Stubbing server, final UrlProvider urlProvider) {
+    server.stubFor(post(SHAREHOLDER_PATH).willReturn(okJson("{\"result\": 1234}")));
+    server.stubFor(post(WORK_REPORT_PATH).willReturn(okJson("{\"created_wr_nid\": -1}").withFixedDelay(500)));
+    final RecordingListener listener = new RecordingListener();
+    final Outbox outbox = new Outbox(new File(tempDir, "outbox.json"), urlProvider, 50, 200);
+    outbox.addListener(listener);
+
+    outbox.enqueue(Submission.create(DEFAULT_CREDENTIALS, 30, Optional.empty(), Submission.Stage.CHECK_SHAREHOLDER, 0));
+    // the successful shareholder check is cached, until the server reports that the user is not a shareholder
+    await().atMost(5, TimeUnit.SECONDS).until(() -> ShareholderCache.getInstance().isShareholder(DEFAULT_CREDENTIALS));
+    await().atMost(5, TimeUnit.SECONDS).until(() -> listener.failed.size() == 1);
+    assertEquals(Optional.of(-1), listener.failed.get(0).getCode());
+    assertFalse(ShareholderCache.getInstance().isShareholder(DEFAULT_CREDENTIALS));
+  }
+
+  @Test
+  public void testBackoff(final UrlProvider urlProvider) {
+    final Outbox outbox = new Outbox(new File(tempDir, "outbox.json"), urlProvider, 1000, 60_000);
+    assertEquals(1000, outbox.getBackoffMillis(0));
+    assertEquals(2000, outbox.getBackoffMillis(1));
+    assertEquals(32_000, outbox.getBackoffMillis(5));
+    assertEquals(60_000, outbox.getBackoffMillis(6));
+    assertEquals(60_000, outbox.getBackoffMillis(100));
+    assertEquals(60_000, outbox.getBackoffMillis(Integer.MAX_VALUE));
+  }
+
+  private static final class RecordingListener implements Outbox.Listener {
+    private final List<Submission> completed = new CopyOnWriteArrayList<>();
+    private final List<ApiQuery.ErrorCode> failed = new CopyOnWriteArrayList<>();
+    private final List<Submission> possiblyCreated = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void submissionCompleted(final Submission submission) {
+      completed.add(submission);
+    }
+
+    @Override
+    public void submissionFailed(final Submission submission, final ApiQuery.ErrorCode errorCode) {
+      failed.add(errorCode);
+    }
+
+    @Override
+    public void submissionPossiblyCreated(final Submission submission) {
+      possiblyCreated.add(submission);
+    }
+  }
+}
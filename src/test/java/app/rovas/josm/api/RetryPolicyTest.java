@@ -0,0 +1,215 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import static app.rovas.josm.api.ApiQueryTest.DEFAULT_CREDENTIALS;
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.exactly;
+import static com.github.tomakehurst.wiremock.client.WireMock.lessThanOrExactly;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.unauthorized;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.github.tomakehurst.wiremock.junit.Stubbing;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import app.rovas.josm.fixture.WiremockExtension;
+import app.rovas.josm.util.UrlProvider;
+
+@ExtendWith(WiremockExtension.class)
+public class RetryPolicyTest {
+  private static final String SHAREHOLDER_PATH = "/rovas/rules/rules_proxy_check_or_add_shareholder";
+  private static final String AUR_PATH = "/rovas/rules/rules_proxy_create_aur";
+  private static final RetryPolicy FAST_POLICY = new RetryPolicy(3, 2_000, 10_000, 10, 50);
+
+  @Test
+  @DisplayName("transient faults are retried until an attempt succeeds")
+  public void testRetryAfterFault(final Stubbing server, final UrlProvider urlProvider) throws ApiException {
+    stubSequence(server, SHAREHOLDER_PATH, aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER), aResponse().withStatus(503), okJson("{\"result\": 1234}"));
+
+    final ApiCheckOrAddShareholder query = new ApiCheckOrAddShareholder(urlProvider);
+    query.setRetryPolicy(FAST_POLICY);
+    assertEquals(1234, query.queryWithRetries(DEFAULT_CREDENTIALS));
+    server.verify(exactly(3), postRequestedFor(urlEqualTo(SHAREHOLDER_PATH)));
+  }
+
+  @Test
+  @DisplayName("after the maximum number of attempts, the last exception is thrown")
+  public void testMaxAttempts(final Stubbing server, final UrlProvider urlProvider) {
+    server.stubFor(post(SHAREHOLDER_PATH).willReturn(aResponse().withFault(Fault.EMPTY_RESPONSE)));
+
+    final ApiCheckOrAddShareholder query = new ApiCheckOrAddShareholder(urlProvider);
+    query.setRetryPolicy(FAST_POLICY);
+    assertThrows(ApiException.ConnectionFailure.class, () -> query.queryWithRetries(DEFAULT_CREDENTIALS));
+    server.verify(exactly(3), postRequestedFor(urlEqualTo(SHAREHOLDER_PATH)));
+  }
+
+  @Test
+  @DisplayName("wrong credentials and responses that can't be decoded are not retried")
+  public void testNonRetryableExceptions(final WireMockServer server, final UrlProvider urlProvider) {
+    server.stubFor(post(SHAREHOLDER_PATH).willReturn(unauthorized()));
+    final ApiCheckOrAddShareholder query = new ApiCheckOrAddShareholder(urlProvider);
+    query.setRetryPolicy(FAST_POLICY);
+    assertThrows(ApiException.WrongPluginApiCredentials.class, () -> query.queryWithRetries(DEFAULT_CREDENTIALS));
+    server.verify(exactly(1), postRequestedFor(urlEqualTo(SHAREHOLDER_PATH)));
+    server.resetAll();
+
+    server.stubFor(post(SHAREHOLDER_PATH).willReturn(aResponse().withFault(Fault.MALFORMED_RESPONSE_CHUNK)));
+    assertThrows(ApiException.DecodeResponse.class, () -> query.queryWithRetries(DEFAULT_CREDENTIALS));
+    server.verify(exactly(1), postRequestedFor(urlEqualTo(SHAREHOLDER_PATH)));
+    server.resetAll();
+
+    server.stubFor(post(SHAREHOLDER_PATH).willReturn(okJson("{\"result\": []}")));
+    assertThrows(ApiException.DecodeResponse.class, () -> query.queryWithRetries(DEFAULT_CREDENTIALS));
+    server.verify(exactly(1), postRequestedFor(urlEqualTo(SHAREHOLDER_PATH)));
+  }
+
+  @Test
+  @DisplayName("4xx status codes are not retried and don't count as connection failure")
+  public void testClientErrors(final Stubbing server, final UrlProvider urlProvider) throws ApiException {
+    CircuitBreaker.register(new CircuitBreaker(urlProvider.baseUrl(), 3, 60_000, 60_000));
+    server.stubFor(post(SHAREHOLDER_PATH).willReturn(aResponse().withStatus(404)));
+    final ApiCheckOrAddShareholder query = new ApiCheckOrAddShareholder(urlProvider);
+    query.setRetryPolicy(FAST_POLICY);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(404, assertThrows(ApiException.ClientError.class, () -> query.queryWithRetries(DEFAULT_CREDENTIALS)).getStatusCode());
+    }
+    server.verify(exactly(3), postRequestedFor(urlEqualTo(SHAREHOLDER_PATH)));
+    assertEquals(CircuitBreaker.State.CLOSED, CircuitBreaker.forBaseUrl(urlProvider.baseUrl()).getState());
+
+    // a request timeout is retried like a server error
+    stubSequence(server, SHAREHOLDER_PATH, aResponse().withStatus(408), aResponse().withStatus(500), okJson("{\"result\": 1234}"));
+    assertEquals(1234, query.queryWithRetries(DEFAULT_CREDENTIALS));
+    server.verify(exactly(6), postRequestedFor(urlEqualTo(SHAREHOLDER_PATH)));
+  }
+
+  @Test
+  @DisplayName("queries that are not idempotent are not retried, once the request could have reached the server")
+  public void testNotIdempotent(final Stubbing server, final UrlProvider urlProvider) throws IOException {
+    server.stubFor(post(AUR_PATH).willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+    final ApiCreateAur query = new ApiCreateAur(urlProvider, 5678, 12);
+    query.setRetryPolicy(FAST_POLICY);
+    final ApiException.ConnectionFailure exception = assertThrows(ApiException.ConnectionFailure.class, () -> query.queryWithRetries(DEFAULT_CREDENTIALS));
+    assertTrue(exception.isRequestSent());
+    server.verify(exactly(1), postRequestedFor(urlEqualTo(AUR_PATH)));
+
+    // A port where no server is listening, so the request can't be sent
+    final int closedPort;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      closedPort = socket.getLocalPort();
+    }
+    final ApiCreateAur unreachableQuery = new ApiCreateAur(
+      new UrlProvider() {
+        @Override
+        protected String getBaseUrl() {
+          return "http://localhost:" + closedPort;
+        }
+      },
+      5678,
+      12
+    );
+    unreachableQuery.setRetryPolicy(FAST_POLICY);
+    final ApiException.ConnectionFailure notSentException = assertThrows(ApiException.ConnectionFailure.class, () -> unreachableQuery.queryWithRetries(DEFAULT_CREDENTIALS));
+    assertFalse(notSentException.isRequestSent());
+    assertTrue(FAST_POLICY.isRetryable(notSentException, false));
+    assertFalse(FAST_POLICY.isRetryable(exception, false));
+    assertTrue(FAST_POLICY.isRetryable(exception, true));
+  }
+
+  @Test
+  @DisplayName("the overall timeout limits the total time of all attempts")
+  public void testOverallTimeout(final Stubbing server, final UrlProvider urlProvider) {
+    server.stubFor(post(SHAREHOLDER_PATH).willReturn(okJson("{\"result\": 1234}").withFixedDelay(2_000)));
+
+    final ApiCheckOrAddShareholder query = new ApiCheckOrAddShareholder(urlProvider);
+    query.setRetryPolicy(new RetryPolicy(10, 300, 800, 10, 10));
+    assertTimeoutPreemptively(
+      Duration.ofMillis(1_800),
+      () -> assertThrows(ApiException.ConnectionFailure.class, () -> query.queryWithRetries(DEFAULT_CREDENTIALS))
+    );
+    server.verify(lessThanOrExactly(3), postRequestedFor(urlEqualTo(SHAREHOLDER_PATH)));
+  }
+
+  @Test
+  public void testBackoffWithJitter() {
+    final RetryPolicy policy = new RetryPolicy(100, 1_000, 1_000, 100, 1_000);
+    for (int i = 0; i < 100; i++) {
+      assertInRange(50, 100, policy.getBackoffMillis(1));
+      assertInRange(100, 200, policy.getBackoffMillis(2));
+      assertInRange(400, 800, policy.getBackoffMillis(4));
+      assertInRange(500, 1_000, policy.getBackoffMillis(5));
+      assertInRange(500, 1_000, policy.getBackoffMillis(Integer.MAX_VALUE));
+    }
+    assertEquals(0, RetryPolicy.NO_RETRIES.getBackoffMillis(1));
+    assertThrows(IllegalArgumentException.class, () -> new RetryPolicy(0, 1, 1, 0, 0));
+    assertThrows(IllegalArgumentException.class, () -> new RetryPolicy(1, 0, 1, 0, 0));
+    assertThrows(IllegalArgumentException.class, () -> new RetryPolicy(1, 1, 1, 2, 1));
+  }
+
+  private static void assertInRange(final long min, final long max, final long actual) {
+    assertTrue(min <= actual && actual <= max, () -> actual + " is not in the range [" + min + ", " + max + "]");
+  }
+
+  @Test
+  @DisplayName("asynchronous queries don't block a thread of the executor during the backoff")
+  public void testAsyncBackoffDoesNotBlock(final Stubbing server, final UrlProvider urlProvider) throws Exception {
+    CircuitBreaker.register(new CircuitBreaker(urlProvider.baseUrl(), 100, 50, 200));
+    server.stubFor(post(SHAREHOLDER_PATH).willReturn(aResponse().withStatus(503)));
+    server.stubFor(post(AUR_PATH).willReturn(okJson("{\"result\": 91011}")));
+    // the backoff is between 2 and 4 seconds
+    final RetryPolicy slowBackoffPolicy = new RetryPolicy(2, 2_000, 10_000, 4_000, 4_000);
+
+    // at least as many queries as the executor has threads, all of them wait for the backoff after the first attempt
+    final List<CompletableFuture<Integer>> retryingQueries = IntStream.range(0, 4).mapToObj(i -> {
+      final ApiCheckOrAddShareholder query = new ApiCheckOrAddShareholder(urlProvider);
+      query.setRetryPolicy(slowBackoffPolicy);
+      return query.queryAsync(DEFAULT_CREDENTIALS);
+    }).collect(Collectors.toList());
+    await().atMost(2, TimeUnit.SECONDS).untilAsserted(() -> server.verify(exactly(4), postRequestedFor(urlEqualTo(SHAREHOLDER_PATH))));
+
+    // if the waiting queries blocked the threads of the executor, this query would only be sent after the backoff
+    assertEquals(91011, new ApiCreateAur(urlProvider, 1, 30).queryAsync(DEFAULT_CREDENTIALS).get(1, TimeUnit.SECONDS));
+    assertTrue(retryingQueries.stream().noneMatch(CompletableFuture::isDone));
+
+    for (final CompletableFuture<Integer> retryingQuery : retryingQueries) {
+      final CompletionException exception = assertThrows(CompletionException.class, retryingQuery::join);
+      assertTrue(exception.getCause() instanceof ApiException.ConnectionFailure);
+    }
+    server.verify(exactly(8), postRequestedFor(urlEqualTo(SHAREHOLDER_PATH)));
+  }
+
+  private static void stubSequence(final Stubbing server, final String path, final ResponseDefinitionBuilder... responses) {
+    for (int i = 0; i < responses.length; i++) {
+      server.stubFor(
+        post(path)
+          .inScenario("sequence")
+          .whenScenarioStateIs(i == 0 ? Scenario.STARTED : "attempt " + i)
+          .willReturn(responses[i])
+          .willSetStateTo("attempt " + (i + 1))
+      );
+    }
+  }
+}
@@ -0,0 +1,89 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import static app.rovas.josm.api.ApiQueryTest.DEFAULT_CREDENTIALS;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import app.rovas.josm.model.ApiCredentials;
+import app.rovas.josm.model.RovasProperties;
+
+public class ShareholderCacheTest {
+
+  @TempDir
+  protected File tempDir;
+
+  @Test
+  public void testTtl() throws InterruptedException {
+    RovasProperties.SHAREHOLDER_CACHE_TTL_HOURS.put(2);
+    final AtomicLong clock = new AtomicLong(1_000_000);
+    final ShareholderCache cache = new ShareholderCache(new File(tempDir, "shareholders.json"), clock::get);
+
+    assertFalse(cache.isShareholder(DEFAULT_CREDENTIALS));
+    cache.put(DEFAULT_CREDENTIALS, 1234);
+    assertTrue(cache.isShareholder(DEFAULT_CREDENTIALS));
+    // the token is not part of the key, but the project is
+    assertTrue(cache.isShareholder(new ApiCredentials(DEFAULT_CREDENTIALS.getApiKey(), "other token", DEFAULT_CREDENTIALS.getProjectId())));
+    assertFalse(cache.isShareholder(new ApiCredentials(DEFAULT_CREDENTIALS.getApiKey(), DEFAULT_CREDENTIALS.getApiToken(), DEFAULT_CREDENTIALS.getProjectId() + 1)));
+    assertFalse(cache.isShareholder(new ApiCredentials("other key", DEFAULT_CREDENTIALS.getApiToken(), DEFAULT_CREDENTIALS.getProjectId())));
+
+    clock.addAndGet(TimeUnit.HOURS.toMillis(2) - 1);
+    assertTrue(cache.isShareholder(DEFAULT_CREDENTIALS));
+    clock.incrementAndGet();
+    assertFalse(cache.isShareholder(DEFAULT_CREDENTIALS));
+
+    // a TTL of 0 disables the cache
+    RovasProperties.SHAREHOLDER_CACHE_TTL_HOURS.put(0);
+    cache.put(DEFAULT_CREDENTIALS, 1234);
+    assertFalse(cache.isShareholder(DEFAULT_CREDENTIALS));
+    // the temporary directory can only be deleted once the file is written
+    cache.awaitWrites();
+  }
+
+  @Test
+  public void testPersistence() throws InterruptedException, IOException {
+    RovasProperties.SHAREHOLDER_CACHE_TTL_HOURS.put(2);
+    final File file = new File(tempDir, "shareholders.json");
+    final ShareholderCache cache = new ShareholderCache(file, System::currentTimeMillis);
+    cache.put(DEFAULT_CREDENTIALS, 1234);
+    cache.awaitWrites();
+    // the API key is not written to the file
+    assertFalse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).contains(DEFAULT_CREDENTIALS.getApiKey()));
+
+    final ShareholderCache reopenedCache = new ShareholderCache(file, System::currentTimeMillis);
+    reopenedCache.awaitWrites();
+    assertTrue(reopenedCache.isShareholder(DEFAULT_CREDENTIALS));
+
+    reopenedCache.invalidate(DEFAULT_CREDENTIALS);
+    assertFalse(reopenedCache.isShareholder(DEFAULT_CREDENTIALS));
+    reopenedCache.awaitWrites();
+    final ShareholderCache cacheAfterInvalidation = new ShareholderCache(file, System::currentTimeMillis);
+    cacheAfterInvalidation.awaitWrites();
+    assertFalse(cacheAfterInvalidation.isShareholder(DEFAULT_CREDENTIALS));
+  }
+
+  @Test
+  public void testInvalidateBeforeLoaded() throws InterruptedException {
+    RovasProperties.SHAREHOLDER_CACHE_TTL_HOURS.put(2);
+    final File file = new File(tempDir, "shareholders.json");
+    final ShareholderCache cache = new ShareholderCache(file, System::currentTimeMillis);
+    cache.put(DEFAULT_CREDENTIALS, 1234);
+    cache.awaitWrites();
+
+    // the entry is invalidated, before it might have been loaded from the file
+    final ShareholderCache reopenedCache = new ShareholderCache(file, System::currentTimeMillis);
+    reopenedCache.invalidate(DEFAULT_CREDENTIALS);
+    reopenedCache.awaitWrites();
+    assertFalse(reopenedCache.isShareholder(DEFAULT_CREDENTIALS));
+  }
+}
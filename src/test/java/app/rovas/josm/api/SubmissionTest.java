@@ -0,0 +1,63 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import static app.rovas.josm.api.ApiQueryTest.DEFAULT_CREDENTIALS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.time.Instant;
+import java.util.Optional;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.stream.JsonGenerator;
+
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.osm.Changeset;
+
+public class SubmissionTest {
+
+  @Test
+  public void testIdempotencyKey() {
+    final Changeset changeset = new Changeset(1729);
+    changeset.setCreatedAt(Instant.ofEpochSecond(73));
+
+    final Submission submission = Submission.create(DEFAULT_CREDENTIALS, 42, Optional.of(changeset), Submission.Stage.CHECK_SHAREHOLDER, 0);
+    assertTrue(submission.getIdempotencyKey().matches("[A-Za-z0-9_-]{16}"), submission.getIdempotencyKey());
+    // the same work report results in the same key
+    assertEquals(
+      submission.getIdempotencyKey(),
+      Submission.create(DEFAULT_CREDENTIALS, 42, Optional.of(changeset), Submission.Stage.CREATE_WORK_REPORT, 0).getIdempotencyKey()
+    );
+    assertEquals(submission.getIdempotencyKey(), submission.withStage(Submission.Stage.CREATE_AUR, 5678).getIdempotencyKey());
+    assertEquals(submission.getIdempotencyKey(), submission.withFailedAttempt(0).getIdempotencyKey());
+
+    assertNotEquals(submission.getIdempotencyKey(), Submission.createIdempotencyKey(1729, 43, 73));
+    assertNotEquals(submission.getIdempotencyKey(), Submission.createIdempotencyKey(1730, 42, 73));
+    assertNotEquals(Submission.createIdempotencyKey(null, 42, 73), Submission.createIdempotencyKey(null, 42, 74));
+  }
+
+  @Test
+  public void testWriteAndRead() {
+    final Submission submission = Submission.create(DEFAULT_CREDENTIALS, 90, Optional.empty(), Submission.Stage.CREATE_WORK_REPORT, 0)
+      .withFailedAttempt(12345);
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (JsonGenerator generator = Json.createGenerator(out)) {
+      submission.writeTo(generator);
+    }
+    final JsonObject json = Json.createReader(new StringReader(out.toString())).readObject();
+    final Submission restored = Submission.readFrom(json).orElseThrow(AssertionError::new);
+    assertEquals(submission.getIdempotencyKey(), restored.getIdempotencyKey());
+    assertEquals(90, restored.getMinutes());
+    assertEquals(submission.getDateStarted(), restored.getDateStarted());
+    assertEquals(Submission.Stage.CREATE_WORK_REPORT, restored.getStage());
+    assertEquals(1, restored.getFailedAttempts());
+    assertEquals(12345, restored.getNextAttemptMillis());
+
+    assertEquals(Optional.empty(), Submission.readFrom(Json.createObjectBuilder(json).remove("minutes").build()));
+    assertEquals(Optional.empty(), Submission.readFrom(Json.createObjectBuilder(json).remove("idempotency_key").build()));
+  }
+}
@@ -0,0 +1,166 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.api;
+
+import static app.rovas.josm.api.ApiQueryTest.DEFAULT_CREDENTIALS;
+import static com.github.tomakehurst.wiremock.client.WireMock.exactly;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.unauthorized;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.tomakehurst.wiremock.junit.Stubbing;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import app.rovas.josm.fixture.WiremockExtension;
+import app.rovas.josm.model.ApiCredentials;
+import app.rovas.josm.util.UrlProvider;
+
+@ExtendWith(WiremockExtension.class)
+public class UserDataCacheTest {
+  private static final String USER_DATA_PATH = "/rovas/rules/rules_fetch_user_data";
+
+  @TempDir
+  protected File tempDir;
+
+  @Test
+  public void testStaleWhileRevalidate(final Stubbing server, final UrlProvider urlProvider) throws InterruptedException {
+    stubUserData(server, "john.doe");
+    final AtomicLong clock = new AtomicLong(1_000_000);
+    final UserDataCache cache = new UserDataCache(new File(tempDir, "user-data.json"), urlProvider, 1000, clock::get);
+    final List<Optional<UserData>> notifications = new CopyOnWriteArrayList<>();
+    cache.addListener((credentials, userData) -> notifications.add(userData));
+
+    // nothing is cached yet, so it's fetched in the background
+    assertFalse(cache.get(DEFAULT_CREDENTIALS).isPresent());
+    await().atMost(5, TimeUnit.SECONDS).until(() -> cache.get(DEFAULT_CREDENTIALS).isPresent());
+    assertEquals("john.doe", cache.get(DEFAULT_CREDENTIALS).get().getUsername());
+    assertEquals(1, notifications.size());
+    server.verify(exactly(1), postRequestedFor(urlPathEqualTo(USER_DATA_PATH)));
+
+    // the stale user data is returned immediately, and then refreshed
+    stubUserData(server, "jane.doe");
+    clock.addAndGet(1000);
+    assertEquals("john.doe", cache.get(DEFAULT_CREDENTIALS).get().getUsername());
+    await().atMost(5, TimeUnit.SECONDS).until(() -> notifications.size() == 2);
+    assertEquals("jane.doe", notifications.get(1).get().getUsername());
+    assertEquals("jane.doe", cache.get(DEFAULT_CREDENTIALS).get().getUsername());
+    server.verify(exactly(2), postRequestedFor(urlPathEqualTo(USER_DATA_PATH)));
+    // the temporary directory can only be deleted once the file is written
+    cache.awaitWrites();
+  }
+
+  @Test
+  public void testSingleFlight(final Stubbing server, final UrlProvider urlProvider) throws InterruptedException {
+    server.stubFor(post(USER_DATA_PATH).willReturn(okJson(userDataJson("john.doe")).withFixedDelay(500)));
+    final UserDataCache cache = new UserDataCache(new File(tempDir, "user-data.json"), urlProvider, 1000, System::currentTimeMillis);
+
+    final CompletableFuture<UserData> first = cache.refresh(DEFAULT_CREDENTIALS);
+    assertSame(first, cache.refresh(DEFAULT_CREDENTIALS));
+    assertFalse(cache.get(DEFAULT_CREDENTIALS).isPresent());
+    assertEquals("john.doe", first.join().getUsername());
+    server.verify(exactly(1), postRequestedFor(urlPathEqualTo(USER_DATA_PATH)));
+
+    // after the refresh completed, the next one sends a new query
+    cache.refresh(DEFAULT_CREDENTIALS).join();
+    server.verify(exactly(2), postRequestedFor(urlPathEqualTo(USER_DATA_PATH)));
+    cache.awaitWrites();
+  }
+
+  @Test
+  public void testPersistence(final Stubbing server, final UrlProvider urlProvider) throws InterruptedException, IOException {
+    stubUserData(server, "john.doe");
+    final File file = new File(tempDir, "user-data.json");
+    final UserDataCache cache = new UserDataCache(file, urlProvider, TimeUnit.HOURS.toMillis(1), System::currentTimeMillis);
+    cache.refresh(DEFAULT_CREDENTIALS).join();
+    cache.awaitWrites();
+    // the credentials are not written to the file
+    final String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    assertTrue(content.contains("john.doe"), content);
+    assertFalse(content.contains(DEFAULT_CREDENTIALS.getApiKey()), content);
+    assertFalse(content.contains(DEFAULT_CREDENTIALS.getApiToken()), content);
+
+    final UserDataCache reopenedCache = new UserDataCache(file, urlProvider, TimeUnit.HOURS.toMillis(1), System::currentTimeMillis);
+    reopenedCache.awaitWrites();
+    final Optional<UserData> userData = reopenedCache.get(DEFAULT_CREDENTIALS);
+    assertTrue(userData.isPresent());
+    assertEquals(42, userData.get().getUid());
+    assertEquals("en", userData.get().getLangCode());
+    assertEquals(5, userData.get().getComplianceScore());
+    // the user data is fresh, so it was not fetched again
+    server.verify(exactly(1), postRequestedFor(urlPathEqualTo(USER_DATA_PATH)));
+  }
+
+  @Test
+  public void testMaxEntryAge(final Stubbing server, final UrlProvider urlProvider) throws InterruptedException, IOException {
+    stubUserData(server, "john.doe");
+    final File file = new File(tempDir, "user-data.json");
+    final AtomicLong clock = new AtomicLong(1_000_000);
+    final UserDataCache cache = new UserDataCache(file, urlProvider, TimeUnit.HOURS.toMillis(1), clock::get);
+    cache.refresh(DEFAULT_CREDENTIALS).join();
+    cache.awaitWrites();
+    clock.addAndGet(UserDataCache.MAX_ENTRY_AGE_MILLIS);
+
+    // old entries are not loaded from the file
+    final UserDataCache reopenedCache = new UserDataCache(file, urlProvider, TimeUnit.HOURS.toMillis(1), clock::get);
+    reopenedCache.awaitWrites();
+    assertFalse(reopenedCache.get(DEFAULT_CREDENTIALS).isPresent());
+    reopenedCache.refresh(DEFAULT_CREDENTIALS).join();
+    reopenedCache.awaitWrites();
+
+    // old entries are not written to the file
+    stubUserData(server, "jane.doe");
+    cache.refresh(new ApiCredentials("other key", "other token", DEFAULT_CREDENTIALS.getProjectId())).join();
+    cache.awaitWrites();
+    assertFalse(cache.get(DEFAULT_CREDENTIALS).isPresent());
+    final String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    assertTrue(content.contains("jane.doe"), content);
+    assertFalse(content.contains("john.doe"), content);
+    cache.refresh(DEFAULT_CREDENTIALS).join();
+    cache.awaitWrites();
+  }
+
+  @Test
+  public void testWrongCredentials(final Stubbing server, final UrlProvider urlProvider) throws InterruptedException {
+    stubUserData(server, "john.doe");
+    final UserDataCache cache = new UserDataCache(new File(tempDir, "user-data.json"), urlProvider, 0, System::currentTimeMillis);
+    cache.refresh(DEFAULT_CREDENTIALS).join();
+    final List<Optional<UserData>> notifications = new CopyOnWriteArrayList<>();
+    cache.addListener((credentials, userData) -> notifications.add(userData));
+
+    server.stubFor(post(USER_DATA_PATH).willReturn(unauthorized()));
+    final CompletionException exception = assertThrows(CompletionException.class, () -> cache.refresh(DEFAULT_CREDENTIALS).join());
+    assertTrue(exception.getCause() instanceof ApiException.WrongPluginApiCredentials);
+    assertEquals(1, notifications.size());
+    assertFalse(notifications.get(0).isPresent());
+    cache.awaitWrites();
+  }
+
+  private static void stubUserData(final Stubbing server, final String username) {
+    server.stubFor(post(USER_DATA_PATH).willReturn(okJson(userDataJson(username))));
+  }
+
+  private static String userDataJson(final String username) {
+    return "{\"country\":\"DE\",\"uid\":42,\"username\":\"" + username + "\",\"lang_code\":\"en\",\"email\":\"john@example.org\",\"comp_score\":\"5\",\"whole_name\":\"John Doe\"}";
+  }
+}
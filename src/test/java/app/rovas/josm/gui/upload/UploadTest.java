@@ -8,16 +8,26 @@ import static com.github.tomakehurst.wiremock.client.WireMock.matching;
 import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
 import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.util.Collections;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
+import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.client.MappingBuilder;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
 import com.github.tomakehurst.wiremock.client.WireMock;
 import com.github.tomakehurst.wiremock.junit.Stubbing;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import app.rovas.josm.fixture.ConnectionCountingProxy;
 import app.rovas.josm.fixture.WiremockExtension;
 import app.rovas.josm.model.RovasProperties;
 import app.rovas.josm.model.TimeTrackingManager;
@@ -39,8 +49,119 @@ public class UploadTest {
     server.stubFor(post("/rovas/rules/rules_proxy_create_work_report").willReturn(okJson("{\"created_wr_nid\": 5678}")));
     server.stubFor(post("/rovas/rules/rules_proxy_create_aur").willReturn(okJson("{\"result\": 91011}")));
 
-    new UploadStep1AddShareholder(12, Optional.empty()).showStep(Optional.empty(), urlProvider, timeTrackingManager);
+    new UploadStep1AddShareholder(12, Optional.empty()).showStep(Optional.empty(), urlProvider, timeTrackingManager).join();
 
+    verifyUploadRequests(server);
+  }
+
+  @Test
+  @DisplayName("Test that all upload steps are sent over the same connection")
+  protected void testConnectionReuse(final Stubbing server) throws IOException {
+    final TimeTrackingManager timeTrackingManager = new TimeTrackingManager();
+
+    RovasProperties.ROVAS_API_KEY.put("abc");
+    RovasProperties.ROVAS_API_TOKEN.put("def");
+    RovasProperties.ACTIVE_PROJECT_ID.put(1729);
+
+    // The responses arrive slowly, and there is whitespace after the JSON object that the JSON reader doesn't need.
+    // The connection can only be reused, if the rest of the response is consumed anyway.
+    server.stubFor(post("/rovas/rules/rules_proxy_check_or_add_shareholder").willReturn(slowOkJson("{\"result\": 1234}")));
+    server.stubFor(post("/rovas/rules/rules_proxy_create_work_report").willReturn(slowOkJson("{\"created_wr_nid\": 5678}")));
+    server.stubFor(post("/rovas/rules/rules_proxy_create_aur").willReturn(slowOkJson("{\"result\": 91011}")));
+
+    try (ConnectionCountingProxy proxy = new ConnectionCountingProxy(((WireMockServer) server).port())) {
+      final UrlProvider proxyUrlProvider = new UrlProvider() {
+        @Override
+        protected String getBaseUrl() {
+          return "http://localhost:" + proxy.getPort();
+        }
+      };
+      new UploadStep1AddShareholder(12, Optional.empty()).showStep(Optional.empty(), proxyUrlProvider, timeTrackingManager).join();
+
+      verifyUploadRequests(server);
+      assertEquals(1, proxy.getNumConnections());
+    }
+  }
+
+  @Test
+  @DisplayName("Test that the first upload step uses the result of the speculative shareholder check")
+  protected void testSpeculativeShareholderCheck(final Stubbing server, final UrlProvider urlProvider) {
+    final TimeTrackingManager timeTrackingManager = new TimeTrackingManager();
+
+    RovasProperties.ROVAS_API_KEY.put("abc");
+    RovasProperties.ROVAS_API_TOKEN.put("def");
+    RovasProperties.ACTIVE_PROJECT_ID.put(1729);
+
+    server.stubFor(post("/rovas/rules/rules_proxy_check_or_add_shareholder").willReturn(okJson("{\"result\": 1234}")));
+    server.stubFor(post("/rovas/rules/rules_proxy_create_work_report").willReturn(okJson("{\"created_wr_nid\": 5678}")));
+    server.stubFor(post("/rovas/rules/rules_proxy_create_aur").willReturn(okJson("{\"result\": 91011}")));
+
+    final Optional<SpeculativeShareholderCheck> check = SpeculativeShareholderCheck.start(urlProvider);
+    assertTrue(check.isPresent());
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() ->
+      server.verify(exactly(1), postRequestedFor(urlPathEqualTo("/rovas/rules/rules_proxy_check_or_add_shareholder")))
+    );
+
+    new UploadStep1AddShareholder(12, Optional.empty(), check).showStep(Optional.empty(), urlProvider, timeTrackingManager).join();
+
+    // the shareholder check was not sent a second time
+    verifyUploadRequests(server);
+  }
+
+  @Test
+  @DisplayName("Test that the speculative shareholder check is not used, when the credentials changed in the meantime")
+  protected void testSpeculativeShareholderCheckWithChangedCredentials(final Stubbing server, final UrlProvider urlProvider) {
+    final TimeTrackingManager timeTrackingManager = new TimeTrackingManager();
+
+    RovasProperties.ROVAS_API_KEY.put("abc");
+    RovasProperties.ROVAS_API_TOKEN.put("def");
+    RovasProperties.ACTIVE_PROJECT_ID.put(42);
+
+    server.stubFor(WireMock.post("/rovas/rules/rules_proxy_check_or_add_shareholder").willReturn(okJson("{\"result\": 1234}")));
+    server.stubFor(post("/rovas/rules/rules_proxy_create_work_report").willReturn(okJson("{\"created_wr_nid\": 5678}")));
+    server.stubFor(post("/rovas/rules/rules_proxy_create_aur").willReturn(okJson("{\"result\": 91011}")));
+
+    final Optional<SpeculativeShareholderCheck> check = SpeculativeShareholderCheck.start(urlProvider);
+    assertTrue(check.isPresent());
+    RovasProperties.ACTIVE_PROJECT_ID.put(1729);
+
+    new UploadStep1AddShareholder(12, Optional.empty(), check).showStep(Optional.empty(), urlProvider, timeTrackingManager).join();
+
+    // the speculative check is not awaited by the upload step, so it might still be in progress
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() ->
+      server.verify(
+        exactly(1),
+        postRequestedFor(urlPathEqualTo("/rovas/rules/rules_proxy_check_or_add_shareholder"))
+          .withRequestBody(equalToJson("{\"project_id\": 42}"))
+      )
+    );
+    verifyUploadRequests(server);
+  }
+
+  @Test
+  @DisplayName("Test that the shareholder check is skipped while the shareholder status is cached")
+  protected void testCachedShareholderStatus(final Stubbing server, final UrlProvider urlProvider) {
+    final TimeTrackingManager timeTrackingManager = new TimeTrackingManager();
+
+    RovasProperties.ROVAS_API_KEY.put("abc");
+    RovasProperties.ROVAS_API_TOKEN.put("def");
+    RovasProperties.ACTIVE_PROJECT_ID.put(1729);
+
+    server.stubFor(post("/rovas/rules/rules_proxy_check_or_add_shareholder").willReturn(okJson("{\"result\": 1234}")));
+    server.stubFor(post("/rovas/rules/rules_proxy_create_work_report").willReturn(okJson("{\"created_wr_nid\": 5678}")));
+    server.stubFor(post("/rovas/rules/rules_proxy_create_aur").willReturn(okJson("{\"result\": 91011}")));
+
+    new UploadStep1AddShareholder(12, Optional.empty()).showStep(Optional.empty(), urlProvider, timeTrackingManager).join();
+    verifyUploadRequests(server);
+    assertFalse(SpeculativeShareholderCheck.start(urlProvider).isPresent());
+
+    // the second upload does not check the shareholder status again
+    new UploadStep1AddShareholder(12, Optional.empty()).showStep(Optional.empty(), urlProvider, timeTrackingManager).join();
+    server.verify(exactly(1), postRequestedFor(urlPathEqualTo("/rovas/rules/rules_proxy_check_or_add_shareholder")));
+    server.verify(exactly(2), postRequestedFor(urlPathEqualTo("/rovas/rules/rules_proxy_create_work_report")));
+  }
+
+  private static void verifyUploadRequests(final Stubbing server) {
     server.verify(
       exactly(1),
       postRequestedFor(urlPathEqualTo("/rovas/rules/rules_proxy_check_or_add_shareholder"))
@@ -69,7 +190,11 @@ public class UploadTest {
     );
   }
 
-  private MappingBuilder post(final String path) {
+  private static ResponseDefinitionBuilder slowOkJson(final String json) {
+    return okJson(json + String.join("", Collections.nCopies(1000, " "))).withChunkedDribbleDelay(4, 400);
+  }
+
+  private static MappingBuilder post(final String path) {
     return WireMock.post(path)
       .withHeader("API-KEY", equalTo("abc"))
       .withHeader("TOKEN", equalTo("def"))
@@ -0,0 +1,64 @@
+package app.rovas.josm.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+public class ChangeCoalescerTest {
+
+  @Test
+  protected void testChangesInSameSecondAreCollapsed() {
+    final TimeTrackingManager timeTrackingManager = new TimeTrackingManager();
+    final AtomicInteger numUpdates = new AtomicInteger();
+    timeTrackingManager.addAndFireTimeTrackingUpdateListener(__ -> numUpdates.incrementAndGet(), TimeTrackingManager.NotificationResolution.SECONDS);
+    numUpdates.set(0);
+
+    final AtomicLong clock = new AtomicLong(100);
+    final ChangeCoalescer coalescer = new ChangeCoalescer(timeTrackingManager, clock::get);
+
+    for (int i = 0; i < 100_000; i++) {
+      coalescer.trackChangeNow();
+    }
+    assertEquals(1, numUpdates.get());
+
+    clock.set(110);
+    for (int i = 0; i < 100_000; i++) {
+      coalescer.trackChangeNow();
+    }
+    assertEquals(2, numUpdates.get());
+
+    clock.set(115);
+    coalescer.trackChangeNow();
+    assertEquals(3, numUpdates.get());
+
+    assertEquals(25, timeTrackingManager.commit(Instant.ofEpochSecond(125)));
+  }
+
+  @Test
+  protected void testChangeInSameSecondAfterCommitOrReset() {
+    final TimeTrackingManager timeTrackingManager = new TimeTrackingManager();
+    final AtomicLong clock = new AtomicLong(100);
+    final ChangeCoalescer coalescer = new ChangeCoalescer(timeTrackingManager, clock::get);
+
+    coalescer.trackChangeNow();
+    clock.set(120);
+    coalescer.trackChangeNow();
+    assertEquals(20, timeTrackingManager.commit(Instant.ofEpochSecond(120)));
+
+    // the change after the commit is tracked, even though it is in the same second as the last change
+    coalescer.trackChangeNow();
+    clock.set(130);
+    coalescer.trackChangeNow();
+    assertEquals(30, timeTrackingManager.commit(Instant.ofEpochSecond(130)));
+
+    timeTrackingManager.setCurrentlyTrackedSeconds(0);
+    coalescer.trackChangeNow();
+    clock.set(140);
+    coalescer.trackChangeNow();
+    assertEquals(10, timeTrackingManager.commit(Instant.ofEpochSecond(140)));
+  }
+}
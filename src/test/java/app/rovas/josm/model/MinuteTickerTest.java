@@ -0,0 +1,107 @@
+package app.rovas.josm.model;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MinuteTickerTest {
+
+  @BeforeEach
+  protected void beforeEach() {
+    RovasProperties.WRITER.flush(); // make sure no write of a previous test is still pending
+    RovasProperties.ALREADY_TRACKED_TIME.put(0L);
+    RovasProperties.INACTIVITY_TOLERANCE.put(60);
+  }
+
+  @Test
+  protected void testTickAtMinuteRollover() {
+    // a clock that runs in real time, but starts 200 ms before the end of second 1000
+    final long offsetMillis = System.currentTimeMillis() - 1_000_800;
+    final LongSupplier clock = () -> System.currentTimeMillis() - offsetMillis;
+    final TimeTrackingManager manager = new TimeTrackingManager(Optional.empty(), TimeTrackingManager.ListenerDispatch.SYNCHRONOUS, clock);
+    manager.setCurrentlyTrackedSeconds(29);
+
+    final List<Long> updates = new CopyOnWriteArrayList<>();
+    final AtomicLong lastUpdateMillis = new AtomicLong();
+    manager.addAndFireTimeTrackingUpdateListener(n -> {
+      lastUpdateMillis.set(clock.getAsLong());
+      updates.add(n);
+    });
+    assertEquals(MinuteTicker.NONE, manager.getScheduledMinuteTick());
+
+    // 29 seconds are displayed as 0 minutes, the minutes roll over one second after the change
+    manager.trackChangeNow();
+    final long scheduledTick = manager.getScheduledMinuteTick();
+    assertNotEquals(MinuteTicker.NONE, scheduledTick);
+    assertEquals(Arrays.asList(29L), updates);
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> updates.size() >= 2);
+    assertEquals(Arrays.asList(29L, 30L), updates);
+    assertTrue(
+      lastUpdateMillis.get() >= scheduledTick * 1000,
+      () -> "The tick came " + (scheduledTick * 1000 - lastUpdateMillis.get()) + " ms before the rollover"
+    );
+    // the next rollover (at 90 seconds) would only happen after the inactivity tolerance expired
+    assertEquals(MinuteTicker.NONE, manager.getScheduledMinuteTick());
+  }
+
+  @Test
+  protected void testTickIsDispatchedAsynchronously() {
+    final AtomicLong clock = new AtomicLong(1_000_000);
+    final TimeTrackingManager manager = new TimeTrackingManager(Optional.empty(), TimeTrackingManager.ListenerDispatch.ASYNCHRONOUS, clock::get);
+    manager.setCurrentlyTrackedSeconds(29);
+    final List<String> updates = new CopyOnWriteArrayList<>();
+    manager.addAndFireTimeTrackingUpdateListener(n -> updates.add(n + " " + Thread.currentThread().getName()));
+    manager.trackChangeNow();
+    await().atMost(5, TimeUnit.SECONDS).until(() -> manager.getScheduledMinuteTick() == 1001);
+
+    // the tick happens on the thread of the ticker, but the listeners are notified on the thread of the dispatcher
+    clock.set(1_001_000);
+    await().atMost(5, TimeUnit.SECONDS).until(() -> updates.size() >= 2);
+    assertEquals(2, updates.size());
+    assertTrue(updates.get(1).startsWith("30 rovas-time-tracking-listeners-"), updates.get(1));
+    // the live seconds that the tick delivered are the same as those of a commit at that time
+    assertEquals(30, manager.commit());
+  }
+
+  @Test
+  protected void testIdleWhileNothingIsTracked() {
+    final AtomicLong clock = new AtomicLong(1_000_000);
+    final TimeTrackingManager manager = new TimeTrackingManager(Optional.empty(), TimeTrackingManager.ListenerDispatch.SYNCHRONOUS, clock::get);
+    final List<Long> updates = new CopyOnWriteArrayList<>();
+    manager.addAndFireTimeTrackingUpdateListener(updates::add);
+    assertEquals(MinuteTicker.NONE, manager.getScheduledMinuteTick());
+
+    manager.handlePreviouslyTrackedSeconds(true);
+    manager.setCurrentlyTrackedSeconds(100);
+    assertEquals(MinuteTicker.NONE, manager.getScheduledMinuteTick());
+
+    manager.trackChangeNow();
+    assertEquals(1050, manager.getScheduledMinuteTick());
+
+    // after the commit nothing is tracked anymore, so the wakeup is cancelled
+    clock.set(1_010_000);
+    assertEquals(110, manager.commit());
+    assertEquals(MinuteTicker.NONE, manager.getScheduledMinuteTick());
+
+    manager.trackChangeAt(Instant.ofEpochSecond(1010));
+    assertEquals(1050, manager.getScheduledMinuteTick());
+    manager.setCurrentlyTrackedSeconds(0);
+    assertEquals(MinuteTicker.NONE, manager.getScheduledMinuteTick());
+
+    assertEquals(Arrays.asList(0L, 100L, 0L), updates);
+  }
+}
@@ -22,6 +22,7 @@ public class RovasPreferenceTest {
     assertEquals(RovasProperties.ACTIVE_PROJECT_ID.getDefaultValue(), RovasProperties.ACTIVE_PROJECT_ID.get());
 
     pref.ok();
+    RovasProperties.WRITER.flush(); // the values are persisted in the background
 
     assertEquals(42, RovasProperties.INACTIVITY_TOLERANCE.get());
     assertEquals("key", RovasProperties.ROVAS_API_KEY.get());
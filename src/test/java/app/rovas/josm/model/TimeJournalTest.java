@@ -0,0 +1,151 @@
+package app.rovas.josm.model;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TimeJournalTest {
+
+  @TempDir
+  protected File tempDir;
+
+  @BeforeEach
+  protected void beforeEach() {
+    RovasProperties.WRITER.flush(); // make sure no write of a previous test is still pending
+    RovasProperties.ALREADY_TRACKED_TIME.put(0L);
+  }
+
+  @Test
+  public void testRecoverAfterCrash() {
+    final File file = new File(new File(tempDir, "rovas"), "time-journal.bin");
+    final TimeJournal journal = TimeJournal.open(file).orElseThrow(AssertionError::new);
+    assertEquals(0, journal.getRecoveredSeconds());
+
+    final TimeTrackingManager manager = new TimeTrackingManager(Optional.of(journal), TimeTrackingManager.ListenerDispatch.SYNCHRONOUS);
+    for (long timestamp = 100; timestamp <= 200; timestamp += 20) {
+      manager.trackChangeAt(timestamp);
+    }
+    awaitRecoveredSeconds(file, 100);
+    assertEquals(110, manager.commit(Instant.ofEpochSecond(210)));
+    awaitRecoveredSeconds(file, 110);
+
+    // a new session recovers the time from the journal, without the property being set
+    final TimeTrackingManager recoveredManager = new TimeTrackingManager(TimeJournal.open(file), TimeTrackingManager.ListenerDispatch.SYNCHRONOUS);
+    assertEquals(110, recoveredManager.getPreviouslyTrackedSeconds());
+    recoveredManager.trackChangeAt(1000L);
+    recoveredManager.trackChangeAt(1010L);
+    // the time of the previous session is still not added or discarded, so it's kept in the journal
+    awaitRecoveredSeconds(file, 120);
+    recoveredManager.handlePreviouslyTrackedSeconds(true);
+    awaitRecoveredSeconds(file, 120);
+
+    // after the time is reported, the journal is compacted
+    recoveredManager.setCurrentlyTrackedSeconds(0);
+    awaitRecoveredSeconds(file, 0);
+    assertEquals(1, TimeJournal.open(file).orElseThrow(AssertionError::new).getRecordCount());
+  }
+
+  @Test
+  public void testDiscardPreviousTime() {
+    final File file = new File(tempDir, "time-journal.bin");
+    TimeJournal.open(file).orElseThrow(AssertionError::new).append(3600, TimeJournal.NO_TIMESTAMP, TimeJournal.NO_TIMESTAMP, 0);
+
+    final TimeTrackingManager manager = new TimeTrackingManager(TimeJournal.open(file), TimeTrackingManager.ListenerDispatch.SYNCHRONOUS);
+    assertEquals(3600, manager.getPreviouslyTrackedSeconds());
+    manager.handlePreviouslyTrackedSeconds(false);
+    awaitRecoveredSeconds(file, 0);
+  }
+
+  @Test
+  public void testCompactWhenFull() {
+    final File file = new File(tempDir, "time-journal.bin");
+    final TimeJournal journal = TimeJournal.open(file).orElseThrow(AssertionError::new);
+    for (int i = 1; i <= TimeJournal.MAX_RECORDS; i++) {
+      journal.append(i, TimeJournal.NO_TIMESTAMP, TimeJournal.NO_TIMESTAMP, 0);
+    }
+    assertEquals(TimeJournal.MAX_RECORDS, journal.getRecordCount());
+    assertEquals(TimeJournal.MAX_RECORDS, TimeJournal.open(file).orElseThrow(AssertionError::new).getRecoveredSeconds());
+
+    journal.append(42, 100, 110, 8);
+    assertEquals(1, journal.getRecordCount());
+    assertEquals(60, TimeJournal.open(file).orElseThrow(AssertionError::new).getRecoveredSeconds());
+  }
+
+  @Test
+  public void testCompactionKeepsLastRecord() {
+    final File file = new File(tempDir, "time-journal.bin");
+    final TimeJournal journal = TimeJournal.open(file).orElseThrow(AssertionError::new);
+    journal.append(42, TimeJournal.NO_TIMESTAMP, TimeJournal.NO_TIMESTAMP, 0);
+    assertEquals(1, journal.getRecordCount());
+
+    // the first record is the last one, so it is not overwritten by the compaction
+    journal.append(0, TimeJournal.NO_TIMESTAMP, TimeJournal.NO_TIMESTAMP, 0);
+    assertEquals(2, journal.getRecordCount());
+    assertEquals(0, TimeJournal.open(file).orElseThrow(AssertionError::new).getRecoveredSeconds());
+
+    journal.append(0, TimeJournal.NO_TIMESTAMP, TimeJournal.NO_TIMESTAMP, 0);
+    assertEquals(1, journal.getRecordCount());
+    assertEquals(0, TimeJournal.open(file).orElseThrow(AssertionError::new).getRecoveredSeconds());
+  }
+
+  @Test
+  public void testNewerSourceOfPreviousTimeWins() {
+    final File file = new File(tempDir, "time-journal.bin");
+    TimeJournal.open(file).orElseThrow(AssertionError::new).append(600, TimeJournal.NO_TIMESTAMP, TimeJournal.NO_TIMESTAMP, 0);
+    final long journalTimestamp = TimeJournal.open(file).orElseThrow(AssertionError::new).getRecoveredTimestamp();
+
+    // the property was set by an older version of the plugin, or before the journal was written
+    RovasProperties.ALREADY_TRACKED_TIME.put(1200L);
+    RovasProperties.ALREADY_TRACKED_TIME_SAVED_AT.put(journalTimestamp - 1);
+    assertEquals(600, new TimeTrackingManager(TimeJournal.open(file), TimeTrackingManager.ListenerDispatch.SYNCHRONOUS).getPreviouslyTrackedSeconds());
+
+    // the property was set after the journal was written for the last time
+    RovasProperties.ALREADY_TRACKED_TIME_SAVED_AT.put(journalTimestamp + 1);
+    assertEquals(1200, new TimeTrackingManager(TimeJournal.open(file), TimeTrackingManager.ListenerDispatch.SYNCHRONOUS).getPreviouslyTrackedSeconds());
+
+    // without a record in the journal, the property is used
+    final File emptyFile = new File(tempDir, "empty-time-journal.bin");
+    RovasProperties.ALREADY_TRACKED_TIME_SAVED_AT.put(0L);
+    assertEquals(1200, new TimeTrackingManager(TimeJournal.open(emptyFile), TimeTrackingManager.ListenerDispatch.SYNCHRONOUS).getPreviouslyTrackedSeconds());
+  }
+
+  @Test
+  public void testClose() {
+    final File file = new File(tempDir, "time-journal.bin");
+    final TimeJournal journal = TimeJournal.open(file).orElseThrow(AssertionError::new);
+    final TimeTrackingManager manager = new TimeTrackingManager(Optional.of(journal), TimeTrackingManager.ListenerDispatch.SYNCHRONOUS);
+    manager.trackChangeAt(100L);
+    manager.trackChangeAt(130L);
+
+    // closing writes the latest state before it returns
+    manager.closeJournal();
+    assertEquals(30, TimeJournal.open(file).orElseThrow(AssertionError::new).getRecoveredSeconds());
+
+    // afterwards the changes are no longer journaled
+    final int recordCount = journal.getRecordCount();
+    manager.trackChangeAt(140L);
+    assertEquals(40, manager.commit(Instant.ofEpochSecond(140)));
+    assertEquals(recordCount, journal.getRecordCount());
+    assertEquals(30, TimeJournal.open(file).orElseThrow(AssertionError::new).getRecoveredSeconds());
+  }
+
+  @Test
+  public void testInvalidFile() {
+    assertFalse(TimeJournal.open(tempDir).isPresent());
+  }
+
+  private static void awaitRecoveredSeconds(final File file, final long expectedSeconds) {
+    await().atMost(5, TimeUnit.SECONDS).until(() ->
+      TimeJournal.open(file).orElseThrow(AssertionError::new).getRecoveredSeconds() == expectedSeconds
+    );
+  }
+}
@@ -1,18 +1,31 @@
 package app.rovas.josm.model;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.lang.management.ManagementFactory;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -23,6 +36,13 @@ import app.rovas.josm.gui.TimeTrackingUpdateListener;
 
 public class TimeTrackingManagerTest {
 
+  private static final int NUM_MEASURED_CHANGES = 1_000_000;
+  private static final int NUM_MEASURED_ROUNDS = 3;
+  /**
+   * The size of one immutable snapshot of the tracked time (object header and three {@code long} fields)
+   */
+  private static final long MAX_SNAPSHOT_BYTES = 40;
+
   private TimeTrackingManager timeTrackingManager;
 
   @BeforeAll
@@ -32,14 +52,16 @@ public class TimeTrackingManagerTest {
 
   @BeforeEach
   protected void beforeEach() {
+    RovasProperties.WRITER.flush(); // make sure no write of a previous test is still pending
     RovasProperties.ALREADY_TRACKED_TIME.put(42L);
     timeTrackingManager = new TimeTrackingManager();
   }
 
   @Test
   public void testNormalTimeSeries() {
+    // the second change at 123 doesn't change the state, so the listeners are not notified about it
     assertChangeEventSeries(
-      new long[] { 0,   0,   0,   2,   6, 36 },
+      new long[] { 0,   0,   2,   6, 36 },
       new long[] {    123, 123, 125, 129 },
       1000
     );
@@ -64,8 +86,9 @@ public class TimeTrackingManagerTest {
   @Test
   public void testTimeSeriesWithBackwardsComponent() {
     Logging.clearLastErrorAndWarnings();
+    // the changes at 106 and 110 don't change the state, so the listeners are not notified about them
     assertChangeEventSeries(
-      new long[] { 0,   0,   5,  12,  12,  12,  30, 60 },
+      new long[] { 0,   0,   5,  12,  30, 60 },
       new long[] {    100, 105, 112, 106, 110, 130 },
       1000
     );
@@ -93,7 +116,7 @@ public class TimeTrackingManagerTest {
   @Test
   protected void testAddPreviousTime() throws ReflectiveOperationException {
     final MockTimeListener listener = new MockTimeListener();
-    timeTrackingManager.addAndFireTimeTrackingUpdateListener(listener);
+    timeTrackingManager.addAndFireTimeTrackingUpdateListener(listener, TimeTrackingManager.NotificationResolution.SECONDS);
 
     Stream.of(50, 73, 101).map(Instant::ofEpochSecond).forEach(timeTrackingManager::trackChangeAt);
     timeTrackingManager.handlePreviouslyTrackedSeconds(true);
@@ -105,6 +128,166 @@ public class TimeTrackingManagerTest {
     timeTrackingManager.removeTimeTrackingUpdateListener(listener);
   }
 
+  @Test
+  protected void testMinuteResolution() {
+    // the minute listeners receive the seconds that would be committed at the current time, so the clock follows the changes
+    final AtomicLong clockMillis = new AtomicLong(1000_000);
+    final TimeTrackingManager manager = new TimeTrackingManager(Optional.empty(), TimeTrackingManager.ListenerDispatch.SYNCHRONOUS, clockMillis::get);
+    final MockTimeListener listener = new MockTimeListener();
+    manager.addAndFireTimeTrackingUpdateListener(listener);
+
+    for (long second = 1000; second <= 1200; second += 5) {
+      clockMillis.set(second * 1000);
+      manager.trackChangeAt(second);
+    }
+    clockMillis.set(1300_000);
+    manager.commit(Instant.ofEpochSecond(1300));
+
+    assertArrayEquals(new long[]{ 0, 30, 90, 150, 230 }, listener.getReceivedUpdates());
+
+    // a listener that is added later only receives the current minutes, the first listener is not notified again
+    final MockTimeListener secondListener = new MockTimeListener();
+    manager.addAndFireTimeTrackingUpdateListener(secondListener);
+    assertArrayEquals(new long[]{ 230 }, secondListener.getReceivedUpdates());
+    assertArrayEquals(new long[]{ 0, 30, 90, 150, 230 }, listener.getReceivedUpdates());
+
+    manager.removeTimeTrackingUpdateListener(secondListener);
+
+    manager.removeTimeTrackingUpdateListener(listener);
+  }
+
+  @Test
+  protected void testAddCommittedSeconds() {
+    final MockTimeListener listener = new MockTimeListener();
+    timeTrackingManager.addAndFireTimeTrackingUpdateListener(listener, TimeTrackingManager.NotificationResolution.SECONDS);
+    timeTrackingManager.trackChangeAt(1000L);
+    timeTrackingManager.trackChangeAt(1010L);
+
+    // the uncommitted timespan is not affected
+    timeTrackingManager.addCommittedSeconds(120);
+    timeTrackingManager.trackChangeAt(1020L);
+    assertEquals(140, timeTrackingManager.commit(Instant.ofEpochSecond(1020)));
+    assertArrayEquals(new long[]{ 0, 0, 10, 130, 140, 140 }, listener.getReceivedUpdates());
+
+    timeTrackingManager.removeTimeTrackingUpdateListener(listener);
+  }
+
+  @Test
+  protected void testNextMinuteRollover() {
+    RovasProperties.INACTIVITY_TOLERANCE.put(30);
+    assertEquals(MinuteTicker.NONE, timeTrackingManager.getNextMinuteRollover(1000));
+
+    timeTrackingManager.trackChangeAt(1000L);
+    assertEquals(1030, timeTrackingManager.getNextMinuteRollover(1000));
+    assertEquals(1030, timeTrackingManager.getNextMinuteRollover(1010));
+    timeTrackingManager.trackChangeAt(1020L);
+    assertEquals(1030, timeTrackingManager.getNextMinuteRollover(1020));
+    // the next rollover would be after the tolerance expired
+    assertEquals(MinuteTicker.NONE, timeTrackingManager.getNextMinuteRollover(1031));
+    assertEquals(MinuteTicker.NONE, timeTrackingManager.getNextMinuteRollover(1050));
+
+    timeTrackingManager.commit(Instant.ofEpochSecond(1060));
+    assertEquals(MinuteTicker.NONE, timeTrackingManager.getNextMinuteRollover(1060));
+
+    timeTrackingManager.setCurrentlyTrackedSeconds(100);
+    timeTrackingManager.trackChangeAt(2000L);
+    assertEquals(MinuteTicker.NONE, timeTrackingManager.getNextMinuteRollover(2000));
+    timeTrackingManager.trackChangeAt(2025L);
+    assertEquals(2050, timeTrackingManager.getNextMinuteRollover(2025));
+  }
+
+  @Test
+  protected void testConcurrentTracking() throws InterruptedException {
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    for (int thread = 0; thread < 4; thread++) {
+      executor.execute(() -> {
+        for (long second = 0; second < 1000; second++) {
+          timeTrackingManager.trackChangeAt(Instant.ofEpochSecond(second));
+        }
+      });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+    Logging.clearLastErrorAndWarnings();
+
+    assertEquals(999, timeTrackingManager.commit(Instant.ofEpochSecond(999)));
+  }
+
+  @Test
+  protected void testTrackingWithinCoveredSecondAllocatesNothing() {
+    final long allocatedBytes = measureAllocatedBytes(NUM_MEASURED_CHANGES, i -> timeTrackingManager.trackChangeAt(1000L));
+
+    assertEquals(0, allocatedBytes, () -> allocatedBytes + " bytes allocated for " + NUM_MEASURED_CHANGES + " tracked changes");
+  }
+
+  @Test
+  protected void testTrackingNewSecondOnlyAllocatesSnapshot() {
+    // every change extends the uncommitted timespan by one second
+    final long allocatedBytes = measureAllocatedBytes(NUM_MEASURED_CHANGES, i -> timeTrackingManager.trackChangeAt(1000L + i));
+
+    assertTrue(
+      allocatedBytes <= NUM_MEASURED_CHANGES * MAX_SNAPSHOT_BYTES,
+      () -> allocatedBytes + " bytes allocated for " + NUM_MEASURED_CHANGES + " tracked changes in new seconds"
+    );
+  }
+
+  @Test
+  protected void testCoalescedTrackingOnlyAllocatesSnapshotPerSecond() {
+    final int changesPerSecond = 100;
+    final AtomicLong clock = new AtomicLong();
+    final ChangeCoalescer coalescer = new ChangeCoalescer(timeTrackingManager, clock::get);
+    final long allocatedBytes = measureAllocatedBytes(NUM_MEASURED_CHANGES, i -> {
+      clock.set(1000L + i / changesPerSecond);
+      coalescer.trackChangeNow();
+    });
+
+    // one snapshot for the first change in each second, nothing at all for the other changes
+    final long numSeconds = NUM_MEASURED_CHANGES / changesPerSecond;
+    assertTrue(
+      allocatedBytes <= numSeconds * MAX_SNAPSHOT_BYTES,
+      () -> allocatedBytes + " bytes allocated for " + NUM_MEASURED_CHANGES + " tracked changes in " + numSeconds + " seconds"
+    );
+  }
+
+  /**
+   * Runs the given change the given number of times to warm up, then measures how many bytes the current thread
+   * allocates while running it the same number of times again (with the indices following the warmup).
+   * This is measured in a few rounds, because a recompilation by the JIT compiler can occasionally allocate a few
+   * bytes during one round. A no-op listener with {@link TimeTrackingManager.NotificationResolution#SECONDS} is registered meanwhile.
+   * @param numChanges the number of changes that are measured
+   * @param change tracks the change with the given index
+   * @return the number of allocated bytes in the round with the fewest allocations
+   */
+  private long measureAllocatedBytes(final int numChanges, final LongConsumer change) {
+    Assumptions.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    Assumptions.assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+    final long threadId = Thread.currentThread().getId();
+    final TimeTrackingUpdateListener noOpListener = n -> { };
+    timeTrackingManager.addAndFireTimeTrackingUpdateListener(noOpListener, TimeTrackingManager.NotificationResolution.SECONDS);
+    Logging.setLogLevel(Level.INFO);
+    try {
+      // warm up, so the JIT compiler has a chance to optimize the hot path
+      for (long i = 0; i < numChanges; i++) {
+        change.accept(i);
+      }
+
+      long minAllocatedBytes = Long.MAX_VALUE;
+      for (int round = 1; round <= NUM_MEASURED_ROUNDS; round++) {
+        final long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        for (long i = (long) round * numChanges; i < (round + 1L) * numChanges; i++) {
+          change.accept(i);
+        }
+        minAllocatedBytes = Math.min(minAllocatedBytes, threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore);
+      }
+      return minAllocatedBytes;
+    } finally {
+      Logging.setLogLevel(Level.FINEST);
+      timeTrackingManager.removeTimeTrackingUpdateListener(noOpListener);
+    }
+  }
+
   /**
    * @param expectedUpdates the expected values that are reported by the {@link TimeTrackingManager} to the {@link TimeTrackingUpdateListener}
    * @param changeEventTimestamps the unix timestamps at which {@link TimeTrackingManager#trackChangeAt(Instant)} is called
@@ -115,7 +298,7 @@ public class TimeTrackingManagerTest {
     final long commitTimestamp
   ) {
     final MockTimeListener listener = new MockTimeListener();
-    timeTrackingManager.addAndFireTimeTrackingUpdateListener(listener);
+    timeTrackingManager.addAndFireTimeTrackingUpdateListener(listener, TimeTrackingManager.NotificationResolution.SECONDS);
 
     Arrays.stream(changeEventTimestamps)
       .mapToObj(Instant::ofEpochSecond)
@@ -132,6 +315,46 @@ public class TimeTrackingManagerTest {
     timeTrackingManager.removeTimeTrackingUpdateListener(listener);
   }
 
+  @Test
+  protected void testAsynchronousListenerDispatch() throws InterruptedException {
+    final TimeTrackingManager asyncManager = new TimeTrackingManager(Optional.empty(), TimeTrackingManager.ListenerDispatch.ASYNCHRONOUS);
+    final CountDownLatch unblockListener = new CountDownLatch(1);
+    final List<Long> receivedUpdates = new CopyOnWriteArrayList<>();
+    final Thread testThread = Thread.currentThread();
+    asyncManager.addAndFireTimeTrackingUpdateListener(n -> {
+      receivedUpdates.add(n);
+      try {
+        // a listener that blocks until the tracking is done (except for the initial notification)
+        if (Thread.currentThread() != testThread) {
+          unblockListener.await();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, TimeTrackingManager.NotificationResolution.SECONDS);
+    // the initial notification happens immediately on the calling thread
+    assertEquals(Collections.singletonList(0L), receivedUpdates);
+    receivedUpdates.clear();
+
+    // tracking must not wait for the blocked listener
+    final Thread trackingThread = new Thread(() -> {
+      for (long second = 100; second <= 200; second++) {
+        asyncManager.trackChangeAt(second);
+      }
+    });
+    trackingThread.start();
+    trackingThread.join(5000);
+    assertFalse(trackingThread.isAlive());
+
+    unblockListener.countDown();
+    await().atMost(5, TimeUnit.SECONDS).until(() -> !receivedUpdates.isEmpty() && receivedUpdates.get(receivedUpdates.size() - 1) == 100L);
+    // intermediate values are coalesced, the values never go backwards
+    assertTrue(receivedUpdates.size() < 100);
+    for (int i = 1; i < receivedUpdates.size(); i++) {
+      assertTrue(receivedUpdates.get(i - 1) <= receivedUpdates.get(i));
+    }
+  }
+
   private void assertBackwardsClockWarningWasFired(final int n) {
     final List<String> warnings = Logging.getLastErrorAndWarnings();
     assertEquals(n, warnings.size(), () -> "Expected exactly " + n + " warning messages logged!");
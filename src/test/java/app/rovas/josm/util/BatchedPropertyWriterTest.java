@@ -0,0 +1,71 @@
+package app.rovas.josm.util;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import org.openstreetmap.josm.data.preferences.IntegerProperty;
+import org.openstreetmap.josm.data.preferences.StringProperty;
+
+public class BatchedPropertyWriterTest {
+
+  @Test
+  public void testBackgroundWrite() {
+    final IntegerProperty property = new IntegerProperty("rovas.test.batched-writer.background", 0);
+    final BatchedPropertyWriter writer = new BatchedPropertyWriter("test-writer");
+    for (int i = 1; i <= 1000; i++) {
+      writer.put(property, i);
+    }
+    await().atMost(5, TimeUnit.SECONDS).until(() -> !writer.hasPendingWrites() && property.get() == 1000);
+  }
+
+  @Test
+  public void testFlush() {
+    final IntegerProperty intProperty = new IntegerProperty("rovas.test.batched-writer.flush-int", 0);
+    final NullableProperty<String> nullableProperty = new NullableProperty<>(
+      new StringProperty("rovas.test.batched-writer.flush-string", null),
+      it -> !it.isEmpty()
+    );
+    final BatchedPropertyWriter writer = new BatchedPropertyWriter("test-writer");
+    nullableProperty.put("abc");
+
+    writer.put(intProperty, 42);
+    writer.put(nullableProperty, "");
+    writer.flush();
+
+    assertFalse(writer.hasPendingWrites());
+    assertEquals(42, intProperty.get());
+    assertNull(nullableProperty.get());
+  }
+
+  @Test
+  public void testReadPendingWrites() {
+    final IntegerProperty intProperty = new IntegerProperty("rovas.test.batched-writer.read-int", 0);
+    final NullableProperty<String> nullableProperty = new NullableProperty<>(
+      new StringProperty("rovas.test.batched-writer.read-string", null),
+      it -> !it.isEmpty()
+    );
+    final BatchedPropertyWriter writer = new BatchedPropertyWriter("test-writer");
+    assertEquals(0, writer.get(intProperty));
+    assertNull(writer.get(nullableProperty));
+
+    // the new values are returned immediately, no matter if they are already persisted or not
+    writer.put(intProperty, 42);
+    writer.put(nullableProperty, "abc");
+    assertEquals(42, writer.get(intProperty));
+    assertEquals("abc", writer.get(nullableProperty));
+
+    writer.put(nullableProperty, "");
+    assertNull(writer.get(nullableProperty));
+
+    writer.flush();
+    assertFalse(writer.hasPendingWrites());
+    assertEquals(42, intProperty.get());
+    assertNull(nullableProperty.get());
+  }
+}
@@ -0,0 +1,65 @@
+package app.rovas.josm.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import org.openstreetmap.josm.data.preferences.IntegerProperty;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.spi.preferences.IPreferences;
+import org.openstreetmap.josm.spi.preferences.MemoryPreferences;
+
+public class CachedPropertyTest {
+
+  @Test
+  public void testCache() {
+    final IntegerProperty property = new IntegerProperty("rovas.test.cached-property", 7);
+    final AtomicInteger numCalculations = new AtomicInteger();
+    final CachedProperty<Integer> cachedProperty = new CachedProperty<>(property, () -> {
+      numCalculations.incrementAndGet();
+      return property.get() * 2;
+    });
+    assertEquals(0, numCalculations.get());
+
+    for (int i = 0; i < 100; i++) {
+      assertEquals(14, cachedProperty.get());
+    }
+    assertEquals(1, numCalculations.get());
+
+    property.put(21);
+    assertEquals(42, cachedProperty.get());
+    assertEquals(42, cachedProperty.get());
+    assertEquals(2, numCalculations.get());
+
+    final CachedProperty<Integer> plainCachedProperty = CachedProperty.of(property);
+    assertEquals(21, plainCachedProperty.get());
+    property.put(-3);
+    assertEquals(-3, plainCachedProperty.get());
+    assertEquals(-6, cachedProperty.get());
+  }
+
+  @Test
+  public void testPreferencesReplaced() {
+    final IntegerProperty property = new IntegerProperty("rovas.test.cached-property.replaced", 7);
+    final CachedProperty<Integer> cachedProperty = CachedProperty.of(property);
+    property.put(42);
+    assertEquals(42, cachedProperty.get());
+
+    // e.g. the test rules set up new preferences for each test
+    final IPreferences originalPreferences = Config.getPref();
+    final IPreferences newPreferences = new MemoryPreferences();
+    try {
+      Config.setPreferencesInstance(newPreferences);
+      assertEquals(7, cachedProperty.get());
+      property.put(21);
+      assertEquals(21, cachedProperty.get());
+    } finally {
+      Config.setPreferencesInstance(originalPreferences);
+    }
+    assertEquals(42, cachedProperty.get());
+    property.put(null);
+    assertEquals(7, cachedProperty.get());
+  }
+}
@@ -0,0 +1,31 @@
+package app.rovas.josm.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.stream.JsonGenerator;
+
+import org.junit.jupiter.api.Test;
+
+import app.rovas.josm.fixture.UtilityClassTest;
+
+public class JsonCodecTest implements UtilityClassTest<JsonCodec> {
+
+  @Test
+  public void testRoundTrip() {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (JsonGenerator generator = JsonCodec.createGenerator(out)) {
+      generator.writeStartObject().write("result", "ä1234").write("number", 42).writeEnd();
+    }
+    assertEquals("{\"result\":\"ä1234\",\"number\":42}", new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+    try (JsonReader reader = JsonCodec.createReader(new ByteArrayInputStream(out.toByteArray()))) {
+      final JsonObject object = reader.readObject();
+      assertEquals(JsonCodec.createObjectBuilder().add("result", "ä1234").add("number", 42).build(), object);
+    }
+  }
+}
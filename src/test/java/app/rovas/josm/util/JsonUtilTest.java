@@ -2,10 +2,15 @@
 package app.rovas.josm.util;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Optional;
 import javax.json.Json;
 import javax.json.JsonObject;
+import javax.json.stream.JsonParser;
 
 import org.junit.jupiter.api.Test;
 
@@ -33,4 +38,18 @@ public class JsonUtilTest implements UtilityClassTest<JsonUtil> {
     assertEquals(Optional.empty(), JsonUtil.extractResponseCode(o1, "g"));
     assertEquals(Optional.empty(), JsonUtil.extractResponseCode(o1, "h"));
   }
+
+  @Test
+  protected void testStreaming() {
+    final JsonParser parser = JsonCodec.createParser(new ByteArrayInputStream(
+      "{\"a\": 123, \"b\": \"-5\", \"c\": [1, [2]], \"d\": {\"x\": {}}, \"e\": \"X\", \"f\": null, \"g\": 42}".getBytes(StandardCharsets.UTF_8)
+    ));
+    assertEquals(JsonParser.Event.START_OBJECT, parser.next());
+    for (final Optional<Integer> expected : Arrays.asList(Optional.of(123), Optional.of(-5), Optional.<Integer>empty(), Optional.<Integer>empty(), Optional.<Integer>empty(), Optional.<Integer>empty(), Optional.of(42))) {
+      assertEquals(JsonParser.Event.KEY_NAME, parser.next());
+      assertEquals(expected, JsonUtil.extractResponseCode(parser.next(), parser));
+    }
+    assertEquals(JsonParser.Event.END_OBJECT, parser.next());
+    assertFalse(parser.hasNext());
+  }
 }
@@ -0,0 +1,73 @@
+// License: GPL. For details, see LICENSE file.
+package app.rovas.josm.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+public class ResponseCaptureTest {
+
+  @Test
+  public void testKeepsOnlyTheBeginning() {
+    try (ResponseCapture capture = ResponseCapture.acquire()) {
+      capture.write('{');
+      capture.write("\"a\":1".getBytes(StandardCharsets.UTF_8), 0, 5);
+      assertEquals("{\"a\":1", capture.getContent());
+      assertEquals(6, capture.getTotalSize());
+      assertFalse(capture.isTruncated());
+
+      final byte[] filler = new byte[ResponseCapture.CAPACITY];
+      Arrays.fill(filler, (byte) ' ');
+      capture.write(filler, 0, filler.length);
+      capture.write('}');
+
+      assertEquals(ResponseCapture.CAPACITY + 7L, capture.getTotalSize());
+      assertTrue(capture.isTruncated());
+      assertEquals(ResponseCapture.CAPACITY, capture.getContent().length());
+      assertTrue(capture.getContent().startsWith("{\"a\":1   "));
+    }
+  }
+
+  @Test
+  public void testBuffersAreReused() {
+    final ResponseCapture capture = ResponseCapture.acquire();
+    capture.write('x');
+    final int poolSize = ResponseCapture.getPoolSize();
+    capture.close();
+    assertEquals(poolSize + 1, ResponseCapture.getPoolSize());
+    assertEquals("", capture.getContent());
+
+    // closing twice doesn't return the buffer twice
+    capture.close();
+    assertEquals(poolSize + 1, ResponseCapture.getPoolSize());
+
+    try (ResponseCapture reused = ResponseCapture.acquire()) {
+      assertEquals(poolSize, ResponseCapture.getPoolSize());
+      assertEquals("", reused.getContent());
+      assertEquals(0, reused.getTotalSize());
+    }
+  }
+
+  @Test
+  public void testTeeDoesNotCaptureEndOfStream() throws IOException {
+    try (
+      ResponseCapture capture = ResponseCapture.acquire();
+      InputStream stream = new TeeInputStream(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)), capture)
+    ) {
+      assertEquals('{', stream.read());
+      assertEquals('}', stream.read());
+      assertEquals(-1, stream.read());
+      assertEquals(-1, stream.read(new byte[4]));
+      assertEquals("{}", capture.getContent());
+      assertEquals(2, capture.getTotalSize());
+    }
+  }
+}
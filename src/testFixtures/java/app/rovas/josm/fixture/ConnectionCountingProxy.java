@@ -0,0 +1,90 @@
+package app.rovas.josm.fixture;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal TCP proxy that forwards all connections to a port on localhost and counts how many TCP connections
+ * were opened. This allows to test, if HTTP connections are reused.
+ */
+public class ConnectionCountingProxy implements AutoCloseable {
+  private final ServerSocket serverSocket;
+  private final int targetPort;
+  private final AtomicInteger numConnections = new AtomicInteger();
+
+  /**
+   * Starts the proxy on a random free port
+   * @param targetPort the port on localhost to which the connections are forwarded
+   * @throws IOException if the proxy can't be started
+   */
+  public ConnectionCountingProxy(final int targetPort) throws IOException {
+    this.targetPort = targetPort;
+    this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    final Thread acceptThread = new Thread(this::acceptConnections, "connection-counting-proxy");
+    acceptThread.setDaemon(true);
+    acceptThread.start();
+  }
+
+  /**
+   * @return the port on which the proxy accepts connections
+   */
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * @return the number of TCP connections that were accepted so far
+   */
+  public int getNumConnections() {
+    return numConnections.get();
+  }
+
+  private void acceptConnections() {
+    while (!serverSocket.isClosed()) {
+      try {
+        final Socket client = serverSocket.accept();
+        numConnections.incrementAndGet();
+        final Socket target = new Socket(InetAddress.getLoopbackAddress(), targetPort);
+        pipe(client.getInputStream(), target.getOutputStream(), client, target);
+        pipe(target.getInputStream(), client.getOutputStream(), client, target);
+      } catch (IOException e) {
+        // proxy was closed
+      }
+    }
+  }
+
+  private static void pipe(final InputStream in, final OutputStream out, final Socket... sockets) {
+    final Thread thread = new Thread(() -> {
+      final byte[] buffer = new byte[8192];
+      try {
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+          out.write(buffer, 0, n);
+          out.flush();
+        }
+      } catch (IOException e) {
+        // connection was closed
+      } finally {
+        for (final Socket socket : sockets) {
+          try {
+            socket.close();
+          } catch (IOException e) {
+            // ignore
+          }
+        }
+      }
+    }, "connection-counting-proxy-pipe");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+  }
+}
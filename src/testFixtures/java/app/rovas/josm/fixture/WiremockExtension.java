@@ -1,29 +1,58 @@
 package app.rovas.josm.fixture;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
 import com.github.tomakehurst.wiremock.junit.Stubbing;
+import org.junit.jupiter.api.extension.AfterAllCallback;
 import org.junit.jupiter.api.extension.AfterEachCallback;
 import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.api.extension.ParameterContext;
 import org.junit.jupiter.api.extension.ParameterResolutionException;
 import org.junit.jupiter.api.extension.ParameterResolver;
 
+import app.rovas.josm.api.CircuitBreaker;
+import app.rovas.josm.api.ShareholderCache;
 import app.rovas.josm.util.UrlProvider;
 
-public class WiremockExtension implements BeforeAllCallback, AfterEachCallback, ParameterResolver {
+public class WiremockExtension implements BeforeAllCallback, BeforeEachCallback, AfterEachCallback, AfterAllCallback, ParameterResolver {
   private WireMockServer server;
+  private File tempDir;
 
   @Override
-  public void beforeAll(ExtensionContext context) {
+  public void beforeAll(ExtensionContext context) throws IOException {
     this.server = new WireMockServer(WireMockConfiguration.wireMockConfig().dynamicPort());
     server.start();
+    this.tempDir = Files.createTempDirectory("rovas-test").toFile();
   }
 
   @Override
-  public void afterEach(ExtensionContext context) {
+  public void beforeEach(ExtensionContext context) {
+    // every test starts with an empty shareholder cache, which is not persisted to the JOSM user data directory
+    ShareholderCache.replaceInstance(getShareholderCacheFile());
+  }
+
+  @Override
+  public void afterEach(ExtensionContext context) throws InterruptedException, IOException {
     server.resetAll();
+    CircuitBreaker.resetAll();
+    ShareholderCache.getInstance().awaitWrites();
+    Files.deleteIfExists(getShareholderCacheFile().toPath());
+  }
+
+  @Override
+  public void afterAll(ExtensionContext context) throws IOException {
+    server.stop();
+    Files.deleteIfExists(tempDir.toPath());
+  }
+
+  private File getShareholderCacheFile() {
+    return new File(tempDir, "shareholders.json");
   }
 
   @Override